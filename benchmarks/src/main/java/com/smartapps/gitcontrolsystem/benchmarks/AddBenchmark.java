@@ -0,0 +1,83 @@
+package com.smartapps.gitcontrolsystem.benchmarks;
+
+import com.smartapps.gitcontrolsystem.service.AddPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// "git add ." over a whole working tree: every file new (hashed and stored), or every file
+// already staged and unchanged (only stat data compared).
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AddBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fresh {
+        @Param({"1000", "10000"})
+        int files;
+
+        @Param({"4096", "65536"})
+        int fileSize;
+
+        SyntheticRepository repository;
+
+        // A new repository per iteration, so every file is hashed and stored again
+        @Setup(Level.Iteration)
+        public void create() throws IOException {
+            repository = SyntheticRepository.workTreeOnly(SyntheticRepository.Shape.of(files, 1, 0, fileSize));
+        }
+
+        @TearDown(Level.Iteration)
+        public void delete() throws IOException {
+            repository.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Staged {
+        @Param({"1000", "10000"})
+        int files;
+
+        @Param({"4096", "65536"})
+        int fileSize;
+
+        SyntheticRepository repository;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException {
+            repository = SyntheticRepository.create(SyntheticRepository.Shape.of(files, 1, 0, fileSize));
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            repository.close();
+        }
+    }
+
+    @Benchmark
+    public AddPipeline.Progress addNewFiles(Fresh state) throws IOException {
+        return AddPipeline.addAll(List.of(state.repository.root()), progress -> { });
+    }
+
+    @Benchmark
+    public AddPipeline.Progress addUnchangedFiles(Staged state) throws IOException {
+        return AddPipeline.addAll(List.of(state.repository.root()), progress -> { });
+    }
+}
@@ -0,0 +1,20 @@
+package com.smartapps.gitcontrolsystem.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of target/benchmarks.jar: the JMH command line, writing JSON results to
+// jmh-result.json unless the arguments choose another result format or file.
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.addAll(0, List.of("-rf", "json"));
+        }
+        if (!options.contains("-rff")) {
+            options.addAll(0, List.of("-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(options.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,67 @@
+package com.smartapps.gitcontrolsystem.benchmarks;
+
+import com.smartapps.gitcontrolsystem.service.GitCommit;
+import com.smartapps.gitcontrolsystem.service.GitServices;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Latency of a commit once the changes are staged: tree objects for the changed directories, the
+// commit object, the commit-graph entry and the branch update. Staging happens outside the timing.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitBenchmark {
+    @Param({"1000", "10000"})
+    int files;
+
+    @Param({"1", "100"})
+    int changed;
+
+    SyntheticRepository repository;
+    // Second parent of the merge-style commits
+    String sideParent;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        repository = SyntheticRepository.create(SyntheticRepository.Shape.of(files, 2, 1, 1024));
+        sideParent = repository.branchTip(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        repository.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void stage() throws IOException {
+        repository.stageChanges(changed);
+    }
+
+    @Benchmark
+    public String commit() throws IOException {
+        return GitCommit.commit("benchmark");
+    }
+
+    @Benchmark
+    public String commitWithParents() throws IOException {
+        GitCommit.commitWithParents("benchmark merge", GitServices.resolveHead(), sideParent);
+        return GitServices.resolveHead();
+    }
+}
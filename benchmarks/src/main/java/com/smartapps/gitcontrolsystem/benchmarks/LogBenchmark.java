@@ -0,0 +1,83 @@
+package com.smartapps.gitcontrolsystem.benchmarks;
+
+import com.smartapps.gitcontrolsystem.service.CommitHistory;
+import com.smartapps.gitcontrolsystem.service.GitServices;
+import com.smartapps.gitcontrolsystem.service.MergeAndConflict;
+import com.smartapps.gitcontrolsystem.service.RepositoryCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Walking the history of HEAD: the first-parent log, the full topological walk, and the first
+// page the history window shows. The cold variants start from an empty repository cache.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogBenchmark {
+    @Param({"1000", "10000"})
+    int commits;
+
+    @Param({"0", "4"})
+    int branches;
+
+    SyntheticRepository repository;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        repository = SyntheticRepository.create(SyntheticRepository.Shape.of(100, commits, branches, 256));
+        // Merge every branch so the topological walk has side histories to interleave
+        for (int branch = 0; branch < branches; branch++) {
+            MergeAndConflict.merge(SyntheticRepository.branchName(branch));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        repository.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ColdCache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            RepositoryCache.current().clear();
+        }
+    }
+
+    @Benchmark
+    public void firstParentLog(Blackhole blackhole) {
+        GitServices.log(blackhole::consume);
+    }
+
+    @Benchmark
+    public void firstParentLogCold(ColdCache cold, Blackhole blackhole) {
+        GitServices.log(blackhole::consume);
+    }
+
+    @Benchmark
+    public void topologicalWalk(Blackhole blackhole) throws IOException {
+        CommitHistory.fromHead().forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    public CommitHistory.Page firstPage() throws IOException {
+        return CommitHistory.page(GitServices.resolveHead(), 200);
+    }
+}
@@ -0,0 +1,72 @@
+package com.smartapps.gitcontrolsystem.benchmarks;
+
+import com.smartapps.gitcontrolsystem.service.MergeBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Common ancestor queries between main and a branch: one that forked halfway through main's
+// history, or one that main kept merging with and that kept merging back (criss-cross), where the
+// walk has to find several best merge bases.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBaseBenchmark {
+    @Param({"FORK", "CRISS_CROSS"})
+    SyntheticRepository.History history;
+
+    @Param({"1000", "10000", "100000"})
+    int commits;
+
+    @Param({"1", "8"})
+    int branches;
+
+    SyntheticRepository repository;
+    String main;
+    String branch;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        repository = SyntheticRepository.history(history, commits, branches);
+        main = repository.mainTip();
+        branch = repository.branchTip(branches - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        repository.close();
+    }
+
+    @Benchmark
+    public String findBest() throws IOException {
+        return MergeBase.findBest(main, branch);
+    }
+
+    @Benchmark
+    public List<String> findAll() throws IOException {
+        return MergeBase.find(main, branch);
+    }
+
+    // The question merge asks first: is the branch already part of main?
+    @Benchmark
+    public boolean isAncestor() throws IOException {
+        return MergeBase.isAncestor(branch, main);
+    }
+}
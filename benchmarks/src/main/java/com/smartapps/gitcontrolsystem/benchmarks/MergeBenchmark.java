@@ -0,0 +1,63 @@
+package com.smartapps.gitcontrolsystem.benchmarks;
+
+import com.smartapps.gitcontrolsystem.service.GitMerge;
+import com.smartapps.gitcontrolsystem.service.MergeAndConflict;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// A full merge of branch-0 into main: merge base, three-way resolution, working tree update,
+// index snapshot and merge commit. main is put back on its old commit before every merge.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBenchmark {
+    @Param({"1000", "10000"})
+    int files;
+
+    @Param({"100"})
+    int commits;
+
+    SyntheticRepository repository;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        repository = SyntheticRepository.create(SyntheticRepository.Shape.of(files, commits, 1, 1024));
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        repository.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void unmerge() throws IOException {
+        repository.reset(SyntheticRepository.MAIN, repository.mainTip());
+    }
+
+    @Benchmark
+    public void mergeAndConflict() throws IOException {
+        MergeAndConflict.merge(SyntheticRepository.branchName(0));
+    }
+
+    @Benchmark
+    public void gitMerge() {
+        GitMerge.merge(SyntheticRepository.branchName(0), SyntheticRepository.MAIN, "benchmark");
+    }
+}
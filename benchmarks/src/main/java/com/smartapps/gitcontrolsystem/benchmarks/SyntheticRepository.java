@@ -0,0 +1,291 @@
+package com.smartapps.gitcontrolsystem.benchmarks;
+
+import com.smartapps.gitcontrolsystem.service.AddPipeline;
+import com.smartapps.gitcontrolsystem.service.Commit;
+import com.smartapps.gitcontrolsystem.service.CommitGraph;
+import com.smartapps.gitcontrolsystem.service.GitCommit;
+import com.smartapps.gitcontrolsystem.service.GitServices;
+import com.smartapps.gitcontrolsystem.service.ObjectStore;
+import com.smartapps.gitcontrolsystem.service.Refs;
+import com.smartapps.gitcontrolsystem.service.StagingIndex;
+import com.smartapps.gitcontrolsystem.service.Tree;
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Generated repository of a given shape, built through the same service calls a user would make.
+//
+// main gets `commits` commits; the first one adds every file and each later one rewrites
+// `changesPerCommit` files. Branch k (named branch-k) forks from main halfway through its history
+// and gets half as many commits of its own. main and each branch only ever touch their own slice
+// of the files, so merging any branch into main is conflict free. Content is generated from the
+// seed, so the same shape always produces the same files.
+//
+// The repository becomes the current one (Utils.setRoot), ends up on main with the working tree
+// and index matching main's last commit, and is deleted by close().
+//
+// history() builds a commit history without files instead, for queries that only walk commits:
+// every commit has the empty tree and goes straight to the object store and the commit graph, so
+// histories of 100k commits take seconds rather than the hours full commits would.
+public final class SyntheticRepository implements AutoCloseable {
+    public static final String MAIN = "main";
+    // Rounds between two merges of a criss-cross history
+    private static final int MERGE_INTERVAL = 10;
+
+    public enum History {
+        // main, with every branch forking from it halfway through as create() makes it; main gets
+        // half of the commits and the branches share the other half
+        FORK,
+        // main and the branches start from one root commit and grow side by side; every
+        // MERGE_INTERVAL rounds each of them merges the previous tip of the next one (branch-k merges
+        // branch-(k+1), the last branch merges main), so the tips have several best merge bases
+        CRISS_CROSS
+    }
+
+    public record Shape(int files, int commits, int branches, int fileSize, int changesPerCommit, long seed) {
+        // One change per hundred files, at least one
+        public static Shape of(int files, int commits, int branches, int fileSize) {
+            return new Shape(files, commits, branches, fileSize, Math.max(1, files / 100), 42);
+        }
+    }
+
+    private final Path root;
+    private final Shape shape;
+    private final Random random;
+    private final List<String> mainHistory = new ArrayList<>();
+    private final List<String> branchTips = new ArrayList<>();
+
+    private SyntheticRepository(Path root, Shape shape) {
+        this.root = root;
+        this.shape = shape;
+        this.random = new Random(shape.seed());
+    }
+
+    public static SyntheticRepository create(Shape shape) throws IOException {
+        SyntheticRepository repository = workTreeOnly(shape);
+        repository.build();
+        return repository;
+    }
+
+    // About `commits` commits in the given shape, spread over main and the branches, without files.
+    // Each one is still a loose object, so 100k commits take a minute or so on a slow disk.
+    public static SyntheticRepository history(History history, int commits, int branches) throws IOException {
+        SyntheticRepository repository = new SyntheticRepository(Files.createTempDirectory("dotgit-bench"),
+                new Shape(0, commits, branches, 0, 0, 42));
+        Utils.setRoot(repository.root);
+        GitServices.init();
+        String tree = new Tree(List.of()).write();
+        if (history == History.FORK) {
+            repository.fork(tree);
+        } else {
+            repository.crissCross(tree);
+        }
+        Refs.Transaction refs = Refs.transaction().set(Refs.HEADS + MAIN, repository.mainTip());
+        for (int branch = 0; branch < branches; branch++) {
+            refs.set(Refs.HEADS + branchName(branch), repository.branchTip(branch));
+        }
+        refs.commit();
+        // One graph layer for the whole history, rather than one per commit on the first query
+        CommitGraph.lookup(repository.mainTip());
+        for (String tip : repository.branchTips) {
+            CommitGraph.lookup(tip);
+        }
+        return repository;
+    }
+
+    // Just the files and an empty repository: nothing staged or committed yet
+    public static SyntheticRepository workTreeOnly(Shape shape) throws IOException {
+        SyntheticRepository repository = new SyntheticRepository(Files.createTempDirectory("dotgit-bench"), shape);
+        Utils.setRoot(repository.root);
+        GitServices.init();
+        for (int file = 0; file < shape.files(); file++) {
+            repository.rewrite(file);
+        }
+        return repository;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public Shape shape() {
+        return shape;
+    }
+
+    // Working tree path of file number i
+    public Path file(int i) {
+        return root.resolve(relative(i));
+    }
+
+    // Commits of main, oldest first
+    public List<String> mainHistory() {
+        return mainHistory;
+    }
+
+    public String mainTip() {
+        return mainHistory.get(mainHistory.size() - 1);
+    }
+
+    // The commit branch-k forked from
+    public String forkPoint() {
+        return mainHistory.get((mainHistory.size() - 1) / 2);
+    }
+
+    public String branchTip(int branch) {
+        return branchTips.get(branch);
+    }
+
+    public static String branchName(int branch) {
+        return "branch-" + branch;
+    }
+
+    // Overwrite file number i with new generated content
+    public void rewrite(int i) throws IOException {
+        Path file = file(i);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content());
+    }
+
+    // Rewrite files of main's slice and stage them; returns their paths
+    public List<Path> stageChanges(int count) throws IOException {
+        return stageChanges(0, count);
+    }
+
+    // Put a branch back on a commit and make HEAD, the index and the working tree match it
+    public void reset(String branch, String commit) throws IOException {
+        Refs.transaction().set(Refs.HEADS + branch, commit).set(Refs.HEAD, Refs.symbolic(Refs.HEADS + branch)).commit();
+        checkout(commit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private void build() throws IOException {
+        AddPipeline.addAll(List.of(root), progress -> { });
+        mainHistory.add(commit("initial"));
+        for (int i = 1; i < shape.commits(); i++) {
+            stageChanges(0, shape.changesPerCommit());
+            mainHistory.add(commit("main " + i));
+        }
+
+        String fork = forkPoint();
+        for (int branch = 0; branch < shape.branches(); branch++) {
+            reset(branchName(branch), fork);
+            String tip = fork;
+            for (int i = 0; i < Math.max(1, shape.commits() / 2); i++) {
+                stageChanges(branch + 1, shape.changesPerCommit());
+                tip = commit(branchName(branch) + " " + i);
+            }
+            branchTips.add(tip);
+        }
+        if (shape.branches() > 0) {
+            reset(MAIN, mainTip());
+        }
+    }
+
+    private void fork(String tree) throws IOException {
+        String parent = null;
+        for (int i = 0; i < Math.max(2, shape.commits() / 2); i++) {
+            parent = commitObject(tree, parent == null ? List.of() : List.of(parent), MAIN + " " + i);
+            mainHistory.add(parent);
+        }
+        String fork = forkPoint();
+        for (int branch = 0; branch < shape.branches(); branch++) {
+            String tip = fork;
+            for (int i = 0; i < Math.max(1, shape.commits() / 2 / shape.branches()); i++) {
+                tip = commitObject(tree, List.of(tip), branchName(branch) + " " + i);
+            }
+            branchTips.add(tip);
+        }
+    }
+
+    // Line 0 is main, line k + 1 is branch-k
+    private void crissCross(String tree) throws IOException {
+        int lines = shape.branches() + 1;
+        String root = commitObject(tree, List.of(), "root");
+        mainHistory.add(root);
+        String[] tips = new String[lines];
+        Arrays.fill(tips, root);
+        for (int round = 1; round < Math.max(2, shape.commits() / lines); round++) {
+            String[] previous = tips.clone();
+            for (int line = 0; line < lines; line++) {
+                String name = line == 0 ? MAIN : branchName(line - 1);
+                List<String> parents = new ArrayList<>();
+                parents.add(previous[line]);
+                if (round % MERGE_INTERVAL == 0 && lines > 1) {
+                    parents.add(previous[(line + 1) % lines]);
+                }
+                tips[line] = commitObject(tree, parents, name + " " + round);
+            }
+            mainHistory.add(tips[0]);
+        }
+        branchTips.addAll(Arrays.asList(tips).subList(1, lines));
+    }
+
+    // Messages are unique, so every commit is a new object
+    private static String commitObject(String tree, List<String> parents, String message) throws IOException {
+        return Commit.create(tree, parents, "benchmark", message).hash();
+    }
+
+    // Slice s holds the files whose number modulo (branches + 1) is s
+    private List<Path> stageChanges(int slice, int count) throws IOException {
+        int stride = shape.branches() + 1;
+        int sliceSize = (shape.files() - slice + stride - 1) / stride;
+        List<Path> changed = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, sliceSize); i++) {
+            int file = slice + stride * random.nextInt(sliceSize);
+            rewrite(file);
+            changed.add(file(file));
+        }
+        AddPipeline.addAll(changed, progress -> { });
+        return changed;
+    }
+
+    private String commit(String message) throws IOException {
+        String hash = GitCommit.commit(message);
+        if (hash == null) {
+            throw new IOException("Generating the repository failed at commit \"" + message + "\"");
+        }
+        return hash;
+    }
+
+    // Write a commit's snapshot to the working tree and the index
+    private void checkout(String commit) throws IOException {
+        Map<String, String> files = Tree.flatten(Commit.read(commit).tree());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Path path = Utils.workTreePath(file.getKey());
+            Files.createDirectories(path.getParent());
+            Files.write(path, ObjectStore.read(file.getValue()));
+        }
+        StagingIndex.writeSnapshot(files);
+    }
+
+    // Directories of 100 files each, like a source tree
+    private static String relative(int i) {
+        return "src/d" + (i / 100) + "/f" + i + ".txt";
+    }
+
+    // Lines of 63 lowercase letters; text, so merges and deltas behave as they do on source files
+    private byte[] content() {
+        byte[] content = new byte[shape.fileSize()];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + random.nextInt(26));
+        }
+        return content;
+    }
+}
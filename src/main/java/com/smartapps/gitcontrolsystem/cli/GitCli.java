@@ -0,0 +1,301 @@
+package com.smartapps.gitcontrolsystem.cli;
+
+import com.smartapps.gitcontrolsystem.service.AddPipeline;
+import com.smartapps.gitcontrolsystem.service.Checkout;
+import com.smartapps.gitcontrolsystem.service.Commit;
+import com.smartapps.gitcontrolsystem.service.CommitHistory;
+import com.smartapps.gitcontrolsystem.service.GitCommit;
+import com.smartapps.gitcontrolsystem.service.GitDiff;
+import com.smartapps.gitcontrolsystem.service.GitServices;
+import com.smartapps.gitcontrolsystem.service.GitStatus;
+import com.smartapps.gitcontrolsystem.service.MergeAndConflict;
+import com.smartapps.gitcontrolsystem.service.Metrics;
+import com.smartapps.gitcontrolsystem.service.PatchWriter;
+import com.smartapps.gitcontrolsystem.service.Refs;
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+// Headless command line front end: the same service calls as the UI's command box, without JavaFX.
+//
+//   gitcontrolsystem [-C <dir>] <command> [<args>]
+//
+// Runs one command and exits; 0 on success, 1 when the command failed, 2 for a usage error.
+// Only service and utils classes are loaded, so the CLI jar needs nothing else on its class path
+// and starts fast enough to be called thousands of times from scripts (see the cds and native
+// profiles in pom.xml). With -Dgitcontrolsystem.metrics=log each command prints its timings.
+public class GitCli {
+    private static final String USAGE = """
+            usage: gitcontrolsystem [-C <dir>] <command> [<args>]
+
+            commands:
+              init                  create an empty repository in .dotgit
+              add <path>...         stage files or whole directories
+              commit -m <message>   commit the index on the current branch
+              log [-n <count>] [[--] <path>]
+                                    show the history of HEAD, newest first; with a path
+                                    only the commits that changed it
+              branch [<name>]       list branches, or create one at HEAD
+              switch <branch>       make HEAD point to another branch
+              merge <branch>        merge a branch into the current one
+              status                show staged, unstaged and untracked changes
+              diff [options] [<commit> [<commit>]]
+                                    changes in the working tree, the index (--cached) or
+                                    between two commits; --stat, --no-renames, -C for copies
+            """;
+
+    private static final Set<String> COMMANDS = Set.of("init", "add", "commit", "log", "branch", "switch", "merge", "status",
+            "diff");
+
+    // Wrong arguments; reported with the usage text
+    private static class UsageException extends Exception {
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    public static void main(String[] args) {
+        // Service classes report with System.out.println; a buffered stream keeps long logs fast
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                false, StandardCharsets.UTF_8);
+        System.setOut(out);
+        int status;
+        try {
+            status = run(new ArrayList<>(Arrays.asList(args)));
+        } catch (UsageException e) {
+            out.flush();
+            System.err.println("error: " + e.getMessage());
+            System.err.print(USAGE);
+            status = 2;
+        } catch (IOException | RuntimeException e) {
+            out.flush();
+            System.err.println("error: " + e.getMessage());
+            status = 1;
+        }
+        out.flush();
+        // A normal return skips Runtime.exit, which loads the System.Logger machinery to log the call
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    private static int run(List<String> args) throws IOException, UsageException {
+        if (args.size() >= 2 && args.get(0).equals("-C")) {
+            Utils.setRoot(Path.of(args.get(1)));
+            args = args.subList(2, args.size());
+        }
+        if (args.isEmpty() || args.get(0).equals("-h") || args.get(0).equals("--help")) {
+            System.out.print(USAGE);
+            return args.isEmpty() ? 2 : 0;
+        }
+        String command = args.get(0);
+        List<String> rest = args.subList(1, args.size());
+        if (!COMMANDS.contains(command)) {
+            throw new UsageException("unknown command '" + command + "'");
+        }
+        if (!command.equals("init") && !Files.isDirectory(Utils.dotgitPath(""))) {
+            System.err.println("error: not a repository: " + Utils.getRoot().toAbsolutePath().normalize());
+            return 1;
+        }
+        try (Metrics.Operation operation = Metrics.begin("gitcontrolsystem " + command)) {
+            int status = switch (command) {
+                case "init" -> init(rest);
+                case "add" -> add(rest);
+                case "commit" -> commit(rest);
+                case "log" -> log(rest);
+                case "branch" -> branch(rest);
+                case "switch" -> switchBranch(rest);
+                case "merge" -> merge(rest);
+                case "status" -> status(rest);
+                case "diff" -> diff(rest);
+                default -> throw new IllegalStateException(command);
+            };
+            if (status != 0) {
+                operation.failed();
+            }
+            return status;
+        }
+    }
+
+    private static int init(List<String> args) throws UsageException {
+        expect(args, 0);
+        // Prints its own message; an existing repository is fine, like "git init" in one
+        return GitServices.init() == GitServices.InitResult.FAILED ? 1 : 0;
+    }
+
+    private static int add(List<String> args) throws IOException, UsageException {
+        if (args.isEmpty()) {
+            throw new UsageException("add needs at least one path");
+        }
+        // Relative paths are relative to -C, like git does
+        List<Path> paths = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Utils.getRoot().resolve(arg);
+            if (!Files.exists(path)) {
+                System.err.println("error: pathspec '" + arg + "' did not match any files");
+                return 1;
+            }
+            paths.add(path);
+        }
+        AddPipeline.addAll(paths, progress -> { });
+        return 0;
+    }
+
+    private static int commit(List<String> args) throws IOException, UsageException {
+        if (args.size() != 2 || !args.get(0).equals("-m")) {
+            throw new UsageException("commit needs -m <message>");
+        }
+        // Null when there was nothing to commit, which was already reported
+        return GitCommit.commit(args.get(1)) != null ? 0 : 1;
+    }
+
+    private static int log(List<String> args) throws IOException, UsageException {
+        int limit = Integer.MAX_VALUE;
+        String path = null;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("-n") && i + 1 < args.size()) {
+                limit = parseCount(args.get(++i));
+            } else if (arg.matches("-\\d+")) {
+                limit = parseCount(arg.substring(1));
+            } else if (arg.equals("--") && i == args.size() - 2) {
+                path = args.get(++i);
+            } else if (!arg.startsWith("-") && path == null) {
+                path = arg;
+            } else {
+                throw new UsageException("unexpected argument '" + arg + "' for log");
+            }
+        }
+        CommitHistory history = CommitHistory.fromHead(GitServices.normalizePath(path));
+        for (int shown = 0; shown < limit && history.hasNext(); shown++) {
+            Commit commit = history.next();
+            System.out.println(commit.describe());
+        }
+        return 0;
+    }
+
+    private static int branch(List<String> args) throws IOException, UsageException {
+        if (args.size() == 1) {
+            String name = args.get(0);
+            String head = GitServices.resolveHead();
+            if (head == null) {
+                System.err.println("error: HEAD has no commits yet");
+                return 1;
+            }
+            try {
+                // Only created if nobody else created it in the meantime
+                Refs.transaction().create(Refs.HEADS + name, head).commit();
+            } catch (Refs.ConflictException e) {
+                System.err.println("error: branch '" + name + "' already exists");
+                return 1;
+            }
+            return 0;
+        }
+        expect(args, 0);
+        String current = Refs.target(Refs.HEAD);
+        for (String ref : Refs.list(Refs.HEADS).keySet()) {
+            System.out.println((ref.equals(current) ? "* " : "  ") + ref.substring(Refs.HEADS.length()));
+        }
+        return 0;
+    }
+
+    private static int switchBranch(List<String> args) throws IOException, UsageException {
+        expect(args, 1);
+        if (Refs.read(Refs.HEADS + args.get(0)) == null) {
+            System.err.println("error: no branch named '" + args.get(0) + "'");
+            return 1;
+        }
+        try {
+            System.out.println(Checkout.switchBranch(args.get(0)));
+        } catch (Checkout.LocalChangesException e) {
+            System.err.println("error: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    private static int merge(List<String> args) throws IOException, UsageException {
+        expect(args, 1);
+        if (Refs.read(Refs.HEADS + args.get(0)) == null) {
+            System.err.println("error: no branch named '" + args.get(0) + "'");
+            return 1;
+        }
+        // Conflicts are left uncommitted in the work tree and the index for the user to fix
+        MergeAndConflict.Result result = MergeAndConflict.merge(args.get(0));
+        return result == MergeAndConflict.Result.MERGED || result == MergeAndConflict.Result.UP_TO_DATE ? 0 : 1;
+    }
+
+    private static int status(List<String> args) throws IOException, UsageException {
+        expect(args, 0);
+        System.out.print(GitStatus.status().format(GitServices.getCurrentBranch()));
+        return 0;
+    }
+
+    private static int diff(List<String> args) throws IOException, UsageException {
+        boolean cached = false;
+        boolean stat = false;
+        GitDiff.Options options = GitDiff.Options.DEFAULT;
+        List<String> revisions = new ArrayList<>();
+        for (String arg : args) {
+            switch (arg) {
+                case "--cached", "--staged" -> cached = true;
+                case "--stat" -> stat = true;
+                case "-M", "--find-renames" -> options = options.withRenames(true);
+                case "--no-renames" -> options = options.withRenames(false).withCopies(false);
+                case "-C", "--find-copies" -> options = options.withCopies(true);
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new UsageException("unknown diff option " + arg);
+                    }
+                    revisions.add(arg);
+                }
+            }
+        }
+        List<GitDiff.FileChange> changes;
+        try {
+            changes = GitDiff.changes(revisions, cached, options);
+        } catch (NoSuchFileException e) {
+            System.err.println("error: " + e.getMessage());
+            return 1;
+        } catch (IllegalArgumentException e) {
+            throw new UsageException(e.getMessage());
+        }
+        if (stat) {
+            PatchWriter.writeStat(changes, System.out);
+        } else {
+            PatchWriter.writePatch(changes, options.context(), System.out);
+        }
+        return 0;
+    }
+
+    private static void expect(List<String> args, int count) throws UsageException {
+        if (args.size() != count) {
+            throw new UsageException("expected " + count + " argument" + (count == 1 ? "" : "s")
+                    + ", got " + args.size() + ": " + String.join(" ", args));
+        }
+    }
+
+    private static int parseCount(String text) throws UsageException {
+        try {
+            int count = Integer.parseInt(text);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new UsageException("not a commit count: " + text);
+    }
+}
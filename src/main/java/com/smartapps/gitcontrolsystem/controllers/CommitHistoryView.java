@@ -0,0 +1,105 @@
+package com.smartapps.gitcontrolsystem.controllers;
+
+import com.smartapps.gitcontrolsystem.service.Commit;
+import com.smartapps.gitcontrolsystem.service.CommitHistory;
+import com.smartapps.gitcontrolsystem.service.GitServices;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.geometry.Orientation;
+import javafx.scene.Scene;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TextArea;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+// Window listing the history of HEAD one row per commit.
+//
+// The ListView only creates cells for the visible rows, and commits are fetched a page at a time
+// through CommitHistory: when a cell near the end of what has been loaded becomes visible, the
+// next page is read in the background from the cursor of the previous one.
+public class CommitHistoryView {
+    private static final int PAGE_SIZE = 200;
+
+    private final RepositoryTaskExecutor tasks;
+    private final ObservableList<Commit> commits = FXCollections.observableArrayList();
+    private final ListView<Commit> list = new ListView<>(commits);
+    private final TextArea details = new TextArea();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    // Cursor of the next page; null once the root commits have been loaded
+    private String cursor;
+    private boolean loading;
+
+    public CommitHistoryView(RepositoryTaskExecutor tasks) {
+        this.tasks = tasks;
+        details.setEditable(false);
+        list.setCellFactory(view -> new ListCell<>() {
+            @Override
+            protected void updateItem(Commit commit, boolean empty) {
+                super.updateItem(commit, empty);
+                setText(empty || commit == null ? null : summary(commit));
+                if (!empty && getIndex() >= commits.size() - PAGE_SIZE / 2) {
+                    loadMore();
+                }
+            }
+        });
+        list.getSelectionModel().selectedItemProperty().addListener((observable, previous, commit) ->
+                details.setText(commit == null ? "" : commit.describe()));
+    }
+
+    public void show(Window owner) {
+        SplitPane pane = new SplitPane(list, details);
+        pane.setOrientation(Orientation.VERTICAL);
+        pane.setDividerPositions(0.7);
+        Stage stage = new Stage();
+        stage.initOwner(owner);
+        stage.setTitle("Commit History");
+        stage.setScene(new Scene(pane, 700, 500));
+        stage.show();
+
+        loading = true;
+        whenStopped(tasks.read("git history", context -> {
+            String head = GitServices.resolveHead();
+            return head == null ? new CommitHistory.Page(List.of(), null) : CommitHistory.page(head, PAGE_SIZE);
+        }, this::append));
+    }
+
+    private void loadMore() {
+        if (loading || cursor == null) {
+            return;
+        }
+        loading = true;
+        String from = cursor;
+        whenStopped(tasks.read("git history", context -> CommitHistory.page(from, PAGE_SIZE), this::append));
+    }
+
+    private void append(CommitHistory.Page page) {
+        commits.addAll(page.commits());
+        cursor = page.next();
+        loading = false;
+    }
+
+    // Allow another attempt after a page failed to load or was cancelled
+    private void whenStopped(Task<?> task) {
+        task.stateProperty().addListener((observable, previous, state) -> {
+            if (state == Worker.State.FAILED || state == Worker.State.CANCELLED) {
+                loading = false;
+            }
+        });
+    }
+
+    private String summary(Commit commit) {
+        String message = commit.message();
+        int newline = message.indexOf('\n');
+        return commit.hash().substring(0, Math.min(10, commit.hash().length())) + "  "
+                + dateFormat.format(new Date(commit.timestamp() * 1000)) + "  " + commit.author() + "  "
+                + (newline < 0 ? message : message.substring(0, newline));
+    }
+}
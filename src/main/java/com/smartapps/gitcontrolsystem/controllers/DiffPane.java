@@ -0,0 +1,367 @@
+package com.smartapps.gitcontrolsystem.controllers;
+
+import com.smartapps.gitcontrolsystem.service.SideBySideDiff;
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Two versions of a file side by side, drawn on a Canvas.
+//
+// Only the rows in the viewport are drawn: scrolling moves the first row and redraws one screen of
+// text, however long the files are, and redraws requested while one is pending are merged. A row's
+// text is decoded from the (possibly memory-mapped) lines when the row first comes into view and
+// kept in a small LRU cache; the word highlights of a changed row are computed at the same time, so
+// only hunks that are actually looked at are compared word by word. The minimap on the right marks
+// where the changes are in the whole file; clicking or dragging on it scrolls there.
+//
+// Keys: arrows and page up/down scroll, home/end jump to the ends, n and p go to the next and
+// previous change.
+public class DiffPane extends BorderPane {
+    private static final Font FONT = Font.font("Monospaced", 12);
+    private static final int RENDERED_ROWS = 2048;
+    private static final double MINIMAP_WIDTH = 14;
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color TEXT = Color.rgb(36, 41, 47);
+    private static final Color LINE_NUMBER = Color.rgb(110, 119, 129);
+    private static final Color GUTTER = Color.rgb(246, 248, 250);
+    private static final Color BLANK = Color.rgb(234, 238, 242);
+    private static final Color DELETED = Color.rgb(255, 235, 233);
+    private static final Color DELETED_WORD = Color.rgb(255, 182, 174);
+    private static final Color ADDED = Color.rgb(230, 255, 236);
+    private static final Color ADDED_WORD = Color.rgb(172, 242, 189);
+    private static final Color CHANGED_MARK = Color.rgb(84, 174, 255);
+    private static final Color DELETED_MARK = Color.rgb(255, 129, 130);
+    private static final Color ADDED_MARK = Color.rgb(74, 194, 107);
+
+    // A row ready to draw
+    private record Rendered(SideBySideDiff.Row row, String left, String right, SideBySideDiff.Highlights highlights) {
+    }
+
+    private final Canvas canvas = new Canvas();
+    private final Canvas minimap = new Canvas(MINIMAP_WIDTH, 0);
+    private final Rectangle viewport = new Rectangle(MINIMAP_WIDTH, 0);
+    private final ScrollBar vertical = new ScrollBar();
+    private final ScrollBar horizontal = new ScrollBar();
+    private final Label leftTitle = new Label();
+    private final Label rightTitle = new Label();
+    private final double rowHeight;
+    private final double charWidth;
+    private final double baseline;
+    private final Map<Integer, Rendered> rendered = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Rendered> eldest) {
+            return size() > RENDERED_ROWS;
+        }
+    };
+    private SideBySideDiff diff;
+    private boolean drawPending;
+
+    public DiffPane() {
+        Text sample = new Text("0123456789");
+        sample.setFont(FONT);
+        charWidth = sample.getLayoutBounds().getWidth() / 10;
+        rowHeight = Math.ceil(sample.getLayoutBounds().getHeight()) + 2;
+        baseline = sample.getBaselineOffset() + 1;
+
+        Pane text = new Pane(canvas);
+        text.setMinSize(0, 0);
+        canvas.widthProperty().bind(text.widthProperty());
+        canvas.heightProperty().bind(text.heightProperty());
+        canvas.widthProperty().addListener((observable, previous, width) -> layoutChanged());
+        canvas.heightProperty().addListener((observable, previous, height) -> layoutChanged());
+        canvas.setFocusTraversable(true);
+        canvas.setOnMousePressed(e -> canvas.requestFocus());
+        canvas.setOnScroll(this::scrolled);
+        canvas.setOnKeyPressed(this::keyPressed);
+
+        Pane map = new Pane(minimap, viewport);
+        map.setMinSize(MINIMAP_WIDTH, 0);
+        map.setPrefWidth(MINIMAP_WIDTH);
+        minimap.heightProperty().bind(map.heightProperty());
+        minimap.heightProperty().addListener((observable, previous, height) -> drawMinimap());
+        viewport.setFill(Color.rgb(0, 0, 0, 0.12));
+        viewport.setStroke(Color.rgb(0, 0, 0, 0.35));
+        viewport.setMouseTransparent(true);
+        map.setOnMousePressed(this::minimapClicked);
+        map.setOnMouseDragged(this::minimapClicked);
+
+        vertical.setOrientation(Orientation.VERTICAL);
+        vertical.setUnitIncrement(1);
+        vertical.valueProperty().addListener((observable, previous, value) -> {
+            moveViewport();
+            requestDraw();
+        });
+        horizontal.setUnitIncrement(4);
+        horizontal.valueProperty().addListener((observable, previous, value) -> requestDraw());
+
+        GridPane titles = new GridPane();
+        for (int i = 0; i < 2; i++) {
+            ColumnConstraints column = new ColumnConstraints();
+            column.setPercentWidth(50);
+            titles.getColumnConstraints().add(column);
+        }
+        titles.addRow(0, leftTitle, rightTitle);
+        titles.setStyle("-fx-padding: 2 4 2 4;");
+
+        setTop(titles);
+        setCenter(text);
+        setRight(new HBox(map, vertical));
+        setBottom(horizontal);
+    }
+
+    // Show a diff (null to show nothing) with a title over each side
+    public void setDiff(SideBySideDiff diff, String left, String right) {
+        this.diff = diff;
+        rendered.clear();
+        leftTitle.setText(left);
+        rightTitle.setText(right);
+        vertical.setValue(0);
+        horizontal.setValue(0);
+        horizontal.setMax(diff == null ? 0 : diff.maxLineLength());
+        layoutChanged();
+        drawMinimap();
+        if (diff != null && diff.changes() > 0) {
+            scrollTo(diff.changeRow(0));
+        }
+    }
+
+    private void layoutChanged() {
+        int visible = visibleRows();
+        int rows = diff == null ? 0 : diff.rows();
+        vertical.setMax(Math.max(0, rows - visible));
+        vertical.setVisibleAmount(Math.max(1, Math.min(visible, rows)));
+        vertical.setBlockIncrement(Math.max(1, visible - 1));
+        horizontal.setVisibleAmount(Math.max(1, columns()));
+        horizontal.setBlockIncrement(Math.max(1, columns() / 2));
+        moveViewport();
+        requestDraw();
+    }
+
+    private void requestDraw() {
+        if (!drawPending) {
+            drawPending = true;
+            Platform.runLater(this::draw);
+        }
+    }
+
+    private void draw() {
+        drawPending = false;
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        g.setFill(BACKGROUND);
+        g.fillRect(0, 0, width, height);
+        if (diff == null) {
+            return;
+        }
+        g.setFont(FONT);
+        if (diff.isBinary()) {
+            g.setFill(TEXT);
+            g.fillText("Binary files differ", charWidth, baseline + 4);
+            return;
+        }
+        double half = Math.floor(width / 2);
+        double gutter = gutterWidth();
+        int columns = columns();
+        int column = (int) horizontal.getValue();
+        int first = (int) vertical.getValue();
+        int last = Math.min(diff.rows(), first + visibleRows() + 1);
+        for (int row = first; row < last; row++) {
+            Rendered line = render(row);
+            double y = (row - first) * rowHeight;
+            SideBySideDiff.Kind kind = line.row().kind();
+            boolean changed = kind == SideBySideDiff.Kind.CHANGED;
+            drawSide(g, 0, y, half, gutter, line.row().left(), line.left(),
+                    changed ? line.highlights().left() : List.of(),
+                    changed || kind == SideBySideDiff.Kind.DELETED ? DELETED : null, DELETED_WORD, column, columns);
+            drawSide(g, half, y, width - half, gutter, line.row().right(), line.right(),
+                    changed ? line.highlights().right() : List.of(),
+                    changed || kind == SideBySideDiff.Kind.ADDED ? ADDED : null, ADDED_WORD, column, columns);
+        }
+        g.setStroke(BLANK);
+        g.strokeLine(half + 0.5, 0, half + 0.5, height);
+    }
+
+    private void drawSide(GraphicsContext g, double x, double y, double width, double gutter, int line, String text,
+                          List<SideBySideDiff.Span> words, Color background, Color wordBackground, int column,
+                          int columns) {
+        if (line < 0) {
+            g.setFill(BLANK);
+            g.fillRect(x, y, width, rowHeight);
+            return;
+        }
+        g.setFill(GUTTER);
+        g.fillRect(x, y, gutter, rowHeight);
+        String number = String.valueOf(line + 1);
+        g.setFill(LINE_NUMBER);
+        g.fillText(number, x + gutter - (number.length() + 0.5) * charWidth, y + baseline);
+        if (background != null) {
+            g.setFill(background);
+            g.fillRect(x + gutter, y, width - gutter, rowHeight);
+        }
+        double textX = x + gutter + charWidth / 2;
+        g.setFill(wordBackground);
+        for (SideBySideDiff.Span word : words) {
+            int start = Math.max(word.start(), column);
+            int end = Math.min(word.end(), column + columns);
+            if (start < end) {
+                g.fillRect(textX + (start - column) * charWidth, y, (end - start) * charWidth, rowHeight);
+            }
+        }
+        if (column < text.length()) {
+            g.setFill(TEXT);
+            g.fillText(text.substring(column, Math.min(text.length(), column + columns)), textX, y + baseline);
+        }
+    }
+
+    private Rendered render(int row) {
+        Rendered line = rendered.get(row);
+        if (line == null) {
+            SideBySideDiff.Row r = diff.row(row);
+            String left = r.left() < 0 ? "" : SideBySideDiff.display(diff.left(), r.left());
+            String right = r.right() < 0 ? "" : SideBySideDiff.display(diff.right(), r.right());
+            line = new Rendered(r, left, right,
+                    r.kind() == SideBySideDiff.Kind.CHANGED ? SideBySideDiff.words(left, right) : null);
+            rendered.put(row, line);
+        }
+        return line;
+    }
+
+    // Marks for every change, scaled to the height of the view; redrawn only when the diff or the size changes
+    private void drawMinimap() {
+        GraphicsContext g = minimap.getGraphicsContext2D();
+        double height = minimap.getHeight();
+        g.setFill(GUTTER);
+        g.fillRect(0, 0, MINIMAP_WIDTH, height);
+        if (diff == null || diff.rows() == 0) {
+            return;
+        }
+        double scale = height / diff.rows();
+        int lastY = -1;
+        SideBySideDiff.Kind lastKind = null;
+        for (int i = 0; i < diff.changes(); i++) {
+            int y = (int) (diff.changeRow(i) * scale);
+            SideBySideDiff.Kind kind = diff.changeKind(i);
+            // Thousands of changes land on the same pixel rows of a long file; draw each mark once
+            if (y == lastY && kind == lastKind) {
+                continue;
+            }
+            g.setFill(kind == SideBySideDiff.Kind.DELETED ? DELETED_MARK
+                    : kind == SideBySideDiff.Kind.ADDED ? ADDED_MARK : CHANGED_MARK);
+            g.fillRect(2, y, MINIMAP_WIDTH - 4, Math.max(2, diff.changeRows(i) * scale));
+            lastY = y;
+            lastKind = kind;
+        }
+        moveViewport();
+    }
+
+    private void moveViewport() {
+        int rows = diff == null ? 0 : diff.rows();
+        if (rows == 0) {
+            viewport.setVisible(false);
+            return;
+        }
+        double scale = minimap.getHeight() / rows;
+        viewport.setVisible(true);
+        viewport.setY(Math.floor(vertical.getValue() * scale) + 0.5);
+        viewport.setHeight(Math.max(3, Math.min(visibleRows(), rows) * scale - 1));
+    }
+
+    private void minimapClicked(MouseEvent e) {
+        if (diff != null && diff.rows() > 0) {
+            int row = (int) (e.getY() / minimap.getHeight() * diff.rows());
+            setFirstRow(row - visibleRows() / 2);
+        }
+    }
+
+    private void scrolled(ScrollEvent e) {
+        double dx = e.getDeltaX() != 0 ? e.getDeltaX() : e.isShiftDown() ? e.getDeltaY() : 0;
+        if (dx != 0) {
+            horizontal.setValue(clamp(horizontal.getValue() - dx / charWidth, horizontal.getMax()));
+        } else {
+            vertical.setValue(clamp(vertical.getValue() - e.getDeltaY() / rowHeight, vertical.getMax()));
+        }
+        e.consume();
+    }
+
+    private void keyPressed(KeyEvent e) {
+        if (diff == null) {
+            return;
+        }
+        int first = (int) vertical.getValue();
+        int page = Math.max(1, visibleRows() - 1);
+        switch (e.getCode()) {
+            case UP -> setFirstRow(first - 1);
+            case DOWN -> setFirstRow(first + 1);
+            case PAGE_UP -> setFirstRow(first - page);
+            case PAGE_DOWN, SPACE -> setFirstRow(first + page);
+            case HOME -> setFirstRow(0);
+            case END -> setFirstRow(diff.rows());
+            case LEFT -> horizontal.setValue(clamp(horizontal.getValue() - 4, horizontal.getMax()));
+            case RIGHT -> horizontal.setValue(clamp(horizontal.getValue() + 4, horizontal.getMax()));
+            case N -> {
+                // Changes are placed a third of the way down, with some context above them
+                int next = diff.nextChange(first + visibleRows() / 3);
+                if (next >= 0) {
+                    scrollTo(next);
+                }
+            }
+            case P -> {
+                int previous = diff.previousChange(first + visibleRows() / 3);
+                if (previous >= 0) {
+                    scrollTo(previous);
+                }
+            }
+            default -> {
+                return;
+            }
+        }
+        e.consume();
+    }
+
+    private void scrollTo(int row) {
+        setFirstRow(row - visibleRows() / 3);
+    }
+
+    private void setFirstRow(int row) {
+        vertical.setValue(clamp(row, vertical.getMax()));
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    private int visibleRows() {
+        return (int) (canvas.getHeight() / rowHeight);
+    }
+
+    // Characters of text that fit on one side
+    private int columns() {
+        return Math.max(1, (int) ((Math.floor(canvas.getWidth() / 2) - gutterWidth() - charWidth / 2) / charWidth));
+    }
+
+    // Room for the largest line number on either side
+    private double gutterWidth() {
+        int lines = diff == null ? 0 : Math.max(diff.left().size(), diff.right().size());
+        return (String.valueOf(lines).length() + 1) * charWidth;
+    }
+}
@@ -0,0 +1,92 @@
+package com.smartapps.gitcontrolsystem.controllers;
+
+import com.smartapps.gitcontrolsystem.service.GitDiff;
+import com.smartapps.gitcontrolsystem.service.SideBySideDiff;
+import javafx.concurrent.Task;
+import javafx.scene.Scene;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SplitPane;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.util.List;
+
+// Window showing the files of a diff side by side, like "git difftool".
+//
+// The changed files are listed on the left and the selected one is shown in a DiffPane. Listing
+// the changes and opening a file both run as background queries; selecting another file cancels
+// an open that has not finished. Only the file on screen is held, and large files are mapped
+// rather than read (see SideBySideDiff), so the console never has to hold a huge patch.
+public class DiffView {
+    private final RepositoryTaskExecutor tasks;
+    private final ListView<GitDiff.FileChange> files = new ListView<>();
+    private final DiffPane pane = new DiffPane();
+    private Task<SideBySideDiff> opening;
+
+    public DiffView(RepositoryTaskExecutor tasks) {
+        this.tasks = tasks;
+        files.setCellFactory(view -> new ListCell<>() {
+            @Override
+            protected void updateItem(GitDiff.FileChange change, boolean empty) {
+                super.updateItem(change, empty);
+                setText(empty || change == null ? null : summary(change));
+            }
+        });
+        files.getSelectionModel().selectedItemProperty().addListener((observable, previous, change) -> open(change));
+    }
+
+    // The same revisions as "git diff [--cached] [<commit> [<commit>]]"
+    public void show(Window owner, List<String> revisions, boolean cached) {
+        SplitPane split = new SplitPane(files, pane);
+        split.setDividerPositions(0.22);
+        Stage stage = new Stage();
+        stage.initOwner(owner);
+        stage.setTitle("Diff" + (cached ? " --cached" : "") + (revisions.isEmpty() ? "" : " " + String.join(" ", revisions)));
+        stage.setScene(new Scene(split, 1200, 750));
+        stage.setOnHidden(e -> {
+            if (opening != null) {
+                opening.cancel();
+            }
+        });
+        stage.show();
+
+        tasks.read("git difftool", context -> GitDiff.changes(revisions, cached, GitDiff.Options.DEFAULT), changes -> {
+            files.getItems().setAll(changes);
+            if (!changes.isEmpty()) {
+                files.getSelectionModel().selectFirst();
+            }
+        });
+    }
+
+    private void open(GitDiff.FileChange change) {
+        if (opening != null) {
+            opening.cancel();
+        }
+        pane.setDiff(null, "", "");
+        if (change == null) {
+            return;
+        }
+        opening = tasks.read("git difftool " + change.path(), context -> SideBySideDiff.open(change), diff ->
+                pane.setDiff(diff, title("a/", change.oldPath(), change.oldHash(), false),
+                        title("b/", change.newPath(), change.newHash(), change.newFile() != null)));
+    }
+
+    private static String title(String prefix, String path, String hash, boolean workTree) {
+        if (hash == null) {
+            return "/dev/null";
+        }
+        return prefix + path + (workTree ? "  (working tree)" : "  (" + hash.substring(0, Math.min(7, hash.length())) + ")");
+    }
+
+    // Like "git diff --name-status": M path, R087 old -> new
+    private static String summary(GitDiff.FileChange change) {
+        return switch (change.status()) {
+            case ADDED -> "A  " + change.newPath();
+            case DELETED -> "D  " + change.oldPath();
+            case MODIFIED -> "M  " + change.path();
+            case RENAMED -> String.format("R%03d  %s -> %s", change.similarity(), change.oldPath(), change.newPath());
+            case COPIED -> String.format("C%03d  %s -> %s", change.similarity(), change.oldPath(), change.newPath());
+        };
+    }
+}
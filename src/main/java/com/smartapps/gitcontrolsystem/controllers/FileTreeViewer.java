@@ -1,23 +1,30 @@
 package com.smartapps.gitcontrolsystem.controllers;
 
+import com.smartapps.gitcontrolsystem.service.RepositoryWatcher;
+import com.smartapps.gitcontrolsystem.utils.Utils;
 import javafx.application.Application;
 import javafx.scene.Scene;
-import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class FileTreeViewer extends Application {
+    private LazyFileTree fileTree;
 
     @Override
     public void start(Stage primaryStage) {
-        File rootDirectory = new File(System.getProperty("user.dir"));
-        TreeItem<String> rootItem = new TreeItem<>(rootDirectory.getName());
-        rootItem.setExpanded(true);
-        buildFileTree(rootItem, rootDirectory);
-        TreeView<String> treeView = new TreeView<>(rootItem);
+        // Only the top level is listed now; deeper directories are listed when expanded
+        fileTree = new LazyFileTree(Utils.getRoot());
+        TreeView<Path> treeView = new TreeView<>();
+        fileTree.attach(treeView);
+        try {
+            fileTree.watch(RepositoryWatcher.start());
+        } catch (IOException e) {
+            System.out.println("File tree will not update automatically: " + e.getMessage());
+        }
         StackPane root = new StackPane();
         root.getChildren().add(treeView);
         Scene scene = new Scene(root, 400, 300);
@@ -25,16 +32,11 @@ public class FileTreeViewer extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
     }
-    private void buildFileTree(TreeItem<String> parentItem, File directory) {
-        if (directory.isDirectory()) {
-            for (File file : directory.listFiles()) {
-                TreeItem<String> childItem = new TreeItem<>(file.getName());
-                parentItem.getChildren().add(childItem);
-                if (file.isDirectory()) {
-                    buildFileTree(childItem, file);
-                }
-            }
-        }
+
+    @Override
+    public void stop() {
+        fileTree.close();
+        RepositoryWatcher.stop();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,264 @@
+package com.smartapps.gitcontrolsystem.controllers;
+
+import com.smartapps.gitcontrolsystem.service.GitStatus;
+import com.smartapps.gitcontrolsystem.service.IgnoreRules;
+import com.smartapps.gitcontrolsystem.service.RepositoryWatcher;
+import javafx.application.Platform;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Lazily populated file tree for a TreeView.
+//
+// Only the root is listed up front; a directory's children are listed with Files.newDirectoryStream on
+// a background thread the first time it is expanded, and the listing is cached until a watcher event
+// for that directory invalidates it. Nodes are labelled with their status (staged, modified,
+// untracked), which is computed in the background as well. Ignored files and directories are
+// listed but labelled as such, and everything below an ignored directory is too.
+public class LazyFileTree {
+    // Watcher events and commands arriving within this long of each other share one status run
+    private static final long STATUS_DELAY_MILLIS = 300;
+    private static final Comparator<Child> ORDER = Comparator.comparing((Child child) -> !child.directory())
+            .thenComparing(child -> child.name().toLowerCase());
+
+    private record Child(String name, boolean directory, boolean ignored) {
+    }
+
+    private final Path root;
+    private final Item rootItem;
+    private final ExecutorService loader = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Path, List<Child>> listings = new ConcurrentHashMap<>();
+    // Expanded directories, so watcher events can find the node to refresh
+    private final Map<Path, Item> loaded = new ConcurrentHashMap<>();
+    private final AtomicBoolean statusPending = new AtomicBoolean();
+    private volatile Map<String, String> labels = Map.of();
+    private volatile Set<String> changedDirectories = Set.of();
+    private TreeView<Path> view;
+    private RepositoryWatcher watcher;
+    private RepositoryWatcher.Listener listener;
+
+    public LazyFileTree(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.rootItem = new Item(this.root, true, false);
+        rootItem.setExpanded(true);
+    }
+
+    public void attach(TreeView<Path> view) {
+        this.view = view;
+        view.setCellFactory(tree -> new TreeCell<>() {
+            @Override
+            protected void updateItem(Path path, boolean empty) {
+                super.updateItem(path, empty);
+                setText(empty || path == null ? null : label(path, getTreeItem() instanceof Item item && item.ignored));
+            }
+        });
+        view.setRoot(rootItem);
+        refreshStatus();
+    }
+
+    // Recompute the status labels in the background. Calls made within STATUS_DELAY_MILLIS are merged
+    // into one run, which is read-only so it never competes with commands for the index lock.
+    public void refreshStatus() {
+        if (!statusPending.compareAndSet(false, true)) {
+            return;
+        }
+        loader.submit(() -> {
+            try {
+                Thread.sleep(STATUS_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                statusPending.set(false);
+            }
+            try {
+                GitStatus.Result status = GitStatus.status(false);
+                Map<String, String> newLabels = new HashMap<>();
+                status.staged().forEach((path, state) -> newLabels.put(path, "staged"));
+                status.unstaged().forEach((path, state) -> newLabels.merge(path,
+                        state == GitStatus.State.UNTRACKED ? "untracked" : "modified", (a, b) -> a + ", " + b));
+                Set<String> directories = new HashSet<>();
+                for (String path : newLabels.keySet()) {
+                    for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                        if (!directories.add(path.substring(0, slash))) {
+                            break;
+                        }
+                    }
+                }
+                labels = newLabels;
+                changedDirectories = directories;
+                Platform.runLater(() -> {
+                    if (view != null) {
+                        view.refresh();
+                    }
+                });
+            } catch (IOException e) {
+                System.out.println("Could not read repository status: " + e.getMessage());
+            }
+        });
+    }
+
+    // Keep expanded directories and status labels up to date from watcher events
+    public void watch(RepositoryWatcher watcher) {
+        this.watcher = watcher;
+        listener = new RepositoryWatcher.Listener() {
+            @Override
+            public void onEvents(List<RepositoryWatcher.Event> events) {
+                Set<Path> directories = new HashSet<>();
+                boolean rulesChanged = false;
+                for (RepositoryWatcher.Event event : events) {
+                    rulesChanged |= root.resolve(event.path()).getFileName().toString().equals(IgnoreRules.FILE_NAME);
+                    Path parent = root.resolve(event.path()).getParent();
+                    if (event.kind() != RepositoryWatcher.Kind.MODIFIED && parent != null) {
+                        directories.add(parent);
+                    }
+                    if (event.kind() == RepositoryWatcher.Kind.DELETED) {
+                        listings.remove(root.resolve(event.path()));
+                    }
+                }
+                if (rulesChanged) {
+                    // Any listing may have changed what it labels as ignored
+                    IgnoreRules.current().refresh();
+                    directories.addAll(listings.keySet());
+                }
+                directories.forEach(LazyFileTree.this::reload);
+                refreshStatus();
+            }
+
+            @Override
+            public void onOverflow() {
+                listings.keySet().forEach(LazyFileTree.this::reload);
+                refreshStatus();
+            }
+        };
+        watcher.addListener(listener);
+    }
+
+    public void close() {
+        if (watcher != null) {
+            watcher.removeListener(listener);
+        }
+        loader.shutdownNow();
+    }
+
+    private String label(Path path, boolean ignored) {
+        if (path.equals(root)) {
+            return root.getFileName() == null ? root.toString() : root.getFileName().toString();
+        }
+        String repoPath = root.relativize(path).toString().replace('\\', '/');
+        String name = path.getFileName().toString();
+        String status = labels.get(repoPath);
+        if (ignored && status == null) {
+            return name + "  [ignored]";
+        }
+        if (status != null) {
+            return name + "  [" + status + "]";
+        }
+        return changedDirectories.contains(repoPath) ? name + "  *" : name;
+    }
+
+    // Drop the cached listing of a directory and list it again if it is on screen
+    private void reload(Path directory) {
+        listings.remove(directory);
+        Item item = loaded.get(directory);
+        if (item != null) {
+            load(item);
+        }
+    }
+
+    private void load(Item item) {
+        loader.submit(() -> {
+            List<Child> children = listings.get(item.getValue());
+            if (children == null) {
+                children = list(item.getValue(), item.ignored);
+                listings.put(item.getValue(), children);
+            }
+            List<Child> listing = children;
+            Platform.runLater(() -> item.show(listing));
+        });
+    }
+
+    // Children of an ignored directory are all ignored
+    private List<Child> list(Path directory, boolean ignored) {
+        List<Child> children = new ArrayList<>();
+        String relative = root.relativize(directory).toString().replace('\\', '/');
+        IgnoreRules.Matcher matcher = IgnoreRules.current().directory(relative.isEmpty() ? "" : relative + "/");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                String name = child.getFileName().toString();
+                if (!IgnoreRules.isMetadata(name)) {
+                    boolean isDirectory = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+                    children.add(new Child(name, isDirectory, ignored || matcher.isIgnored(name, isDirectory)));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot list " + directory + ": " + e.getMessage());
+        }
+        children.sort(ORDER);
+        return children;
+    }
+
+    // A file or directory node; directories list their children the first time they are expanded
+    private class Item extends TreeItem<Path> {
+        private final boolean directory;
+        private final boolean ignored;
+        private boolean requested;
+
+        Item(Path path, boolean directory, boolean ignored) {
+            super(path);
+            this.directory = directory;
+            this.ignored = ignored;
+            if (directory) {
+                expandedProperty().addListener((observable, wasExpanded, expanded) -> {
+                    if (expanded && !requested) {
+                        requested = true;
+                        loaded.put(getValue(), this);
+                        load(this);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return !directory;
+        }
+
+        // Replace the children with a new listing, keeping the nodes (and their expansion) that still exist
+        private void show(List<Child> listing) {
+            Map<String, TreeItem<Path>> existing = new HashMap<>();
+            for (TreeItem<Path> child : getChildren()) {
+                existing.put(child.getValue().getFileName().toString(), child);
+            }
+            List<TreeItem<Path>> children = new ArrayList<>(listing.size());
+            for (Child child : listing) {
+                TreeItem<Path> item = existing.remove(child.name());
+                if (item == null || ((Item) item).directory != child.directory() || ((Item) item).ignored != child.ignored()) {
+                    item = new Item(getValue().resolve(child.name()), child.directory(), child.ignored());
+                }
+                children.add(item);
+            }
+            // Forget expanded directories that disappeared
+            for (TreeItem<Path> gone : existing.values()) {
+                loaded.keySet().removeIf(path -> path.startsWith(gone.getValue()));
+            }
+            getChildren().setAll(children);
+        }
+    }
+}
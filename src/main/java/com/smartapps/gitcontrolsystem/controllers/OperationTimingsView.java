@@ -0,0 +1,115 @@
+package com.smartapps.gitcontrolsystem.controllers;
+
+import com.smartapps.gitcontrolsystem.service.Metrics;
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Scene;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Window listing the latest repository operations, newest first, with how long each took.
+//
+// Rows come from the Metrics.Recent backend the UI installs, and new operations are added while
+// the window is open. Selecting a row shows the time spent in each phase and the operation's
+// counters (bytes read and written, objects written, cache hits, merge conflicts, ...).
+public class OperationTimingsView {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private final Metrics.Recent recent;
+    private final int capacity;
+    private final ObservableList<Metrics.Summary> rows = FXCollections.observableArrayList();
+    private final TableView<Metrics.Summary> table = new TableView<>(rows);
+    private final TextArea details = new TextArea();
+    // Operations finish on worker threads; rows are only touched on the FX thread
+    private final Consumer<Metrics.Summary> listener = summary -> Platform.runLater(() -> add(summary));
+
+    public OperationTimingsView(Metrics.Recent recent, int capacity) {
+        this.recent = recent;
+        this.capacity = capacity;
+        details.setEditable(false);
+        table.getColumns().add(column("Started", 100,
+                summary -> TIME_FORMAT.format(Instant.ofEpochMilli(summary.startedAt()))));
+        table.getColumns().add(column("Operation", 220, Metrics.Summary::operation));
+        table.getColumns().add(column("Duration (ms)", 100, summary -> millis(summary.nanos())));
+        table.getColumns().add(column("Result", 70, summary -> summary.failed() ? "failed" : "ok"));
+        table.getColumns().add(column("Phases", 400, Metrics.Summary::phasesText));
+        table.getSelectionModel().selectedItemProperty().addListener((observable, previous, summary) ->
+                details.setText(summary == null ? "" : describe(summary)));
+    }
+
+    public void show(Window owner) {
+        List<Metrics.Summary> snapshot = recent.snapshot();
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            rows.add(snapshot.get(i));
+        }
+        recent.addListener(listener);
+
+        SplitPane pane = new SplitPane(table, details);
+        pane.setOrientation(Orientation.VERTICAL);
+        pane.setDividerPositions(0.65);
+        Stage stage = new Stage();
+        stage.initOwner(owner);
+        stage.setTitle("Operation Timings");
+        stage.setScene(new Scene(pane, 900, 500));
+        stage.setOnHidden(e -> recent.removeListener(listener));
+        stage.show();
+    }
+
+    private void add(Metrics.Summary summary) {
+        rows.add(0, summary);
+        if (rows.size() > capacity) {
+            rows.remove(capacity, rows.size());
+        }
+    }
+
+    private static TableColumn<Metrics.Summary, String> column(String title, double width,
+                                                                Function<Metrics.Summary, String> text) {
+        TableColumn<Metrics.Summary, String> column = new TableColumn<>(title);
+        column.setPrefWidth(width);
+        column.setCellValueFactory(cell -> new SimpleStringProperty(text.apply(cell.getValue())));
+        return column;
+    }
+
+    private static String describe(Metrics.Summary summary) {
+        StringBuilder text = new StringBuilder();
+        text.append(summary.operation()).append(": ").append(millis(summary.nanos())).append(" ms")
+                .append(summary.failed() ? " (failed)" : "").append("\n");
+        if (!summary.phases().isEmpty()) {
+            text.append("\nPhases:\n");
+            for (Map.Entry<String, Metrics.PhaseTotal> phase : summary.phases().entrySet()) {
+                text.append("    ").append(phase.getKey()).append(": ").append(millis(phase.getValue().nanos()))
+                        .append(" ms");
+                if (phase.getValue().count() > 1) {
+                    text.append(" in ").append(phase.getValue().count()).append(" runs");
+                }
+                text.append("\n");
+            }
+        }
+        if (!summary.counters().isEmpty()) {
+            text.append("\nCounters:\n");
+            summary.counters().forEach((counter, value) ->
+                    text.append("    ").append(counter).append(": ").append(value).append("\n"));
+        }
+        return text.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,178 @@
+package com.smartapps.gitcontrolsystem.controllers;
+
+import com.smartapps.gitcontrolsystem.service.Metrics;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Runs repository operations off the JavaFX application thread.
+//
+// Every operation becomes a cancellable javafx.concurrent.Task on its own virtual thread. Operations
+// that change the repository take the write lock and run one at a time; read-only queries share the
+// read lock and run concurrently with each other. Output is batched and appended to the console on
+// the FX thread while the operation is still running.
+//
+// Cancelling a task that is still waiting for the lock stops it from running at all. A running query
+// sees isCancelled() and stops at its next check; a running write cannot be cancelled, so the
+// repository is never left half updated.
+//
+// Each task is one Metrics operation named after its title; the time spent waiting for the lock
+// is its "queued" phase and the service calls it makes show up as its other phases.
+public class RepositoryTaskExecutor {
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final Consumer<String> console;
+
+    @FunctionalInterface
+    public interface Operation<T> {
+        T run(Context context) throws Exception;
+    }
+
+    // Handed to a running operation for progress, incremental output and cancellation checks
+    public interface Context {
+        // A negative total means the amount of work is not known
+        void progress(long done, long total);
+
+        void message(String text);
+
+        void output(String text);
+
+        boolean isCancelled();
+    }
+
+    public RepositoryTaskExecutor(Consumer<String> console) {
+        this.console = console;
+    }
+
+    // A query that does not change the repository; may run alongside other queries
+    public <T> Task<T> read(String title, Operation<T> operation, Consumer<T> onSuccess) {
+        return submit(title, lock.readLock(), false, operation, onSuccess);
+    }
+
+    // An operation that changes the repository; runs alone
+    public <T> Task<T> write(String title, Operation<T> operation, Consumer<T> onSuccess) {
+        return submit(title, lock.writeLock(), true, operation, onSuccess);
+    }
+
+    private <T> Task<T> submit(String title, Lock lock, boolean write, Operation<T> operation,
+                               Consumer<T> onSuccess) {
+        RepositoryTask<T> task = new RepositoryTask<>(title, lock, write, operation);
+        task.setOnSucceeded(e -> {
+            task.flush();
+            if (onSuccess != null) {
+                onSuccess.accept(task.getValue());
+            }
+        });
+        task.setOnFailed(e -> {
+            task.flush();
+            task.getException().printStackTrace();
+            console.accept(title + " failed: " + task.getException().getMessage() + "\n");
+        });
+        task.setOnCancelled(e -> {
+            task.flush();
+            console.accept(title + " cancelled.\n");
+        });
+        threads.submit(task);
+        return task;
+    }
+
+    private class RepositoryTask<T> extends Task<T> implements Context {
+        private final Lock lock;
+        private final boolean write;
+        private final Operation<T> operation;
+        private final Object startGuard = new Object();
+        private final StringBuilder pending = new StringBuilder();
+        private boolean started;
+        private boolean flushScheduled;
+
+        RepositoryTask(String title, Lock lock, boolean write, Operation<T> operation) {
+            this.lock = lock;
+            this.write = write;
+            this.operation = operation;
+            updateTitle(title);
+            updateMessage(title + " (waiting)");
+        }
+
+        @Override
+        protected T call() throws Exception {
+            try (Metrics.Operation metrics = Metrics.begin(getTitle())) {
+                try {
+                    try (Metrics.Timer queued = Metrics.phase("queued")) {
+                        lock.lockInterruptibly();
+                    }
+                    try {
+                        synchronized (startGuard) {
+                            if (isCancelled()) {
+                                metrics.failed();
+                                return null;
+                            }
+                            started = true;
+                        }
+                        updateMessage(getTitle());
+                        return operation.run(this);
+                    } finally {
+                        lock.unlock();
+                    }
+                } catch (Exception e) {
+                    metrics.failed();
+                    throw e;
+                }
+            }
+        }
+
+        // Only a task waiting for the lock is interrupted; running operations poll isCancelled()
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (startGuard) {
+                if (started && write) {
+                    return false;
+                }
+                return super.cancel(!started);
+            }
+        }
+
+        @Override
+        public void progress(long done, long total) {
+            updateProgress(total < 0 ? -1 : done, total < 0 ? 1 : total);
+        }
+
+        @Override
+        public void message(String text) {
+            updateMessage(text);
+        }
+
+        // Chunks written between two FX pulses are appended together
+        @Override
+        public void output(String text) {
+            if (isCancelled()) {
+                return;
+            }
+            synchronized (pending) {
+                pending.append(text);
+                if (flushScheduled) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            Platform.runLater(this::flush);
+        }
+
+        private void flush() {
+            String text;
+            synchronized (pending) {
+                text = pending.toString();
+                pending.setLength(0);
+                flushScheduled = false;
+            }
+            if (!text.isEmpty()) {
+                console.accept(text);
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.smartapps.gitcontrolsystem.controllers;
 
 import com.smartapps.gitcontrolsystem.service.*;
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.geometry.Insets;
@@ -14,13 +17,20 @@ import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
 
 public class UiController implements Initializable {
     @FXML
@@ -60,66 +70,101 @@ public class UiController implements Initializable {
     private Button btnGetLogs;
 
     @FXML
-    private TreeView<?> TrVList;
+    private Button btnTimings;
+
+    @FXML
+    private TreeView<Path> TrVList;
+
+    private LazyFileTree fileTree;
 
     @FXML
     private TextArea tctCommands;
 
+    @FXML
+    private ProgressBar pbTask;
+
+    @FXML
+    private Label lblTask;
+
+    @FXML
+    private Button btnCancel;
+
+    // Repository operations run here, never on the FX thread
+    private final RepositoryTaskExecutor tasks = new RepositoryTaskExecutor(text -> tctCommands.appendText(text));
+
+    // The task shown in the status bar
+    private Task<?> current;
+
+    // Timings of the latest operations, for the timings window
+    private static final int RECENT_OPERATIONS = 500;
+    private final Metrics.Recent recentOperations = new Metrics.Recent(RECENT_OPERATIONS);
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
+        // Lists only the top level now; directories are listed on expansion, off the FX thread
+        Metrics.install(recentOperations);
+        fileTree = new LazyFileTree(Utils.getRoot());
+        fileTree.attach(TrVList);
+        RepositoryWatcher watcher = RepositoryWatcher.current();
+        if (watcher != null) {
+            fileTree.watch(watcher);
+        }
         setListeners();
     }
 
     void setListeners() {
         btnInit.setOnAction(e -> {
-            tctCommands.setText(GitServices.init());
+            change("git init", context -> context.output(GitServices.init() + "\n"));
         });
         btnAdd.setOnAction(e -> {
             openFileChooser();
         });
         btnGetLogs.setOnAction(e -> {
-            GitServices.log();
+            query("git log", this::log);
         });
         mnGetCurrentBranch.setOnAction(e -> {
-            tctCommands.setText(GitServices.getCurrentBranch());
+            query("git branch --show-current", context -> context.output(GitServices.getCurrentBranch() + "\n"));
         });
         mnCreateBranch.setOnAction(e -> {
             String value = showInputPopup();
-            GitServices.createBranch(value);
-
+            change("git branch " + value, context -> context.output(GitServices.createBranch(value) + "\n"));
         });
         mnCommit.setOnAction(e -> {
             String value = showInputPopup();
-            GitCommit.commit(value);
+            change("git commit", context -> commit(context, value));
         });
         mnCommitHistory.setOnAction(e -> {
-            tctCommands.setText(GitCommit.viewCommitHistory());
-            ;
+            // Rows are loaded a page at a time as they scroll into view
+            new CommitHistoryView(tasks).show(btnGetLogs.getScene().getWindow());
         });
         mbSwitchBranch.setOnAction(e -> {
             String value = showInputPopup();
-            GitServices.switchBranch(value);
+            change("git switch " + value, context -> context.output(GitServices.switchBranch(value) + "\n"));
         });
         mnListOfBranches.setOnAction(e -> {
-            tctCommands.setText(GitServices.listBranches());
+            query("git branch", context -> context.output(GitServices.listBranches() + "\n"));
         });
         mnAllCommit.setOnAction(e -> {
-            StringBuilder commitHash = new StringBuilder();
-            List<String> listOfCommitHashMaps =
-                    GitCommitFiles.getAllCommitHashes();
-            assert listOfCommitHashMaps != null;
-            for (String m : listOfCommitHashMaps) {
-                commitHash.append(m).append("\n");
-            }
-            //tctCommands.setText(commitHash.toString());
+            query("all commits", context -> {
+                List<String> listOfCommitHashMaps = GitCommitFiles.getAllCommitHashes();
+                if (listOfCommitHashMaps == null) {
+                    return;
+                }
+                StringBuilder commitHash = new StringBuilder();
+                for (String m : listOfCommitHashMaps) {
+                    commitHash.append(m).append("\n");
+                }
+                context.output(commitHash.toString());
+            });
         });
         btnMerger.setOnAction(e -> {
             String value = showInputPopup();
-            try {
-                MergeAndConflict.merge(value);
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
+            change("git merge " + value, context -> merge(context, value));
+        });
+        btnTimings.setOnAction(e -> showTimings());
+        btnCancel.setOnAction(e -> {
+            if (current != null) {
+                current.cancel();
             }
         });
         tctCommands.setOnKeyReleased(e -> {
@@ -128,20 +173,48 @@ public class UiController implements Initializable {
 
                 if ("git init".equals(inputText)) {
                     // Initialize Git repository
-                    tctCommands.setText(GitServices.init());
+                    change(inputText, context -> context.output(GitServices.init() + "\n"));
+                } else if ("git gc".equals(inputText)) {
+                    // Pack loose objects
+                    change(inputText, context -> context.output(GitServices.gc() + "\n"));
+                } else if ("git status".equals(inputText)) {
+                    // Show staged, unstaged and untracked changes
+                    query(inputText, context -> context.output(GitServices.status()));
+                } else if ("git cache".equals(inputText)) {
+                    // Object cache hit rate and size
+                    query(inputText, context -> context.output(GitServices.cacheStats() + "\n"));
+                } else if ("git diff".equals(inputText) || inputText.startsWith("git diff ")) {
+                    // Unstaged changes as a patch; --cached, --stat, -C and two commits like the CLI
+                    List<String> args = new ArrayList<>(Arrays.asList(inputText.split(" ")));
+                    args.subList(0, 2).clear();
+                    query(inputText, context -> diff(context, args));
+                } else if ("git difftool".equals(inputText) || inputText.startsWith("git difftool ")) {
+                    // The same changes side by side in a window, for diffs too large for the console
+                    List<String> args = new ArrayList<>(Arrays.asList(inputText.split(" ")));
+                    args.subList(0, 2).clear();
+                    boolean cached = args.remove("--cached") | args.remove("--staged");
+                    new DiffView(tasks).show(btnTimings.getScene().getWindow(), args, cached);
+                } else if ("git timings".equals(inputText)) {
+                    // Recent operations and where their time went
+                    showTimings();
+                } else if ("git log".equals(inputText)) {
+                    // Print commits as they are read
+                    query(inputText, this::log);
+                } else if (inputText.startsWith("git log ")) {
+                    // Only the commits that changed a file or directory, e.g. "git log -- src/Main.java"
+                    String path = inputText.substring("git log ".length()).replaceFirst("^--(\\s+|$)", "");
+                    query(inputText, context -> logPath(context, path));
                 } else if ("git add".equals(inputText)) {
                     // Open file chooser for adding files
                     openFileChooser();
+                } else if (inputText.startsWith("git add ")) {
+                    // Stage a file or a whole directory, e.g. "git add ."
+                    String target = inputText.substring("git add ".length());
+                    change(inputText, context -> add(context, List.of(target)));
                 } else if (inputText.matches("git commit -m '.*'")) {
                     // Extract and handle the commit message
                     String commitMessage = inputText.replaceFirst("git commit -m '", "").replaceFirst("'$", "");
-                    try {
-                        GitCommit.commit(commitMessage);
-                        tctCommands.setText("Committed: " + commitMessage);
-                    } catch (Exception ex) {
-                        System.err.println("Commit failed: " + ex.getMessage());
-                        tctCommands.setText("Commit failed: " + ex.getMessage());
-                    }
+                    change("git commit", context -> commit(context, commitMessage));
                 } else {
                     // Handle unknown commands
                     tctCommands.setText("Unknown command: " + inputText);
@@ -151,6 +224,178 @@ public class UiController implements Initializable {
 
     }
 
+    // An operation whose only result is what it writes to the console
+    private interface Step {
+        void run(RepositoryTaskExecutor.Context context) throws Exception;
+    }
+
+    // Read-only operation; may run while other queries are running
+    private void query(String title, Step step) {
+        tctCommands.clear();
+        track(tasks.read(title, context -> {
+            step.run(context);
+            return null;
+        }, null));
+    }
+
+    // Operation that changes the repository; waits for everything else and then runs alone
+    private void change(String title, Step step) {
+        change(title, step, () -> { });
+    }
+
+    private void change(String title, Step step, Runnable onSuccess) {
+        tctCommands.clear();
+        track(tasks.write(title, context -> {
+            step.run(context);
+            return null;
+        }, result -> {
+            fileTree.refreshStatus();
+            onSuccess.run();
+        }));
+    }
+
+    // Show the progress of the latest task in the status bar until it finishes
+    private void track(Task<?> task) {
+        current = task;
+        pbTask.progressProperty().bind(task.progressProperty());
+        lblTask.textProperty().bind(task.messageProperty());
+        btnCancel.setDisable(false);
+        task.stateProperty().addListener((observable, oldState, state) -> {
+            if (task != current || !(state == Worker.State.SUCCEEDED || state == Worker.State.FAILED
+                    || state == Worker.State.CANCELLED)) {
+                return;
+            }
+            current = null;
+            pbTask.progressProperty().unbind();
+            lblTask.textProperty().unbind();
+            pbTask.setProgress(0);
+            lblTask.setText(task.getTitle() + ": " + state.toString().toLowerCase());
+            btnCancel.setDisable(true);
+        });
+    }
+
+    private void showTimings() {
+        new OperationTimingsView(recentOperations, RECENT_OPERATIONS).show(btnTimings.getScene().getWindow());
+    }
+
+    private void log(RepositoryTaskExecutor.Context context) {
+        long[] commits = {0};
+        GitServices.log(description -> {
+            if (context.isCancelled()) {
+                throw new CancellationException();
+            }
+            context.output(description + "\n");
+            context.progress(-1, -1);
+            context.message(++commits[0] + " commits");
+        });
+    }
+
+    private void logPath(RepositoryTaskExecutor.Context context, String path) {
+        long[] commits = {0};
+        GitServices.log(path, description -> {
+            if (context.isCancelled()) {
+                throw new CancellationException();
+            }
+            context.output(description + "\n");
+            context.progress(-1, -1);
+            context.message(++commits[0] + " commits");
+        });
+    }
+
+    private void diff(RepositoryTaskExecutor.Context context, List<String> args) throws IOException {
+        boolean cached = args.remove("--cached") | args.remove("--staged");
+        boolean stat = args.remove("--stat");
+        GitDiff.Options options = GitDiff.Options.DEFAULT.withCopies(args.remove("-C"));
+        if (args.remove("--no-renames")) {
+            options = options.withRenames(false);
+        }
+        List<GitDiff.FileChange> changes;
+        try {
+            changes = GitDiff.changes(args, cached, options);
+        } catch (NoSuchFileException | IllegalArgumentException e) {
+            context.output(e.getMessage() + "\n");
+            return;
+        }
+        context.message(changes.size() + " files changed");
+        // The patch reaches the console a few kilobytes at a time while later files are still diffed
+        try (OutputStream out = new BufferedOutputStream(new ConsoleOutput(context), 1 << 16)) {
+            if (stat) {
+                PatchWriter.writeStat(changes, out);
+            } else {
+                PatchWriter.writePatch(changes, options.context(), out);
+            }
+        }
+    }
+
+    // Hands written bytes to the console; cancelling the task stops the writer at its next write
+    private static class ConsoleOutput extends OutputStream {
+        private final RepositoryTaskExecutor.Context context;
+        // Bytes after the last line break, so a UTF-8 character is never split between outputs
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        ConsoleOutput(RepositoryTaskExecutor.Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            if (context.isCancelled()) {
+                throw new CancellationException();
+            }
+            int end = offset + length;
+            while (end > offset && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end == offset) {
+                pending.write(bytes, offset, length);
+                return;
+            }
+            pending.write(bytes, offset, end - offset);
+            context.output(pending.toString(StandardCharsets.UTF_8));
+            pending.reset();
+            pending.write(bytes, end, offset + length - end);
+        }
+
+        @Override
+        public void close() {
+            if (pending.size() > 0) {
+                context.output(pending.toString(StandardCharsets.UTF_8));
+                pending.reset();
+            }
+        }
+    }
+
+    private void add(RepositoryTaskExecutor.Context context, List<String> files) {
+        context.output(GitServices.add(files, progress -> context.message(progress.filesScanned.get()
+                + " files scanned, " + progress.filesHashed.get() + " hashed")) + "\n");
+    }
+
+    // A failed commit is thrown on, so the task is reported as failed
+    private void commit(RepositoryTaskExecutor.Context context, String message) throws IOException {
+        String hash = GitCommit.commit(message);
+        context.output(hash == null ? "No changes to commit.\n" : "Committed " + hash + ": " + message + "\n");
+    }
+
+    // Conflicts are left in the work tree and the index to be fixed and committed; a merge that
+    // could not be done is thrown on, so the task is reported as failed
+    private void merge(RepositoryTaskExecutor.Context context, String branch) throws IOException {
+        if (Refs.read(Refs.HEADS + branch) == null) {
+            throw new IOException("No branch named '" + branch + "'");
+        }
+        switch (MergeAndConflict.merge(branch)) {
+            case MERGED -> context.output("Merged branch " + branch + " into " + GitServices.getCurrentBranch() + ".\n");
+            case UP_TO_DATE -> context.output("Already up to date.\n");
+            case CONFLICTS -> context.output("Merging branch " + branch
+                    + " left conflicts; fix them and then commit the result.\n");
+            case FAILED -> throw new IOException("Could not merge branch " + branch);
+        }
+    }
+
     private void openFileChooser() {
         FileChooser fileChooser = new FileChooser();
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("All Files", "*.*"));
@@ -162,8 +407,8 @@ public class UiController implements Initializable {
             for (File file : selectedFiles) {
                 filesToAdd.add(file.getAbsolutePath());
             }
-            tctCommands.setText(GitServices.add(filesToAdd));
-            showAlert(Alert.AlertType.INFORMATION, "Files Staged", "Successfully staged the selected files.");
+            change("git add", context -> add(context, filesToAdd), () -> showAlert(Alert.AlertType.INFORMATION,
+                    "Files Staged", "Successfully staged the selected files."));
         } else {
             showAlert(Alert.AlertType.WARNING, "No Files Selected", "No files were selected. Please try again.");
         }
@@ -1,15 +1,23 @@
 package com.smartapps.gitcontrolsystem;
 
+import com.smartapps.gitcontrolsystem.service.RepositoryWatcher;
+import com.smartapps.gitcontrolsystem.utils.Utils;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.nio.file.Files;
 
 public class main extends Application {
     @Override
     public void start(Stage stage) throws IOException {
+        // Keep status and add fast by watching the working tree; -Dgitcontrolsystem.watch=false turns it off
+        if (Boolean.parseBoolean(System.getProperty("gitcontrolsystem.watch", "true"))
+                && Files.isDirectory(Utils.dotgitPath(""))) {
+            RepositoryWatcher.start();
+        }
         FXMLLoader fxmlLoader = new FXMLLoader(main.class.getResource("ui.fxml"));
         Scene scene = new Scene(fxmlLoader.load());
         stage.setTitle("Hello!");
@@ -17,6 +25,11 @@ public class main extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        RepositoryWatcher.stop();
+    }
+
     public static void main(String[] args) {
         launch();
     }
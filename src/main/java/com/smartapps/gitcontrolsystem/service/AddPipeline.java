@@ -0,0 +1,404 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Bulk "add" engine. A walker thread feeds a bounded queue of files, a fixed pool of virtual
+// threads stats, hashes and stores them in parallel, and the calling thread is the single writer
+// that collects the resulting entries and writes the index once at the end.
+// When a RepositoryWatcher is running, its snapshot replaces the directory walk. Ignored files and
+// directories are skipped, but files that are tracked although ignored are still updated.
+public class AddPipeline {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final Path END_OF_FILES = Path.of("");
+    private static final StagingIndex.Entry END_OF_RESULTS = new StagingIndex.Entry("", "", 0, 0, 0);
+
+    // Counters shared by all stages; read them at any time for progress and throughput
+    public static class Progress {
+        public final AtomicLong filesScanned = new AtomicLong();
+        public final AtomicLong filesHashed = new AtomicLong();
+        public final AtomicLong filesUnchanged = new AtomicLong();
+        public final AtomicLong filesRemoved = new AtomicLong();
+        public final AtomicLong bytesHashed = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        public long elapsedMillis() {
+            long end = endNanos == 0 ? System.nanoTime() : endNanos;
+            return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+        }
+
+        public long filesPerSecond() {
+            return filesScanned.get() * 1000 / Math.max(1, elapsedMillis());
+        }
+
+        public long bytesPerSecond() {
+            return bytesHashed.get() * 1000 / Math.max(1, elapsedMillis());
+        }
+
+        @Override
+        public String toString() {
+            return "Staged " + filesScanned.get() + " files (" + filesHashed.get() + " hashed, "
+                    + filesUnchanged.get() + " unchanged, " + filesRemoved.get() + " removed) in "
+                    + elapsedMillis() + " ms, " + filesPerSecond() + " files/s, "
+                    + bytesPerSecond() / (1024 * 1024) + " MB/s";
+        }
+    }
+
+    public static Progress addAll(Path root) throws IOException {
+        return addAll(List.of(root), progress -> { });
+    }
+
+    // Stage every file below the given roots (files are staged directly). Index entries below a
+    // root whose file no longer exists are removed, like "git add ." does.
+    public static Progress addAll(List<Path> roots, Consumer<Progress> listener) throws IOException {
+        // The index is read, merged and rewritten as a whole: a concurrent add in this or another
+        // process would otherwise replace it with a snapshot that lacks these entries
+        return Metrics.run("add", () -> {
+            // Entries are named relative to the root, so nothing outside it can be staged
+            for (Path root : roots) {
+                if (!Utils.isInWorkTree(root)) {
+                    throw new IOException("'" + root + "' is outside repository at '"
+                            + Utils.getRoot().toAbsolutePath().normalize() + "'");
+                }
+            }
+            try (RepositoryLock lock = RepositoryLock.acquire(RepositoryLock.INDEX)) {
+                return addLocked(roots, listener);
+            }
+        });
+    }
+
+    private static Progress addLocked(List<Path> roots, Consumer<Progress> listener) throws IOException {
+        Progress progress = new Progress();
+        StagingIndex index = StagingIndex.load();
+        BlockingQueue<Path> files = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<StagingIndex.Entry> results = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+
+        IgnoreRules rules = IgnoreRules.current();
+        rules.refresh();
+        RepositoryWatcher watcher = RepositoryWatcher.current();
+        // Hashing and storing on the workers counts towards this add
+        Metrics.Operation operation = Metrics.current();
+        Thread walker = Thread.ofVirtual().name("add-walker").start(() -> {
+            try {
+                Map<String, StagingIndex.Stat> snapshot = watcher == null ? null : watcher.snapshot();
+                for (Path root : roots) {
+                    if (snapshot != null && Files.isDirectory(root)) {
+                        walkSnapshot(root, snapshot, index, files, results, progress);
+                    } else {
+                        walk(root, rules, index, files, failure);
+                    }
+                }
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, new IOException("Failed to list files to add", e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                signalEnd(files);
+            }
+        });
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            workers.add(Thread.ofVirtual().name("add-worker-" + i).start(() -> {
+                try (Metrics.Timer attached = operation.attach()) {
+                    hashFiles(index, files, results, progress, failure);
+                }
+            }));
+        }
+
+        // Single writer: collect entries until every worker has signalled completion
+        Map<String, StagingIndex.Entry> entries = index.toMap();
+        Set<String> seen = new HashSet<>();
+        long lastReport = System.nanoTime();
+        try {
+            int finished = 0;
+            while (finished < WORKERS) {
+                StagingIndex.Entry entry = results.poll(PROGRESS_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+                if (entry == END_OF_RESULTS) {
+                    finished++;
+                } else if (entry != null) {
+                    seen.add(entry.path());
+                    entries.put(entry.path(), entry);
+                }
+                if (System.nanoTime() - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                    listener.accept(progress);
+                    lastReport = System.nanoTime();
+                }
+            }
+            walker.join();
+        } catch (InterruptedException e) {
+            walker.interrupt();
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("add interrupted");
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        updateUnseen(roots, index, entries, seen, progress);
+        try (Metrics.Timer timer = Metrics.phase("index write")) {
+            StagingIndex.write(entries);
+        }
+        progress.endNanos = System.nanoTime();
+        operation.count("files scanned", progress.filesScanned.get());
+        operation.count("files hashed", progress.filesHashed.get());
+        operation.count("bytes hashed", progress.bytesHashed.get());
+        listener.accept(progress);
+        System.out.println(progress);
+        return progress;
+    }
+
+    // Workers keep draining the queue even after a failure, so these puts only block briefly
+    private static void signalEnd(BlockingQueue<Path> files) {
+        try {
+            for (int i = 0; i < WORKERS; i++) {
+                files.put(END_OF_FILES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void walk(Path root, IgnoreRules rules, StagingIndex index, BlockingQueue<Path> files,
+                             AtomicReference<IOException> failure) throws InterruptedException {
+        if (!Files.exists(root)) {
+            System.out.println("File " + root + " does not exist!");
+            return;
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                // Matchers of the directories being visited, innermost first
+                private final Deque<IgnoreRules.Matcher> matchers = new ArrayDeque<>();
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (failure.get() != null) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    String path = Utils.toRepoPath(dir);
+                    boolean ignored;
+                    if (matchers.isEmpty()) {
+                        ignored = !path.isEmpty() && rules.isIgnored(path, true);
+                        if (ignored) {
+                            System.out.println("The following path is ignored by one of your .gitignore files: " + path);
+                        }
+                    } else {
+                        ignored = matchers.peek().isIgnored(dir.getFileName().toString(), true);
+                    }
+                    if (ignored) {
+                        // Tracked files below it are picked up by updateUnseen()
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    matchers.push(rules.directory(path.isEmpty() ? "" : path + "/"));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    matchers.pop();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    boolean ignored;
+                    if (matchers.isEmpty()) {
+                        // A file given by name is staged if it is tracked, even when it matches an ignore rule
+                        String path = Utils.toRepoPath(file);
+                        ignored = rules.isIgnored(path, false) && index.get(path) == null;
+                        if (ignored) {
+                            System.out.println("The following path is ignored by one of your .gitignore files: " + path);
+                        }
+                    } else {
+                        ignored = matchers.peek().isIgnored(file.getFileName().toString(), false);
+                    }
+                    if (attrs.isRegularFile() && !ignored) {
+                        try {
+                            files.put(file);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return FileVisitResult.TERMINATE;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    System.out.println("Skipping unreadable path " + file + ": " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    // Like walk(), but from the watcher's snapshot: files whose stat data still matches the index
+    // are passed straight to the writer, and only the others are queued for hashing
+    private static void walkSnapshot(Path root, Map<String, StagingIndex.Stat> snapshot, StagingIndex index,
+                                     BlockingQueue<Path> files, BlockingQueue<StagingIndex.Entry> results,
+                                     Progress progress) throws InterruptedException {
+        String relative = Utils.toRepoPath(root);
+        String dirPrefix = relative.isEmpty() ? "" : relative + "/";
+        for (Map.Entry<String, StagingIndex.Stat> file : snapshot.entrySet()) {
+            if (!file.getKey().startsWith(dirPrefix)) {
+                continue;
+            }
+            StagingIndex.Entry existing = index.get(file.getKey());
+            if (index.isUnchanged(existing, file.getValue())) {
+                progress.filesScanned.incrementAndGet();
+                progress.filesUnchanged.incrementAndGet();
+                results.put(existing);
+            } else {
+                files.put(Utils.workTreePath(file.getKey()));
+            }
+        }
+    }
+
+    private static void hashFiles(StagingIndex index, BlockingQueue<Path> files, BlockingQueue<StagingIndex.Entry> results,
+                                  Progress progress, AtomicReference<IOException> failure) {
+        try {
+            Path file;
+            while ((file = files.take()) != END_OF_FILES) {
+                if (failure.get() != null) {
+                    continue; // keep draining so the walker never blocks on a full queue
+                }
+                try {
+                    String path = Utils.toRepoPath(file);
+                    StagingIndex.Stat stat = StagingIndex.Stat.of(file);
+                    StagingIndex.Entry existing = index.get(path);
+                    progress.filesScanned.incrementAndGet();
+                    if (index.isUnchanged(existing, stat)) {
+                        progress.filesUnchanged.incrementAndGet();
+                        results.put(existing);
+                    } else {
+                        String hash;
+                        try (Metrics.Timer timer = Metrics.phase("hash")) {
+                            hash = ObjectStore.writeFile(file);
+                        }
+                        progress.filesHashed.incrementAndGet();
+                        progress.bytesHashed.addAndGet(stat.size());
+                        results.put(StagingIndex.Entry.of(path, hash, stat));
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (RuntimeException | Error e) {
+                    // Even an OutOfMemoryError on a huge file only fails the add; the worker keeps draining
+                    failure.compareAndSet(null, new IOException("Failed to add " + file, e));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            signalDone(results);
+        }
+    }
+
+    // The collector waits for one END_OF_RESULTS per worker, so every worker sends it however it
+    // stops. An interrupted worker does not: only the collector interrupts workers, and it has given up.
+    private static void signalDone(BlockingQueue<StagingIndex.Entry> results) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        try {
+            results.put(END_OF_RESULTS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Index entries at or below a root that the walk did not reach: removed if their path no longer
+    // holds a regular file (it is gone, or a directory now stands at a tracked file's path, or a file
+    // at a tracked directory's), and otherwise tracked files in ignored places, which are restaged
+    // if they changed
+    private static void updateUnseen(List<Path> roots, StagingIndex index, Map<String, StagingIndex.Entry> entries,
+                                     Set<String> seen, Progress progress) {
+        for (Path root : roots) {
+            String relative = Utils.toRepoPath(root);
+            List<StagingIndex.Entry> unseen = new ArrayList<>();
+            StagingIndex.Entry exact = relative.isEmpty() ? null : index.get(relative);
+            if (exact != null) {
+                unseen.add(exact);
+            }
+            unseen.addAll(index.entriesUnder(relative.isEmpty() ? "" : relative + "/"));
+            for (StagingIndex.Entry entry : unseen) {
+                if (seen.contains(entry.path())) {
+                    continue;
+                }
+                Path file = Utils.workTreePath(entry.path());
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (!attributes.isRegularFile()) {
+                        // A directory (or something else) now stands at a tracked file's path
+                        entries.remove(entry.path());
+                        progress.filesRemoved.incrementAndGet();
+                        continue;
+                    }
+                    StagingIndex.Stat stat = StagingIndex.Stat.of(attributes);
+                    progress.filesScanned.incrementAndGet();
+                    if (index.isUnchanged(entry, stat)) {
+                        progress.filesUnchanged.incrementAndGet();
+                    } else {
+                        entries.put(entry.path(), StagingIndex.Entry.of(entry.path(), ObjectStore.writeFile(file), stat));
+                        progress.filesHashed.incrementAndGet();
+                        progress.bytesHashed.addAndGet(stat.size());
+                    }
+                } catch (IOException e) {
+                    // Missing, or below a path that is now a file: ENOTDIR comes as a plain FileSystemException
+                    // on Linux, so the parents are checked. Anything else, such as AccessDeniedException,
+                    // keeps the entry.
+                    if (e instanceof NoSuchFileException || e instanceof NotDirectoryException || isBelowFile(entry.path())) {
+                        entries.remove(entry.path());
+                        progress.filesRemoved.incrementAndGet();
+                    } else {
+                        System.out.println("Skipping unreadable path " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    // Whether the nearest existing parent of a repository path is something other than a directory
+    private static boolean isBelowFile(String path) {
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            Path parent = Utils.workTreePath(path.substring(0, slash));
+            if (Files.exists(parent, LinkOption.NOFOLLOW_LINKS)) {
+                return !Files.isDirectory(parent, LinkOption.NOFOLLOW_LINKS);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,132 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+// Bloom filter of the paths a commit changed against its first parent, kept per commit in the
+// commit-graph so a path-limited log can pass over commits without reading their trees.
+//
+// Like git's changed-path filters: every changed file and each directory above it is added, with
+// 10 bits per path and 7 bit positions per path (about 1% false positives), derived from two
+// murmur3 hashes of the path by double hashing. A commit that changed nothing gets a single zero
+// byte, so every path is definitely absent. A commit that changed more than MAX_PATHS paths gets
+// an empty filter instead, which answers "maybe" for every path, the same as a commit written
+// before filters existed.
+final class ChangedPathFilter {
+    static final byte[] NONE = new byte[0];
+    private static final int MAX_PATHS = 512;
+    private static final int BITS_PER_PATH = 10;
+    private static final int HASHES = 7;
+    private static final int SEED1 = 0x293ae76f;
+    private static final int SEED2 = 0x7e646e2c;
+
+    // A path prepared for testing against many filters: its two hashes are computed once
+    record Key(String path, int hash1, int hash2) {
+    }
+
+    // Thrown out of the tree diff once a commit is known to be too large for a filter
+    private static class TooManyPaths extends RuntimeException {
+        TooManyPaths() {
+            super(null, null, false, false);
+        }
+    }
+
+    private ChangedPathFilter() {
+    }
+
+    static Key key(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        return new Key(path, murmur3(bytes, SEED1), murmur3(bytes, SEED2));
+    }
+
+    // The filter of a commit with this tree and first parent tree (null for a root commit)
+    static byte[] of(String parentTree, String tree) throws IOException {
+        Set<String> paths = new HashSet<>();
+        try {
+            Tree.diff(parentTree, tree, change -> {
+                String path = change.path();
+                // Directories are shared by many changes; stop at the first one already added
+                while (paths.add(path)) {
+                    if (paths.size() > MAX_PATHS) {
+                        throw new TooManyPaths();
+                    }
+                    int slash = path.lastIndexOf('/');
+                    if (slash < 0) {
+                        break;
+                    }
+                    path = path.substring(0, slash);
+                }
+            });
+        } catch (TooManyPaths e) {
+            return NONE;
+        }
+        return build(paths);
+    }
+
+    static byte[] build(Collection<String> paths) {
+        byte[] filter = new byte[Math.max(1, (paths.size() * BITS_PER_PATH + 7) / 8)];
+        int bits = filter.length * 8;
+        for (String path : paths) {
+            Key key = key(path);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = Integer.remainderUnsigned(key.hash1() + i * key.hash2(), bits);
+                filter[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return filter;
+    }
+
+    // False only if the path is certainly not in the filter stored at [offset, offset + length)
+    static boolean mightContain(ByteBuffer buffer, int offset, int length, Key key) {
+        if (length == 0) {
+            return true;
+        }
+        int bits = length * 8;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Integer.remainderUnsigned(key.hash1() + i * key.hash2(), bits);
+            if ((buffer.get(offset + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // MurmurHash3, x86 32-bit variant
+    static int murmur3(byte[] data, int seed) {
+        int hash = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[i * 4] & 0xFF) | (data[i * 4 + 1] & 0xFF) << 8
+                    | (data[i * 4 + 2] & 0xFF) << 16 | (data[i * 4 + 3] & 0xFF) << 24;
+            hash ^= mixK(k);
+            hash = Integer.rotateLeft(hash, 13) * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        int tail = blocks * 4;
+        switch (data.length & 3) {
+            case 3:
+                k ^= (data[tail + 2] & 0xFF) << 16;
+            case 2:
+                k ^= (data[tail + 1] & 0xFF) << 8;
+            case 1:
+                k ^= data[tail] & 0xFF;
+                hash ^= mixK(k);
+        }
+        hash ^= data.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+}
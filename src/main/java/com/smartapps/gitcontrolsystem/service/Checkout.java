@@ -0,0 +1,422 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+// Moves the working tree, the index and HEAD from the current commit to a branch's commit.
+//
+// Only paths that differ between the two commits are touched: the trees are diffed by subtree
+// hash, so a directory that is the same on both sides is never read, let alone written. Changed
+// files are streamed from the object store into a temp file next to their target by a few virtual
+// threads and renamed into place, and their index entries get the new stat data in the same pass,
+// so the next status does not rehash them. Paths the switch does not touch keep their index
+// entries and working tree files, so unrelated local changes carry over like they do in git.
+//
+// Before anything is written, every path about to change is checked: a staged change, a modified
+// file or an untracked file in the way makes the switch refuse instead of losing the user's work.
+// That includes a path that changes between file and directory: a directory may only give way to a
+// file if everything in it is removed by the switch, and a file may only give way to a directory
+// if the switch removes it. The working tree decides what is in the way, not the index, which may
+// hold stale entries on both sides of such a path.
+public final class Checkout {
+    private static final int WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final String TEMP_SUFFIX = ".checkout-tmp";
+    private static final long TRANSFER_CHUNK = 1L << 20;
+
+    // What a switch did
+    public record Result(String branch, int written, int deleted, long elapsedMillis) {
+        @Override
+        public String toString() {
+            return "Switched to branch " + branch + " (" + written + " files written, " + deleted + " removed, "
+                    + elapsedMillis + " ms)";
+        }
+    }
+
+    // The switch (or merge) would overwrite local changes to these paths; nothing was changed
+    public static class LocalChangesException extends IOException {
+        private final List<String> paths;
+
+        public LocalChangesException(List<String> paths) {
+            this("checkout", "switch branches", paths);
+        }
+
+        public LocalChangesException(String operation, String action, List<String> paths) {
+            super("Your local changes to the following files would be overwritten by " + operation + ":\n        "
+                    + String.join("\n        ", paths) + "\nCommit your changes or remove them before you " + action + ".");
+            this.paths = List.copyOf(paths);
+        }
+
+        public List<String> paths() {
+            return paths;
+        }
+    }
+
+    private Checkout() {
+    }
+
+    // Check out the branch's commit and point HEAD at the branch
+    public static Result switchBranch(String branch) throws IOException {
+        long start = System.nanoTime();
+        String target = Refs.read(Refs.HEADS + branch);
+        if (target == null) {
+            throw new NoSuchFileException("Branch " + branch + " does not exist!");
+        }
+        return Metrics.run("switch", () -> {
+            try (RepositoryLock lock = RepositoryLock.acquire(RepositoryLock.INDEX)) {
+                return switchLocked(branch, target, start);
+            }
+        });
+    }
+
+    private static Result switchLocked(String branch, String target, long start) throws IOException {
+        String current = GitServices.resolveHead();
+        String targetTree = Commit.read(target).tree();
+        List<Tree.Change> changes = new ArrayList<>();
+        try (Metrics.Timer timer = Metrics.phase("diff")) {
+            Tree.diff(current == null ? null : Commit.read(current).tree(), targetTree, changes::add);
+        }
+
+        StagingIndex index = StagingIndex.load();
+        TreeMap<String, StagingIndex.Entry> entries = index.toMap();
+        try (Metrics.Timer timer = Metrics.phase("check")) {
+            List<String> blocked = localChanges(index, fileAndDirectory(entries), "branch " + branch,
+                    path -> isFile(targetTree, path), changes);
+            if (!blocked.isEmpty()) {
+                throw new LocalChangesException(blocked);
+            }
+        }
+
+        List<Tree.Change> writes = new ArrayList<>();
+        Set<String> written = new HashSet<>();
+        Set<String> emptied = new HashSet<>();
+        int deleted = 0;
+        try (Metrics.Timer timer = Metrics.phase("delete")) {
+            for (Tree.Change change : changes) {
+                if (change.newHash() != null) {
+                    writes.add(change);
+                    written.add(change.path());
+                } else {
+                    delete(change.path());
+                    entries.remove(change.path());
+                    deleted++;
+                    String parent = parentOf(change.path());
+                    while (parent != null && emptied.add(parent)) {
+                        parent = parentOf(parent);
+                    }
+                }
+            }
+            // A directory removed with its files may have been standing where the target has
+            // a file that the diff sees as unchanged, when the current tree holds both
+            for (String dir : emptied) {
+                if (written.contains(dir) || Files.exists(Utils.workTreePath(dir), LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                Tree.Entry entry = Tree.entry(targetTree, dir);
+                if (entry != null && !entry.isTree()) {
+                    writes.add(new Tree.Change(dir, null, entry.hash()));
+                }
+            }
+            for (Tree.Change change : writes) {
+                clearWay(change.path());
+            }
+        }
+        try (Metrics.Timer timer = Metrics.phase("write")) {
+            for (StagingIndex.Entry entry : write(writes)) {
+                // A file replaces whatever the index had at its parents or below it
+                for (String parent = parentOf(entry.path()); parent != null; parent = parentOf(parent)) {
+                    entries.remove(parent);
+                }
+                entries.subMap(entry.path() + "/", entry.path() + "0").clear();
+                entries.put(entry.path(), entry);
+            }
+        }
+        try (Metrics.Timer timer = Metrics.phase("index write")) {
+            StagingIndex.write(entries);
+        }
+        Refs.transaction().set(Refs.HEAD, Refs.symbolic(Refs.HEADS + branch)).commit();
+
+        Metrics.count("files written", writes.size());
+        Metrics.count("files deleted", deleted);
+        return new Result(branch, writes.size(), deleted, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Refuse a merge that would overwrite local changes, the same way as a switch. current and merged
+    // map paths to blob hashes; merged is what the merge writes to the working tree.
+    static void checkMerge(Map<String, String> current, Map<String, String> merged) throws IOException {
+        List<Tree.Change> changes = new ArrayList<>();
+        merged.forEach((path, hash) -> {
+            if (!hash.equals(current.get(path))) {
+                changes.add(new Tree.Change(path, current.get(path), hash));
+            }
+        });
+        current.forEach((path, hash) -> {
+            if (!merged.containsKey(path)) {
+                changes.add(new Tree.Change(path, hash, null));
+            }
+        });
+        StagingIndex index = StagingIndex.load();
+        List<String> blocked = localChanges(index, fileAndDirectory(index.toMap()), "the merge result",
+                merged::containsKey, changes);
+        if (!blocked.isEmpty()) {
+            throw new LocalChangesException("merge", "merge", blocked);
+        }
+    }
+
+    // Whether the checkout's target has a file (rather than a directory or nothing) at a path
+    private interface Target {
+        boolean isFile(String path) throws IOException;
+    }
+
+    // The paths with local changes that the checkout would overwrite. A path may change if the index
+    // and the working tree still hold what the current commit has there, or already hold what the
+    // target has there.
+    private static List<String> localChanges(StagingIndex index, Set<String> untrusted, String targetName, Target target,
+                                             List<Tree.Change> changes) throws IOException {
+        Set<String> removed = new HashSet<>();
+        Set<String> added = new HashSet<>();
+        for (Tree.Change change : changes) {
+            (change.newHash() == null ? removed : added).add(change.path());
+        }
+        Set<String> blocked = new TreeSet<>();
+        for (Tree.Change change : changes) {
+            // The index entry is only evidence where the index does not also hold the other type
+            boolean trusted = untrusted.isEmpty() || !isAtOrBelow(change.path(), untrusted);
+            StagingIndex.Entry entry = trusted ? index.get(change.path()) : null;
+            String staged = entry == null ? null : entry.hash();
+            if (trusted && !Objects.equals(staged, change.oldHash()) && !Objects.equals(staged, change.newHash())) {
+                blocked.add(change.path());
+                continue;
+            }
+            if (change.newHash() != null) {
+                // A file where one of its directories has to go, unless the switch removes it
+                for (String parent = parentOf(change.path()); parent != null; parent = parentOf(parent)) {
+                    Path dir = Utils.workTreePath(parent);
+                    boolean inTheWay = Files.exists(dir, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS);
+                    if (added.contains(parent) || inTheWay && target.isFile(parent)) {
+                        throw new IOException("'" + parent + "' is both a file and a directory in " + targetName
+                                + "; it cannot be checked out");
+                    }
+                    if (inTheWay && !removed.contains(parent)) {
+                        blocked.add(parent);
+                    }
+                }
+            }
+            Path file = Utils.workTreePath(change.path());
+            if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                // Only files the switch removes may be in a directory that a file takes the place of
+                blocked.addAll(keptBelow(file, removed));
+                continue;
+            }
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                // Missing (deleted locally), or below a file that is checked above
+                continue;
+            }
+            if (entry != null && index.isUnchanged(entry, StagingIndex.Stat.of(file))) {
+                continue;
+            }
+            String hash = ObjectStore.hash(file);
+            if (!Objects.equals(hash, change.oldHash()) && !Objects.equals(hash, change.newHash())) {
+                blocked.add(change.path());
+            }
+        }
+        return new ArrayList<>(blocked);
+    }
+
+    // Index paths staged as a file while other entries are staged below them. The index should never
+    // hold these, but one written before such paths were refused may.
+    private static Set<String> fileAndDirectory(TreeMap<String, StagingIndex.Entry> entries) {
+        Set<String> paths = new HashSet<>();
+        for (String path : entries.keySet()) {
+            String below = entries.ceilingKey(path + "/");
+            if (below != null && below.startsWith(path + "/")) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private static boolean isAtOrBelow(String path, Set<String> dirs) {
+        for (String dir = path; dir != null; dir = parentOf(dir)) {
+            if (dirs.contains(dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFile(String treeHash, String path) throws IOException {
+        Tree.Entry entry = Tree.entry(treeHash, path);
+        return entry != null && !entry.isTree();
+    }
+
+    // Files below a directory that the switch does not remove
+    private static List<String> keptBelow(Path dir, Set<String> removed) throws IOException {
+        List<String> kept = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(path -> !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                    .map(Utils::toRepoPath)
+                    .filter(path -> !removed.contains(path))
+                    .forEach(kept::add);
+        }
+        return kept;
+    }
+
+    // After the deletions, a file's path and its parents must be free for it: empty directories left
+    // at its path are removed, and anything else still in the way fails the switch
+    private static void clearWay(String path) throws IOException {
+        Path file = Utils.workTreePath(path);
+        if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            List<Path> dirs;
+            try (Stream<Path> walk = Files.walk(file)) {
+                dirs = walk.sorted(Comparator.reverseOrder()).toList();
+            }
+            for (Path dir : dirs) {
+                // The check above only lets removed files be in there, so a file left is unexpected
+                if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+                    throw new DirectoryNotEmptyException(file + " still holds " + Utils.toRepoPath(dir));
+                }
+                Files.delete(dir);
+            }
+        }
+        for (String parent = parentOf(path); parent != null; parent = parentOf(parent)) {
+            Path dir = Utils.workTreePath(parent);
+            if (Files.exists(dir, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(dir.toString(), null, "a file is in the way of directory " + parent);
+            }
+        }
+    }
+
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? null : path.substring(0, slash);
+    }
+
+    // A file deleted locally is already gone; directories left empty are removed with it
+    private static void delete(String path) throws IOException {
+        Path file = Utils.workTreePath(path);
+        // A directory at the path holds other paths, and a file at a parent is a path of its own;
+        // either way there is nothing here to delete
+        if (Files.exists(file, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            Files.delete(file);
+        }
+        removeEmptyParents(file);
+    }
+
+    // Write every changed file on WORKERS virtual threads; returns their new index entries
+    private static List<StagingIndex.Entry> write(List<Tree.Change> writes) throws IOException {
+        if (writes.isEmpty()) {
+            return List.of();
+        }
+        // Parents are created up front, shallowest first, so workers never race on a directory
+        for (Tree.Change change : writes) {
+            Files.createDirectories(Utils.workTreePath(change.path()).getParent());
+        }
+
+        StagingIndex.Entry[] entries = new StagingIndex.Entry[writes.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Metrics.Operation operation = Metrics.current();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(WORKERS, writes.size()); i++) {
+            workers.add(Thread.ofVirtual().name("checkout-worker-" + i).start(() -> {
+                try (Metrics.Timer attached = operation.attach()) {
+                    int item;
+                    while (failure.get() == null && (item = next.getAndIncrement()) < entries.length) {
+                        Tree.Change change = writes.get(item);
+                        try {
+                            Path file = Utils.workTreePath(change.path());
+                            bytes.addAndGet(copy(change.newHash(), file));
+                            entries[item] = StagingIndex.Entry.of(change.path(), change.newHash(), StagingIndex.Stat.of(file));
+                        } catch (IOException e) {
+                            failure.compareAndSet(null, e);
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, new IOException("Failed to check out " + change.path(), e));
+                        }
+                    }
+                }
+            }));
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("checkout interrupted");
+        }
+        if (failure.get() != null) {
+            // HEAD and the index were not moved; files written so far already match the target,
+            // which the local changes check accepts, so running the switch again finishes it
+            throw failure.get();
+        }
+        Metrics.count("bytes checked out", bytes.get());
+        return List.of(entries);
+    }
+
+    // Stream an object into a temp file next to the target and rename it into place; returns its size
+    private static long copy(String hash, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try {
+            long size = 0;
+            try (InputStream in = ObjectStore.open(hash);
+                 ReadableByteChannel source = Channels.newChannel(in);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long transferred;
+                while ((transferred = out.transferFrom(source, size, TRANSFER_CHUNK)) > 0) {
+                    size += transferred;
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void removeEmptyParents(Path file) {
+        Path root = Utils.workTreePath("").toAbsolutePath().normalize();
+        Path dir = file.toAbsolutePath().normalize().getParent();
+        while (dir != null && dir.startsWith(root) && !dir.equals(root)) {
+            if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+                return;
+            }
+            try {
+                Files.delete(dir);
+            } catch (IOException e) {
+                return; // Not empty
+            }
+            dir = dir.getParent();
+        }
+    }
+}
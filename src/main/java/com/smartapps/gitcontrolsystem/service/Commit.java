@@ -0,0 +1,87 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// A commit object: the root tree of the snapshot, its parents and metadata.
+//
+//   tree <hash>
+//   parent <hash>        (zero or more)
+//   author <name> <epoch seconds>
+//
+//   <message>
+public record Commit(String hash, String tree, List<String> parents, String author, long timestamp, String message) {
+    // java.time instead of SimpleDateFormat: no Calendar and locale data to load, which is most of
+    // the startup time of a short "log -n 1"
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    // Parsed commits are kept in the repository cache
+    public static Commit read(String hash) throws IOException {
+        return RepositoryCache.current().get(RepositoryCache.Kind.COMMIT, hash, () -> parse(hash));
+    }
+
+    private static Commit parse(String hash) throws IOException {
+        String content = new String(ObjectStore.load(hash), StandardCharsets.UTF_8);
+        String tree = null;
+        List<String> parents = new ArrayList<>();
+        String author = "";
+        long timestamp = 0;
+        int end = content.indexOf("\n\n");
+        String header = end < 0 ? content : content.substring(0, end);
+        for (String line : header.split("\n")) {
+            if (line.startsWith("tree ")) {
+                tree = line.substring(5);
+            } else if (line.startsWith("parent ")) {
+                parents.add(line.substring(7));
+            } else if (line.startsWith("author ")) {
+                int space = line.lastIndexOf(' ');
+                author = line.substring(7, space);
+                timestamp = Long.parseLong(line.substring(space + 1));
+            }
+        }
+        if (tree == null) {
+            throw new IOException("Object " + hash + " is not a commit");
+        }
+        String message = end < 0 ? "" : content.substring(end + 2);
+        return new Commit(hash, tree, List.copyOf(parents), author, timestamp, message);
+    }
+
+    // Store a new commit object and return it
+    public static Commit create(String tree, List<String> parents, String author, String message) throws IOException {
+        long timestamp = System.currentTimeMillis() / 1000;
+        StringBuilder content = new StringBuilder();
+        content.append("tree ").append(tree).append('\n');
+        for (String parent : parents) {
+            content.append("parent ").append(parent).append('\n');
+        }
+        content.append("author ").append(author).append(' ').append(timestamp).append('\n');
+        content.append('\n').append(message);
+        String hash = ObjectStore.writeBytes(content.toString().getBytes(StandardCharsets.UTF_8));
+        Commit commit = new Commit(hash, tree, List.copyOf(parents), author, timestamp, message);
+        RepositoryCache.current().put(RepositoryCache.Kind.COMMIT, hash, commit);
+        return commit;
+    }
+
+    public String firstParent() {
+        return parents.isEmpty() ? null : parents.get(0);
+    }
+
+    // Human readable form used by log and the history views
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        text.append("Commit: ").append(hash).append("\n");
+        text.append("Author: ").append(author).append("\n");
+        text.append("Date: ").append(DATE_FORMAT.format(Instant.ofEpochSecond(timestamp))).append("\n");
+        text.append("Message: ").append(message).append("\n");
+        for (String parent : parents) {
+            text.append("Parent Commit: ").append(parent).append("\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,492 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Commit-graph cache in .dotgit/info/commit-graphs. Every commit gets a position (its parents
+// always come first) and a fixed-width record, so walking history is array indexing instead of
+// opening one commit object per step.
+//
+// The graph is split into layers so a commit only appends a small file. Each layer is
+//   "DCGR", int version, int base, int count,
+//   count records (32-byte hash, int parent1, int parent2, int generation, long timestamp),
+//   count ints: record numbers sorted by hash, for binary search,
+//   count ints: end offset of each record's changed-path filter in the filter data,
+//   the filter data (see ChangedPathFilter).
+// Version 1 layers, written before filters existed, end after the lookup table; their commits
+// have no filters until "gc" rewrites the graph with writeFilters().
+// Layers are merged whenever the newest one grows to half the size of the one below it,
+// which keeps the number of layers logarithmic in the number of commits.
+public class CommitGraph {
+    public static final int NONE = -1;
+    // parent2 value for commits with more than two parents; those are read from the commit object
+    private static final int OCTOPUS = -2;
+
+    private static final byte[] MAGIC = "DCGR".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_FILTERS = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int HASH_SIZE = 32;
+    private static final int RECORD_SIZE = HASH_SIZE + 4 + 4 + 4 + 8;
+
+    private static CommitGraph current;
+
+    private final Path dir;
+    private final long dirModified;
+    private final List<Layer> layers;
+    private final int size;
+
+    private CommitGraph(Path dir, long dirModified, List<Layer> layers) {
+        this.dir = dir;
+        this.dirModified = dirModified;
+        this.layers = layers;
+        this.size = layers.isEmpty() ? 0 : layers.get(layers.size() - 1).end();
+    }
+
+    public static Path graphDir() {
+        return Utils.dotgitPath("info", "commit-graphs");
+    }
+
+    // The mapped graph of the current repository; reloaded when layers were added or merged
+    public static synchronized CommitGraph load() throws IOException {
+        Path dir = graphDir();
+        long modified = Files.isDirectory(dir) ? Files.getLastModifiedTime(dir).toMillis() : 0;
+        if (current == null || !current.dir.equals(dir) || current.dirModified != modified) {
+            current = new CommitGraph(dir, modified, readLayers(dir));
+        }
+        return current;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Position of a commit in the graph, or NONE if it has not been added
+    public int indexOf(String hash) {
+        byte[] key = Utils.fromHex(hash);
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            int position = layers.get(i).find(key);
+            if (position != NONE) {
+                return position;
+            }
+        }
+        return NONE;
+    }
+
+    public String hashAt(int position) {
+        Layer layer = layerOf(position);
+        byte[] hash = new byte[HASH_SIZE];
+        layer.buffer.get(layer.recordOffset(position), hash);
+        return Utils.toHex(hash);
+    }
+
+    public int[] parents(int position) throws IOException {
+        Layer layer = layerOf(position);
+        int offset = layer.recordOffset(position) + HASH_SIZE;
+        int first = layer.buffer.getInt(offset);
+        int second = layer.buffer.getInt(offset + 4);
+        if (first == NONE) {
+            return new int[0];
+        }
+        if (second == NONE) {
+            return new int[]{first};
+        }
+        if (second != OCTOPUS) {
+            return new int[]{first, second};
+        }
+        List<String> hashes = Commit.read(hashAt(position)).parents();
+        int[] parents = new int[hashes.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = indexOf(hashes.get(i));
+        }
+        return parents;
+    }
+
+    public int firstParent(int position) {
+        Layer layer = layerOf(position);
+        return layer.buffer.getInt(layer.recordOffset(position) + HASH_SIZE);
+    }
+
+    // Generation numbers: 1 for root commits, otherwise 1 + the highest parent generation
+    public int generation(int position) {
+        Layer layer = layerOf(position);
+        return layer.buffer.getInt(layer.recordOffset(position) + HASH_SIZE + 8);
+    }
+
+    public long timestamp(int position) {
+        Layer layer = layerOf(position);
+        return layer.buffer.getLong(layer.recordOffset(position) + HASH_SIZE + 12);
+    }
+
+    // False if the commit certainly did not change the path against its first parent
+    boolean mayHaveChanged(int position, ChangedPathFilter.Key path) {
+        Layer layer = layerOf(position);
+        if (layer.filterEnds < 0) {
+            return true;
+        }
+        int record = position - layer.base;
+        int start = record == 0 ? 0 : layer.buffer.getInt(layer.filterEnds + (record - 1) * 4);
+        int end = layer.buffer.getInt(layer.filterEnds + record * 4);
+        return ChangedPathFilter.mightContain(layer.buffer, layer.filterData() + start, end - start, path);
+    }
+
+    // True if ancestor is reachable from descendant. Commits with a generation lower than the
+    // ancestor's cannot lead to it, so those branches of the walk are cut off immediately.
+    public boolean isReachable(int descendant, int ancestor) throws IOException {
+        int cutoff = generation(ancestor);
+        BitSet visited = new BitSet(size);
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(descendant);
+        while (!stack.isEmpty()) {
+            int position = stack.pop();
+            if (position == ancestor) {
+                return true;
+            }
+            if (visited.get(position) || generation(position) <= cutoff) {
+                continue;
+            }
+            visited.set(position);
+            for (int parent : parents(position)) {
+                stack.push(parent);
+            }
+        }
+        return false;
+    }
+
+    // Position of the commit, adding it (and any missing ancestors) to the graph first if needed
+    public static synchronized int lookup(String hash) throws IOException {
+        int position = load().indexOf(hash);
+        return position != NONE ? position : add(Commit.read(hash));
+    }
+
+    // Append a commit, plus any ancestors that are not in the graph yet, as one new layer
+    public static synchronized int add(Commit commit) throws IOException {
+        // Layers are numbered by position, so writers in different processes must take turns
+        try (RepositoryLock lock = RepositoryLock.acquire(RepositoryLock.COMMIT_GRAPH)) {
+            // The directory timestamp only has millisecond precision; re-read what the last writer left
+            current = null;
+            return addLocked(commit);
+        }
+    }
+
+    private static int addLocked(Commit commit) throws IOException {
+        CommitGraph graph = load();
+        int existing = graph.indexOf(commit.hash());
+        if (existing != NONE) {
+            return existing;
+        }
+        // Collect missing commits parents-first without recursion, so long legacy histories are fine
+        Map<String, Commit> pending = new LinkedHashMap<>();
+        Set<String> expanded = new HashSet<>();
+        Deque<Commit> stack = new ArrayDeque<>();
+        stack.push(commit);
+        while (!stack.isEmpty()) {
+            Commit top = stack.peek();
+            if (pending.containsKey(top.hash())) {
+                stack.pop();
+            } else if (expanded.add(top.hash())) {
+                for (String parent : top.parents()) {
+                    if (graph.indexOf(parent) == NONE && !pending.containsKey(parent)) {
+                        stack.push(Commit.read(parent));
+                    }
+                }
+            } else {
+                // Second visit: every missing parent has been placed already
+                stack.pop();
+                pending.put(top.hash(), top);
+            }
+        }
+
+        int base = graph.size;
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        int[] generations = new int[pending.size()];
+        ByteBuffer records = ByteBuffer.allocate(pending.size() * RECORD_SIZE);
+        Filters filters = new Filters(pending.size());
+        int i = 0;
+        for (Commit c : pending.values()) {
+            // Built now, while the parent's tree is most likely still in the cache
+            String parentTree = c.parents().isEmpty() ? null : Commit.read(c.parents().get(0)).tree();
+            filters.add(ChangedPathFilter.of(parentTree, c.tree()));
+            int[] parentPositions = new int[c.parents().size()];
+            int generation = 1;
+            for (int p = 0; p < parentPositions.length; p++) {
+                String parent = c.parents().get(p);
+                Integer local = positions.get(parent);
+                parentPositions[p] = local != null ? local : graph.indexOf(parent);
+                int parentGeneration = local != null ? generations[local - base] : graph.generation(parentPositions[p]);
+                generation = Math.max(generation, parentGeneration + 1);
+            }
+            records.put(Utils.fromHex(c.hash()))
+                    .putInt(parentPositions.length > 0 ? parentPositions[0] : NONE)
+                    .putInt(parentPositions.length > 2 ? OCTOPUS : parentPositions.length == 2 ? parentPositions[1] : NONE)
+                    .putInt(generation)
+                    .putLong(c.timestamp());
+            generations[i++] = generation;
+            positions.put(c.hash(), base + positions.size());
+        }
+
+        Files.createDirectories(graph.dir);
+        writeLayer(graph.dir, base, records.array(), filters);
+        mergeLayers(graph.dir);
+        current = null;
+        return positions.get(commit.hash());
+    }
+
+    private Layer layerOf(int position) {
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Layer layer = layers.get(i);
+            if (position >= layer.base) {
+                return layer;
+            }
+        }
+        throw new IndexOutOfBoundsException("No commit at graph position " + position);
+    }
+
+    private static List<Layer> readLayers(Path dir) throws IOException {
+        List<Layer> layers = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return layers;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "graph-*")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        int covered = 0;
+        for (Path file : files) {
+            Layer layer;
+            try {
+                layer = Layer.open(file);
+            } catch (NoSuchFileException e) {
+                // Merged into the layer below and deleted by a writer in another process after the
+                // listing; that layer now covers these positions, so list again
+                return readLayers(dir);
+            }
+            // A layer that starts below what is already covered was merged into the layer
+            // below it by a writer that stopped before deleting it
+            if (layer.base < covered) {
+                continue;
+            }
+            if (layer.base != covered) {
+                throw new IOException("Commit graph is missing positions " + covered + " to " + layer.base);
+            }
+            layers.add(layer);
+            covered = layer.end();
+        }
+        return layers;
+    }
+
+    // Merge the newest layers while the top one is at least half the size of the one below it
+    private static void mergeLayers(Path dir) throws IOException {
+        List<Layer> layers = readLayers(dir);
+        while (layers.size() > 1) {
+            Layer top = layers.get(layers.size() - 1);
+            Layer below = layers.get(layers.size() - 2);
+            if (top.count * 2 < below.count) {
+                break;
+            }
+            writeLayer(dir, below.base, records(below, top), filters(false, below, top));
+            Files.deleteIfExists(top.file);
+            layers = readLayers(dir);
+        }
+    }
+
+    // Rewrite the whole graph as one layer, building the changed-path filters that layers written
+    // before filters existed are missing; returns a line for the gc report
+    public static synchronized String writeFilters() throws IOException {
+        try (RepositoryLock lock = RepositoryLock.acquire(RepositoryLock.COMMIT_GRAPH)) {
+            current = null;
+            Path dir = graphDir();
+            Layer[] layers = readLayers(dir).toArray(new Layer[0]);
+            int missing = 0;
+            for (Layer layer : layers) {
+                missing += layer.filterEnds < 0 ? layer.count : 0;
+            }
+            if (missing == 0) {
+                return "Changed-path filters are up to date.";
+            }
+            writeLayer(dir, 0, records(layers), filters(true, layers));
+            for (int i = 1; i < layers.length; i++) {
+                Files.deleteIfExists(layers[i].file);
+            }
+            current = null;
+            return "Wrote changed-path filters for " + missing + " commits.";
+        }
+    }
+
+    private static byte[] records(Layer... layers) {
+        int count = 0;
+        for (Layer layer : layers) {
+            count += layer.count;
+        }
+        byte[] records = new byte[count * RECORD_SIZE];
+        int offset = 0;
+        for (Layer layer : layers) {
+            layer.buffer.get(HEADER_SIZE, records, offset, layer.count * RECORD_SIZE);
+            offset += layer.count * RECORD_SIZE;
+        }
+        return records;
+    }
+
+    // The filters of consecutive layers; a layer without filters gets empty ones, or new ones if build is set
+    private static Filters filters(boolean build, Layer... layers) throws IOException {
+        int count = 0;
+        for (Layer layer : layers) {
+            count += layer.count;
+        }
+        Filters filters = new Filters(count);
+        for (Layer layer : layers) {
+            for (int record = 0; record < layer.count; record++) {
+                if (layer.filterEnds >= 0) {
+                    int start = record == 0 ? 0 : layer.buffer.getInt(layer.filterEnds + (record - 1) * 4);
+                    byte[] filter = new byte[layer.buffer.getInt(layer.filterEnds + record * 4) - start];
+                    layer.buffer.get(layer.filterData() + start, filter);
+                    filters.add(filter);
+                } else if (build) {
+                    byte[] hash = new byte[HASH_SIZE];
+                    layer.buffer.get(HEADER_SIZE + record * RECORD_SIZE, hash);
+                    Commit commit = Commit.read(Utils.toHex(hash));
+                    String parentTree = commit.parents().isEmpty() ? null : Commit.read(commit.parents().get(0)).tree();
+                    filters.add(ChangedPathFilter.of(parentTree, commit.tree()));
+                } else {
+                    filters.add(ChangedPathFilter.NONE);
+                }
+            }
+        }
+        return filters;
+    }
+
+    private static void writeLayer(Path dir, int base, byte[] records, Filters filters) throws IOException {
+        int count = records.length / RECORD_SIZE;
+        // Sort record numbers by hash for the lookup table
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(records, a * RECORD_SIZE, a * RECORD_SIZE + HASH_SIZE,
+                records, b * RECORD_SIZE, b * RECORD_SIZE + HASH_SIZE));
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + records.length + count * 8 + filters.size);
+        buffer.put(MAGIC).putInt(VERSION).putInt(base).putInt(count).put(records);
+        for (int record : order) {
+            buffer.putInt(record);
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(filters.ends[i]);
+        }
+        for (byte[] filter : filters.filters) {
+            buffer.put(filter);
+        }
+        buffer.flip();
+        Path temp = Files.createTempFile(dir, "tmp_graph_", null);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, dir.resolve(String.format("graph-%010d", base)), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Changed-path filters of the records of a layer being written, in record order
+    private static final class Filters {
+        final List<byte[]> filters;
+        final int[] ends;
+        int size;
+
+        Filters(int count) {
+            filters = new ArrayList<>(count);
+            ends = new int[count];
+        }
+
+        void add(byte[] filter) {
+            size += filter.length;
+            ends[filters.size()] = size;
+            filters.add(filter);
+        }
+    }
+
+    // filterEnds is the offset of the filter end table, or -1 for a layer without filters
+    private record Layer(Path file, MappedByteBuffer buffer, int base, int count, int filterEnds) {
+        static Layer open(Path file) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(0, magic);
+            int version = buffer.getInt(4);
+            if (!Arrays.equals(magic, MAGIC) || (version != VERSION && version != VERSION_WITHOUT_FILTERS)) {
+                throw new IOException("Unsupported commit graph layer: " + file);
+            }
+            int count = buffer.getInt(12);
+            int filterEnds = version == VERSION ? HEADER_SIZE + count * (RECORD_SIZE + 4) : -1;
+            return new Layer(file, buffer, buffer.getInt(8), count, filterEnds);
+        }
+
+        int filterData() {
+            return filterEnds + count * 4;
+        }
+
+        int end() {
+            return base + count;
+        }
+
+        int recordOffset(int position) {
+            return HEADER_SIZE + (position - base) * RECORD_SIZE;
+        }
+
+        int find(byte[] key) {
+            int lookup = HEADER_SIZE + count * RECORD_SIZE;
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int record = buffer.getInt(lookup + mid * 4);
+                int cmp = compare(HEADER_SIZE + record * RECORD_SIZE, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return base + record;
+                }
+            }
+            return NONE;
+        }
+
+        private int compare(int offset, byte[] key) {
+            for (int i = 0; i < HASH_SIZE; i++) {
+                int cmp = Integer.compare(buffer.get(offset + i) & 0xFF, key[i] & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    }
+}
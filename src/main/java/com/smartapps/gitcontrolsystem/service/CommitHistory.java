@@ -0,0 +1,173 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Lazy walk over the history reachable from one or more commits, newest first.
+//
+// Commits come out in topological order: highest generation number first, then newest timestamp.
+// Only the commit-graph is consulted to order the walk; a commit object is read when next()
+// returns it. The commits still waiting in the queue form a cursor (their hashes joined with
+// commas) from which a later walk continues exactly where this one stopped: every commit already
+// returned has a higher generation than anything reachable from the queue, so nothing repeats.
+//
+// Limited to a path, the walk only returns commits whose version of the path differs from their
+// first parent's. Each commit's changed-path filter in the commit-graph is asked first, and
+// commits it rules out are passed over without reading the commit or any tree; only the ~1% false
+// positives and the commits that did change the path have their trees compared.
+public class CommitHistory implements Iterator<Commit> {
+
+    // One page of history and the cursor of the next page, or null after the root commits
+    public record Page(List<Commit> commits, String next) {
+    }
+
+    private final CommitGraph graph;
+    private final PriorityQueue<Integer> queue;
+    private final BitSet queued;
+    // null to return every commit
+    private final ChangedPathFilter.Key path;
+    // The next commit that changed the path, found by hasNext()
+    private int found = CommitGraph.NONE;
+
+    private CommitHistory(CommitGraph graph, List<Integer> start, String path) {
+        this.graph = graph;
+        this.path = path == null ? null : ChangedPathFilter.key(path);
+        this.queue = new PriorityQueue<>(Comparator.<Integer>comparingInt(graph::generation).reversed()
+                .thenComparing(Comparator.<Integer>comparingLong(graph::timestamp).reversed())
+                .thenComparing(Comparator.<Integer>reverseOrder()));
+        this.queued = new BitSet(graph.size());
+        start.forEach(this::enqueue);
+    }
+
+    // History of HEAD; empty if the current branch has no commits yet
+    public static CommitHistory fromHead() throws IOException {
+        return fromHead(null);
+    }
+
+    // Commits of HEAD that changed a file or directory ('/'-separated, relative to the root); all of them for null
+    public static CommitHistory fromHead(String path) throws IOException {
+        String head = GitServices.resolveHead();
+        return from(head == null ? "" : head, path);
+    }
+
+    // Continue from a cursor; a single commit hash is a cursor too
+    public static CommitHistory from(String cursor) throws IOException {
+        return from(cursor, null);
+    }
+
+    public static CommitHistory from(String cursor, String path) throws IOException {
+        List<Integer> start = new ArrayList<>();
+        for (String hash : cursor.split(",")) {
+            if (!hash.isBlank()) {
+                start.add(CommitGraph.lookup(hash.trim()));
+            }
+        }
+        // Loaded after the lookups, which may have added layers
+        return new CommitHistory(CommitGraph.load(), start, path);
+    }
+
+    public static Stream<Commit> stream(String cursor) throws IOException {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(from(cursor),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    // Up to limit commits starting at the cursor
+    public static Page page(String cursor, int limit) throws IOException {
+        CommitHistory history = from(cursor);
+        List<Commit> commits = new ArrayList<>(limit);
+        while (commits.size() < limit && history.hasNext()) {
+            commits.add(history.next());
+        }
+        return new Page(commits, history.cursor());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (path == null) {
+            return !queue.isEmpty();
+        }
+        try {
+            while (found == CommitGraph.NONE && !queue.isEmpty()) {
+                int position = poll();
+                if (changesPath(position)) {
+                    found = position;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return found != CommitGraph.NONE;
+    }
+
+    @Override
+    public Commit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            int position = path == null ? poll() : found;
+            found = CommitGraph.NONE;
+            return Commit.read(graph.hashAt(position));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int poll() throws IOException {
+        int position = queue.poll();
+        for (int parent : graph.parents(position)) {
+            enqueue(parent);
+        }
+        return position;
+    }
+
+    private boolean changesPath(int position) throws IOException {
+        if (!graph.mayHaveChanged(position, path)) {
+            Metrics.count("commits skipped by filter", 1);
+            return false;
+        }
+        Commit commit = Commit.read(graph.hashAt(position));
+        String before = commit.parents().isEmpty() ? null
+                : Tree.entryHash(Commit.read(commit.parents().get(0)).tree(), path.path());
+        String after = Tree.entryHash(commit.tree(), path.path());
+        boolean changed = after == null ? before != null : !after.equals(before);
+        if (!changed) {
+            Metrics.count("filter false positives", 1);
+        }
+        return changed;
+    }
+
+    // Where the walk stands now, or null if it is finished
+    public String cursor() {
+        if (queue.isEmpty() && found == CommitGraph.NONE) {
+            return null;
+        }
+        StringJoiner cursor = new StringJoiner(",");
+        if (found != CommitGraph.NONE) {
+            cursor.add(graph.hashAt(found));
+        }
+        for (int position : queue) {
+            cursor.add(graph.hashAt(position));
+        }
+        return cursor.toString();
+    }
+
+    private void enqueue(int position) {
+        if (position != CommitGraph.NONE && !queued.get(position)) {
+            queued.set(position);
+            queue.add(position);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+// Copy/insert delta encoding used inside pack files.
+// Layout: varint baseLength, varint resultLength, then a list of instructions:
+//   COPY   varint offset, varint length   (bytes taken from the base)
+//   INSERT varint length, raw bytes       (bytes stored literally)
+class Delta {
+    private static final int COPY = 1;
+    private static final int INSERT = 2;
+    private static final int BLOCK = 16;
+    private static final int MAX_CANDIDATES = 8;
+
+    // Returns the delta turning base into target, or null if it would not be smaller than target
+    static byte[] create(byte[] base, byte[] target) {
+        if (base.length < BLOCK || target.length < BLOCK) {
+            return null;
+        }
+        // Index the base in non-overlapping blocks; slot 0 holds how many candidate offsets follow
+        Map<Integer, int[]> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            int[] offsets = blocks.computeIfAbsent(blockHash(base, i), k -> new int[MAX_CANDIDATES + 1]);
+            if (offsets[0] < MAX_CANDIDATES) {
+                offsets[++offsets[0]] = i;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 4);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int insertStart = 0;
+        int pos = 0;
+        while (pos + BLOCK <= target.length) {
+            int bestOffset = -1;
+            int bestLength = 0;
+            int[] candidates = blocks.get(blockHash(target, pos));
+            if (candidates != null) {
+                for (int c = 1; c <= candidates[0]; c++) {
+                    int offset = candidates[c];
+                    int length = 0;
+                    while (offset + length < base.length && pos + length < target.length
+                            && base[offset + length] == target[pos + length]) {
+                        length++;
+                    }
+                    if (length > bestLength) {
+                        bestLength = length;
+                        bestOffset = offset;
+                    }
+                }
+            }
+            if (bestLength < BLOCK) {
+                pos++;
+                continue;
+            }
+            // Grow the match backwards into bytes that would otherwise be inserted
+            while (bestOffset > 0 && pos > insertStart && base[bestOffset - 1] == target[pos - 1]) {
+                bestOffset--;
+                pos--;
+                bestLength++;
+            }
+            writeInsert(out, target, insertStart, pos);
+            out.write(COPY);
+            writeVarint(out, bestOffset);
+            writeVarint(out, bestLength);
+            pos += bestLength;
+            insertStart = pos;
+            if (out.size() >= target.length) {
+                return null;
+            }
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.size() < target.length ? out.toByteArray() : null;
+    }
+
+    static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        int baseLength = readVarint(in);
+        int resultLength = readVarint(in);
+        if (baseLength != base.length) {
+            throw new IOException("Delta base length mismatch: expected " + baseLength + " but was " + base.length);
+        }
+        byte[] result = new byte[resultLength];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            int op = in.get();
+            if (op == COPY) {
+                int offset = readVarint(in);
+                int length = readVarint(in);
+                System.arraycopy(base, offset, result, pos, length);
+                pos += length;
+            } else if (op == INSERT) {
+                int length = readVarint(in);
+                in.get(result, pos, length);
+                pos += length;
+            } else {
+                throw new IOException("Corrupt delta instruction: " + op);
+            }
+        }
+        if (pos != resultLength) {
+            throw new IOException("Delta produced " + pos + " bytes, expected " + resultLength);
+        }
+        return result;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static int blockHash(byte[] data, int offset) {
+        int h = 1;
+        for (int i = offset; i < offset + BLOCK; i++) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -1,7 +1,5 @@
 package com.smartapps.gitcontrolsystem.service;
 
-import com.smartapps.gitcontrolsystem.utils.Utils;
-
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
@@ -40,11 +38,17 @@ public class GitCommitFiles {
         try {
         List<String> commitHashes = new ArrayList<>();
         String currentBranch = GitServices.getCurrentBranch();
-        String currentCommitHash = Utils.getBranchCommit(currentBranch); // or from your own getBranchCommit() method
+        String currentCommitHash = GitServices.getBranchCommit(currentBranch);
+        if (currentCommitHash == null) {
+            return commitHashes;
+        }
 
-        while (currentCommitHash != null) {
-            commitHashes.add(currentCommitHash);
-            currentCommitHash = GitCommit.getParentCommit(currentCommitHash); // Retrieve the parent commit
+        // Follow first parents through the commit graph instead of opening each commit
+        int position = CommitGraph.lookup(currentCommitHash);
+        CommitGraph graph = CommitGraph.load();
+        while (position != CommitGraph.NONE) {
+            commitHashes.add(graph.hashAt(position));
+            position = graph.firstParent(position);
         }
 
         Collections.reverse(commitHashes); // Reverse to get from oldest to latest commit
@@ -0,0 +1,147 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// Changed files between two trees, the index and a tree, or the working tree and the index.
+//
+// Trees are compared by subtree hash (Tree.diff, Tree.diffIndex), so unchanged directories are
+// skipped without reading them, and the working tree comparison reuses status, which only hashes
+// files whose stat data changed. The result is one small record per changed file; contents are
+// read later, one file at a time, when RenameDetector pairs deleted and added files or when
+// PatchWriter writes the patch, so even a diff of thousands of files only ever holds the contents
+// of the file being written.
+public class GitDiff {
+
+    public enum Status {
+        ADDED, DELETED, MODIFIED, RENAMED, COPIED
+    }
+
+    // One changed file. A null path and hash mean the file is absent on that side; newFile is set
+    // when the new side is a working tree file rather than a stored blob. similarity is the
+    // percentage of content a renamed or copied file shares with its source.
+    public record FileChange(Status status, String oldPath, String newPath, String oldHash, String newHash,
+                             int similarity, Path newFile) {
+        public String path() {
+            return newPath != null ? newPath : oldPath;
+        }
+
+        public byte[] readOld() throws IOException {
+            return oldHash == null ? new byte[0] : ObjectStore.read(oldHash);
+        }
+
+        public byte[] readNew() throws IOException {
+            if (newFile != null) {
+                return Files.readAllBytes(newFile);
+            }
+            return newHash == null ? new byte[0] : ObjectStore.read(newHash);
+        }
+
+        static FileChange of(Tree.Change change) {
+            Status status = change.oldHash() == null ? Status.ADDED : change.newHash() == null ? Status.DELETED : Status.MODIFIED;
+            return new FileChange(status, change.oldHash() == null ? null : change.path(),
+                    change.newHash() == null ? null : change.path(), change.oldHash(), change.newHash(), 0, null);
+        }
+    }
+
+    // threshold is the similarity (in percent) a pair needs to count as a rename or copy
+    public record Options(int context, boolean renames, boolean copies, int threshold) {
+        public static final Options DEFAULT = new Options(3, true, false, 50);
+
+        public Options withRenames(boolean renames) {
+            return new Options(context, renames, copies, threshold);
+        }
+
+        public Options withCopies(boolean copies) {
+            return new Options(context, renames || copies, copies, threshold);
+        }
+    }
+
+    // The diff "git diff [--cached] [<commit> [<commit>]]" shows: the working tree against the index,
+    // the index against HEAD or one commit (cached), or two commits against each other
+    public static List<FileChange> changes(List<String> revisions, boolean cached, Options options) throws IOException {
+        List<String> trees = new ArrayList<>();
+        for (String revision : revisions) {
+            String commit = GitServices.resolveRevision(revision);
+            if (commit == null) {
+                throw new NoSuchFileException("unknown revision '" + revision + "'");
+            }
+            trees.add(Commit.read(commit).tree());
+        }
+        if (cached && trees.size() <= 1) {
+            String head = GitServices.resolveHead();
+            String tree = !trees.isEmpty() ? trees.get(0) : head == null ? null : Commit.read(head).tree();
+            return indexToTree(tree, options);
+        } else if (!cached && trees.isEmpty()) {
+            return workTree(options);
+        } else if (!cached && trees.size() == 2) {
+            return trees(trees.get(0), trees.get(1), options);
+        }
+        throw new IllegalArgumentException("diff takes two commits, or at most one with --cached");
+    }
+
+    // Two trees (either may be null for "empty"), e.g. of two commits
+    public static List<FileChange> trees(String oldTree, String newTree, Options options) throws IOException {
+        List<FileChange> changes = new ArrayList<>();
+        try (Metrics.Timer timer = Metrics.phase("tree diff")) {
+            Tree.diff(oldTree, newTree, change -> changes.add(FileChange.of(change)));
+        }
+        return finish(changes, options);
+    }
+
+    // What is staged relative to a tree (null for "empty"), like "git diff --cached"
+    public static List<FileChange> indexToTree(String tree, Options options) throws IOException {
+        List<FileChange> changes = new ArrayList<>();
+        try (Metrics.Timer timer = Metrics.phase("tree diff")) {
+            Tree.diffIndex(tree, StagingIndex.load().entries(), change -> changes.add(FileChange.of(change)));
+        }
+        return finish(changes, options);
+    }
+
+    // Working tree changes that are not staged, like "git diff"; untracked files are not part of it
+    public static List<FileChange> workTree(Options options) throws IOException {
+        List<FileChange> changes = new ArrayList<>();
+        Map<String, GitStatus.State> unstaged = GitStatus.status().unstaged();
+        StagingIndex index = StagingIndex.load();
+        for (Map.Entry<String, GitStatus.State> file : unstaged.entrySet()) {
+            String path = file.getKey();
+            StagingIndex.Entry entry = index.get(path);
+            if (entry == null || file.getValue() == GitStatus.State.UNTRACKED) {
+                continue;
+            }
+            Path workTreeFile = Utils.workTreePath(path);
+            if (file.getValue() == GitStatus.State.DELETED) {
+                changes.add(new FileChange(Status.DELETED, path, null, entry.hash(), null, 0, null));
+                continue;
+            }
+            try {
+                changes.add(new FileChange(Status.MODIFIED, path, path, entry.hash(), ObjectStore.hash(workTreeFile),
+                        0, workTreeFile));
+            } catch (NoSuchFileException e) {
+                // Deleted since status looked at it
+                changes.add(new FileChange(Status.DELETED, path, null, entry.hash(), null, 0, null));
+            }
+        }
+        return finish(changes, options);
+    }
+
+    private static List<FileChange> finish(List<FileChange> changes, Options options) throws IOException {
+        List<FileChange> result = changes;
+        if (options.renames()) {
+            try (Metrics.Timer timer = Metrics.phase("renames")) {
+                result = RenameDetector.detect(changes, options);
+            }
+        }
+        result.sort(Comparator.comparing(FileChange::path));
+        Metrics.count("files changed", result.size());
+        return result;
+    }
+}
@@ -4,12 +4,16 @@ import com.smartapps.gitcontrolsystem.utils.Utils;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class GitServices {
     public static void main(String[] args) {
@@ -17,30 +21,44 @@ public class GitServices {
         //  createBranch("testbranch");
     }
 
-    public static String init() {
+    // How init ended; the message is what the console shows
+    public enum InitResult {
+        CREATED("Initialized empty Git repository in .dotgit"),
+        EXISTS("Repository already exists!"),
+        FAILED("Error creating Repository!");
+
+        private final String message;
+
+        InitResult(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return message;
+        }
+    }
+
+    public static InitResult init() {
         try {
-            File dotgit = new File(".dotgit");
-            if (!dotgit.exists()) {
+            // Below the repository root (Utils.getRoot()), not the working directory of the process
+            Path dotgit = Utils.dotgitPath("");
+            if (!Files.exists(dotgit)) {
                 // Create directory structure
-                new File(".dotgit/hooks").mkdirs();
-                new File(".dotgit/commits").mkdirs();
-                new File(".dotgit/info").mkdirs();
-                new File(".dotgit/objects").mkdirs();
-                new File(".dotgit/refs/heads").mkdirs();
-                new File(".dotgit/refs/tags").mkdirs();
+                for (String dir : List.of("hooks", "commits", "info", "objects", "refs/heads", "refs/tags")) {
+                    Files.createDirectories(dotgit.resolve(dir));
+                }
                 // Initialize HEAD file
-                File head = new File(".dotgit/HEAD");
-                head.createNewFile();
-                Utils.writeToFile(head, "ref: refs/heads/main");
+                Refs.transaction().create(Refs.HEAD, Refs.symbolic(Refs.HEADS + "main")).commit();
                 System.out.println("Initialized empty Git repository in .dotgit/");
-                return "Initialized empty Git repository in .dotgit";
+                return InitResult.CREATED;
             } else {
                 System.out.println("Repository already exists!");
-                return "Repository already exists!";
+                return InitResult.EXISTS;
             }
         } catch (IOException e) {
             e.printStackTrace();
-            return "Error creating Repository!";
+            return InitResult.FAILED;
         }
     }
 
@@ -68,107 +86,185 @@ public class GitServices {
 //    }
 
     public static String add(List<String> fileNames) {
-        StringBuilder output = new StringBuilder();
+        return add(fileNames, progress -> { });
+    }
+
+    // Same as add(fileNames), reporting the pipeline counters to the listener while it runs
+    public static String add(List<String> fileNames, Consumer<AddPipeline.Progress> listener) {
         try {
+            // Files (or whole directories) are hashed in parallel and the index is written once
+            List<Path> paths = new ArrayList<>();
             for (String fileName : fileNames) {
-                File file = new File(fileName);
-                // Check if the file exists
-                if (!file.exists()) {
-                    System.out.println("File " + fileName + " does not exist!");
-                    continue;
-                }
-                String fileContent = new String(Files.readAllBytes(Paths.get(fileName)));
-                String fileHash = Utils.computeHash(fileContent);
-                // Save the file content in the `.dotgit/objects` directory
-                File objectFile = new File(".dotgit/objects/" + fileHash);
-                if (!objectFile.exists()) {
-                    objectFile.getParentFile().mkdirs();
-                    objectFile.createNewFile();
-                    Utils.writeToFile(objectFile, fileContent);
-                }
-                // Add the file to the staging area (index)
-                File index = new File(".dotgit/index");
-                String entry = fileName + " " + fileHash + "\n";
-                Utils.appendToFile(index, entry);
-
-                System.out.println("File " + fileName + " added to staging area.");
-                output.append("File ").append(fileName).append(" added to staging area.\n");
+                paths.add(Paths.get(fileName));
             }
+            return AddPipeline.addAll(paths, listener).toString();
         } catch (IOException e) {
             e.printStackTrace();
-            return "error adding to staging area.";
+            return "error adding to staging area: " + e.getMessage();
         }
+    }
 
-        return String.valueOf(output);
+    // Compare the working tree, the index and HEAD
+    public static String status() {
+        try {
+            return GitStatus.status().format(getCurrentBranch());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Error reading repository status.";
+        }
+    }
+
+    // Move loose objects into the pack file and loose refs into packed-refs
+    public static String gc() {
+        try (Metrics.Operation operation = Metrics.begin("gc")) {
+            return ObjectStore.repack() + "\n" + Refs.pack() + "\n" + CommitGraph.writeFilters();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Error packing objects.";
+        }
     }
 
-    public static void createBranch(String branchName) {
+    // What was created; no commit on HEAD yet or an existing branch fail with the reason
+    public static String createBranch(String branchName) throws IOException {
         // Get the current HEAD commit hash
-        File head = new File(".dotgit/HEAD");
-        File masters = new File(".dotgit/refs/heads/master");
-        if (!masters.exists()) {
-            System.out.println("not a valid object name: 'master'");
+        String currentCommit = resolveHead();
+        if (currentCommit == null) {
+            throw new IOException("not a valid object name: 'HEAD'");
         }
+        // Create the branch; fails if it exists, even if another process created it just now
         try {
-            String currentCommit = Utils.readFile(head).split(": ")[1].trim();
-            // Create a new branch file
-            File branchFile = new File(".dotgit/refs/heads/" + branchName);
-            if (branchFile.exists()) {
-                System.out.println("Branch " + branchName + " already exists!");
+            Refs.transaction().create(Refs.HEADS + branchName, currentCommit).commit();
+        } catch (Refs.ConflictException e) {
+            throw new IOException("Branch " + branchName + " already exists!");
+        }
+        return "Branch " + branchName + " created at commit " + currentCommit;
+    }
+
+    public static void log() {
+        log(System.out::println);
+    }
+
+    // Hand each commit description to the consumer as soon as it is read, newest first
+    public static void log(Consumer<String> output) {
+        // Start with the commit HEAD points to and follow first parents through the commit graph
+        try (Metrics.Operation operation = Metrics.begin("log")) {
+            String head = resolveHead();
+            if (head == null) {
                 return;
             }
-            branchFile.createNewFile();
-            Utils.writeToFile(branchFile, currentCommit);
-            System.out.println("Branch " + branchName + " created at commit " + currentCommit);
-        } catch (Exception e) {
+            int position = CommitGraph.lookup(head);
+            CommitGraph graph = CommitGraph.load();
+            while (position != CommitGraph.NONE) {
+                output.accept(Commit.read(graph.hashAt(position)).describe());
+                position = graph.firstParent(position);
+            }
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    public static void log() {
-        // Start with the current HEAD
-        try {
-            File head = new File(".dotgit/HEAD");
-            String currentCommit = Utils.readFile(head).split(": ")[1].trim();
-            while (!currentCommit.isEmpty()) {
-                File commitFile = new File(".dotgit/commits/" + currentCommit);
-                if (!commitFile.exists()) {
-                    break;
-                }
-                String commitContent = Utils.readFile(commitFile);
-                System.out.println(commitContent);
-                currentCommit = commitContent.lines()
-                        .filter(line -> line.startsWith("parent: "))
-                        .map(line -> line.split(": ")[1].trim())
-                        .findFirst().orElse("");
+    // Commits of HEAD that changed a file or directory, newest first; see CommitHistory
+    public static void log(String path, Consumer<String> output) {
+        try (Metrics.Operation operation = Metrics.begin("log")) {
+            CommitHistory history = CommitHistory.fromHead(normalizePath(path));
+            while (history.hasNext()) {
+                output.accept(history.next().describe());
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    public static void switchBranch(String branchName){
-        File branchFile = new File(".dotgit/refs/heads/" + branchName);
-        try {
-        if (!branchFile.exists()) {
-            System.out.println("Branch " + branchName + " does not exist!");
-            return;
+    // A path as the commit-graph filters store it: '/'-separated, without "./" or a trailing '/'.
+    // The root itself ("", ".", "./") is no path limit at all and comes back as null.
+    public static String normalizePath(String path) {
+        if (path == null) {
+            return null;
         }
-        // Update HEAD to point to the branch
-        File head = new File(".dotgit/HEAD");
-        Utils.writeToFile(head, "ref: refs/heads/" + branchName);
-        System.out.println("Switched to branch " + branchName);}
-        catch (IOException e){
-            e.printStackTrace();
+        String normalized = path.trim().replace('\\', '/');
+        while (normalized.startsWith("./")) {
+            normalized = normalized.substring(2);
+        }
+        while (normalized.endsWith("/") || normalized.endsWith("/.")) {
+            normalized = normalized.substring(0, normalized.lastIndexOf('/'));
+        }
+        return normalized.isEmpty() || normalized.equals(".") ? null : normalized;
+    }
+
+    // Commit hash HEAD points to, or null if the current branch has no commits yet
+    public static String resolveHead() throws IOException {
+        String headContent = readHead();
+        if (!headContent.startsWith("ref: ")) {
+            return headContent.isEmpty() ? null : headContent;
+        }
+        return Refs.resolve(headContent.substring(5).trim());
+    }
+
+    // Commit hash named by HEAD, a branch, a tag or a full hash, optionally followed by ~<n> or ^
+    // for first-parent ancestors; null if it names nothing
+    public static String resolveRevision(String revision) throws IOException {
+        int suffix = revision.length();
+        long generations = 0;
+        while (suffix > 0) {
+            int tilde = revision.lastIndexOf('~', suffix - 1);
+            if (revision.charAt(suffix - 1) == '^') {
+                generations++;
+                suffix--;
+            } else if (tilde > 0 && revision.substring(tilde + 1, suffix).matches("\\d*")) {
+                String count = revision.substring(tilde + 1, suffix);
+                // More digits than an int holds: no history is that deep
+                if (count.length() > 9) {
+                    return null;
+                }
+                generations += count.isEmpty() ? 1 : Integer.parseInt(count);
+                suffix = tilde;
+            } else {
+                break;
+            }
+        }
+        String name = revision.substring(0, suffix);
+        String commit;
+        if (name.equals(Refs.HEAD)) {
+            commit = resolveHead();
+        } else if (!Refs.isValidName(Refs.HEADS + name)) {
+            commit = null;
+        } else if (Refs.read(Refs.HEADS + name) != null) {
+            commit = Refs.resolve(Refs.HEADS + name);
+        } else if (Refs.read(Refs.TAGS + name) != null) {
+            commit = Refs.resolve(Refs.TAGS + name);
+        } else {
+            commit = name.matches("[0-9a-f]{64}") && ObjectStore.exists(name) ? name : null;
         }
+        for (long i = 0; i < generations && commit != null; i++) {
+            List<String> parents = Commit.read(commit).parents();
+            commit = parents.isEmpty() ? null : parents.get(0);
+        }
+        return commit;
+    }
+
+    // Commit hash a branch points to, or null if there is no such branch
+    public static String getBranchCommit(String branchName) throws IOException {
+        String commit = Refs.read(Refs.HEADS + branchName);
+        if (commit == null) {
+            System.out.println("Branch file not found for: " + branchName);
+        }
+        return commit;
+    }
+
+    // What the switch did; a missing branch or local changes in the way fail with the reason
+    public static String switchBranch(String branchName) throws IOException {
+        if (Refs.read(Refs.HEADS + branchName) == null) {
+            throw new IOException("Branch " + branchName + " does not exist!");
+        }
+        // Update the working tree and the index, then point HEAD at the branch
+        return Checkout.switchBranch(branchName).toString();
     }
 
     public static String getCurrentBranch() {
         try {
-            File head = new File(".dotgit/HEAD");
-            String headContent = Utils.readFile(head).trim();
+            String headContent = readHead();
             if (headContent.startsWith("ref: ")) {
-                return headContent.substring(5).trim().replace("refs/heads/", "");
+                return headContent.substring(5).trim().replace(Refs.HEADS, "");
             }
             return "detached HEAD";
         } catch (IOException e) {
@@ -178,34 +274,48 @@ public class GitServices {
         }
     }
 
+    // Content of .dotgit/HEAD, served from the repository cache while the file is unchanged
+    private static String readHead() throws IOException {
+        String content = Refs.read(Refs.HEAD);
+        if (content == null) {
+            throw new NoSuchFileException(Utils.dotgitPath(Refs.HEAD).toString());
+        }
+        return content;
+    }
+
+    // Object and ref cache counters
+    public static String cacheStats() {
+        return RepositoryCache.current().stats().toString();
+    }
+
     public static void listStagedFiles() throws IOException {
-        File indexFile = new File(".dotgit/index");
-        if (!indexFile.exists() || indexFile.length() == 0) {
+        StagingIndex index = StagingIndex.load();
+        if (index.isEmpty()) {
             System.out.println("No files are staged.");
             return;
         }
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String line;
         System.out.println("Staged files:");
-        while ((line = reader.readLine()) != null) {
-            String[] parts = line.split(" ");
-            String fileName = parts[0];
-            System.out.println("- " + fileName);
+        for (StagingIndex.Entry entry : index.entries()) {
+            System.out.println("- " + entry.path());
         }
-        reader.close();
     }
     public static String listBranches() {
-        String listOfBranches="";
-        File branchesDir = new File(".dotgit/refs/heads");
-        if (!branchesDir.exists() || !branchesDir.isDirectory()) {
+        if (!Files.isDirectory(Utils.dotgitPath(""))) {
             System.out.println("No available branch");
             return "No available branch";
         }
-        File[] branchFiles = branchesDir.listFiles();
-        if (branchFiles != null && branchFiles.length > 0) {
+        // Packed branches come from one range of packed-refs, loose ones from refs/heads
+        Map<String, String> branches;
+        try {
+            branches = Refs.list(Refs.HEADS);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Error listing branches.";
+        }
+        if (!branches.isEmpty()) {
             StringBuilder branchesList = new StringBuilder("Available Branches:\n");
-            for (File branchFile : branchFiles) {
-                branchesList.append(branchFile.getName()).append("\n");
+            for (String branch : branches.keySet()) {
+                branchesList.append(branch.substring(Refs.HEADS.length())).append("\n");
             }
             System.out.println("Branches"+ branchesList.toString());
             return branchesList.toString();
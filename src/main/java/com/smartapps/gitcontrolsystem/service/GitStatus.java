@@ -0,0 +1,261 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Working tree / index / HEAD comparison.
+//
+// The index already holds each file's mtime, size and inode from when it was staged, so a file whose
+// stat data still matches is reported clean without being read. Only files whose stat data changed
+// are hashed; if their content turns out to be unchanged, the index is refreshed so the next status
+// does not hash them again. Directories are walked in parallel on the fork-join pool, unless a
+// RepositoryWatcher is running, in which case its snapshot replaces the walk. Ignored files are not
+// reported and ignored directories are not walked; tracked files among them are still checked.
+public class GitStatus {
+
+    public enum State {
+        ADDED, MODIFIED, DELETED, UNTRACKED
+    }
+
+    // staged: index vs HEAD tree; unstaged: working tree vs index (including untracked files)
+    public record Result(Map<String, State> staged, Map<String, State> unstaged, long filesScanned, long filesHashed,
+                         long elapsedMillis) {
+
+        public boolean isClean() {
+            return staged.isEmpty() && unstaged.isEmpty();
+        }
+
+        public String format(String branch) {
+            StringBuilder text = new StringBuilder("On branch ").append(branch).append("\n");
+            if (!staged.isEmpty()) {
+                text.append("\nChanges to be committed:\n");
+                staged.forEach((path, state) -> text.append(line(state, path)));
+            }
+            List<String> untracked = new ArrayList<>();
+            StringBuilder notStaged = new StringBuilder();
+            unstaged.forEach((path, state) -> {
+                if (state == State.UNTRACKED) {
+                    untracked.add(path);
+                } else {
+                    notStaged.append(line(state, path));
+                }
+            });
+            if (!notStaged.isEmpty()) {
+                text.append("\nChanges not staged for commit:\n").append(notStaged);
+            }
+            if (!untracked.isEmpty()) {
+                text.append("\nUntracked files:\n");
+                untracked.forEach(path -> text.append("        ").append(path).append("\n"));
+            }
+            if (isClean()) {
+                text.append("nothing to commit, working tree clean\n");
+            }
+            text.append("\n(").append(filesScanned).append(" files checked, ").append(filesHashed)
+                    .append(" hashed, ").append(elapsedMillis).append(" ms)\n");
+            return text.toString();
+        }
+
+        private static String line(State state, String path) {
+            String label = switch (state) {
+                case ADDED -> "new file:   ";
+                case MODIFIED -> "modified:   ";
+                case DELETED -> "deleted:    ";
+                case UNTRACKED -> "";
+            };
+            return "        " + label + path + "\n";
+        }
+    }
+
+    public static Result status() throws IOException {
+        return status(true);
+    }
+
+    // With refreshIndex false the status is read-only: it never takes the index lock or rewrites
+    // the index, at the cost of hashing the same stat-changed files again next time
+    public static Result status(boolean refreshIndex) throws IOException {
+        return Metrics.run("status", () -> {
+            Result result = scan(refreshIndex);
+            Metrics.count("files checked", result.filesScanned());
+            Metrics.count("files hashed", result.filesHashed());
+            return result;
+        });
+    }
+
+    private static Result scan(boolean refreshIndex) throws IOException {
+        long start = System.nanoTime();
+        StagingIndex index = StagingIndex.load();
+        List<StagingIndex.Entry> entries = index.entries();
+        Map<String, State> staged;
+        try (Metrics.Timer timer = Metrics.phase("compare head")) {
+            staged = compareHead(entries);
+        }
+
+        IgnoreRules rules = IgnoreRules.current();
+        rules.refresh();
+        Scan scan = new Scan(index, entries, rules);
+        RepositoryWatcher watcher = RepositoryWatcher.current();
+        try (Metrics.Timer timer = Metrics.phase("scan")) {
+            if (watcher != null) {
+                // The watcher already knows every file's stat data; only changed files were re-read
+                watcher.snapshot().entrySet().parallelStream().forEach(file -> {
+                    try {
+                        scan.check(Utils.workTreePath(file.getKey()), file.getKey(), file.getValue());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } else {
+                ForkJoinPool.commonPool().invoke(scan.new Directory(Utils.getRoot(), ""));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // Tracked files the walk never reached are either in an ignored directory or gone. Gone includes
+        // a directory (or anything else) now standing at the path, and a path below what is now a
+        // file, which fails with ENOTDIR; those stay unseen and are reported as deleted, as git does.
+        for (String path : List.copyOf(scan.unseen.keySet())) {
+            Path file = Utils.workTreePath(path);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (FileSystemException e) {
+                continue;
+            }
+            if (attributes.isRegularFile()) {
+                scan.check(file, path, StagingIndex.Stat.of(attributes));
+            }
+        }
+        Map<String, State> unstaged = new TreeMap<>(scan.changes);
+        for (String path : scan.unseen.keySet()) {
+            unstaged.put(path, State.DELETED);
+        }
+        // Content matched but stat data did not: remember the new stat data for next time
+        if (refreshIndex && !scan.refreshed.isEmpty()) {
+            refresh(index, entries, scan.refreshed);
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        return new Result(staged, unstaged, scan.scanned.get(), scan.hashed.get(), elapsed);
+    }
+
+    // Only an optimization, so it is skipped when another writer holds the index or has replaced
+    // it since it was loaded, rather than waiting or overwriting that writer's entries
+    private static void refresh(StagingIndex index, List<StagingIndex.Entry> entries,
+                                Collection<StagingIndex.Entry> refreshed) throws IOException {
+        try (RepositoryLock lock = RepositoryLock.tryAcquire(RepositoryLock.INDEX)) {
+            if (lock == null || !index.isCurrent()) {
+                return;
+            }
+            Map<String, StagingIndex.Entry> updated = new TreeMap<>();
+            for (StagingIndex.Entry entry : entries) {
+                updated.put(entry.path(), entry);
+            }
+            for (StagingIndex.Entry entry : refreshed) {
+                updated.put(entry.path(), entry);
+            }
+            StagingIndex.write(updated);
+        }
+    }
+
+    // Index entries against the tree of the HEAD commit; unchanged directories are skipped by hash
+    private static Map<String, State> compareHead(List<StagingIndex.Entry> entries) throws IOException {
+        String head = GitServices.resolveHead();
+        String headTree = head == null ? null : Commit.read(head).tree();
+        Map<String, State> staged = new TreeMap<>();
+        Tree.diffIndex(headTree, entries, change -> staged.put(change.path(),
+                change.oldHash() == null ? State.ADDED : change.newHash() == null ? State.DELETED : State.MODIFIED));
+        return staged;
+    }
+
+    // Shared state of one parallel working tree walk
+    private static class Scan {
+        private final StagingIndex index;
+        private final IgnoreRules rules;
+        // Index entries not yet matched to a working tree file
+        private final Map<String, StagingIndex.Entry> unseen;
+        private final Map<String, State> changes = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<StagingIndex.Entry> refreshed = new ConcurrentLinkedQueue<>();
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong hashed = new AtomicLong();
+
+        Scan(StagingIndex index, List<StagingIndex.Entry> entries, IgnoreRules rules) {
+            this.index = index;
+            this.rules = rules;
+            this.unseen = new ConcurrentHashMap<>(entries.size() * 2);
+            for (StagingIndex.Entry entry : entries) {
+                unseen.put(entry.path(), entry);
+            }
+        }
+
+        private void check(Path file, String path, StagingIndex.Stat stat) throws IOException {
+            scanned.incrementAndGet();
+            StagingIndex.Entry entry = unseen.remove(path);
+            if (entry == null) {
+                changes.put(path, State.UNTRACKED);
+                return;
+            }
+            if (index.isUnchanged(entry, stat)) {
+                return;
+            }
+            hashed.incrementAndGet();
+            String hash = ObjectStore.hash(file);
+            if (hash.equals(entry.hash())) {
+                refreshed.add(StagingIndex.Entry.of(path, hash, stat));
+            } else {
+                changes.put(path, State.MODIFIED);
+            }
+        }
+
+        // One directory: files are checked here, subdirectories become parallel subtasks
+        private class Directory extends RecursiveAction {
+            private final Path dir;
+            private final String prefix;
+
+            Directory(Path dir, String prefix) {
+                this.dir = dir;
+                this.prefix = prefix;
+            }
+
+            @Override
+            protected void compute() {
+                List<Directory> subdirectories = new ArrayList<>();
+                IgnoreRules.Matcher ignored = rules.directory(prefix);
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                    for (Path child : children) {
+                        BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        String name = child.getFileName().toString();
+                        if (attributes.isDirectory()) {
+                            if (!ignored.isIgnored(name, true)) {
+                                subdirectories.add(new Directory(child, prefix + name + "/"));
+                            }
+                        } else if (attributes.isRegularFile()
+                                && (!ignored.isIgnored(name, false) || unseen.containsKey(prefix + name))) {
+                            check(child, prefix + name, StagingIndex.Stat.of(attributes));
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                invokeAll(subdirectories);
+            }
+        }
+    }
+}
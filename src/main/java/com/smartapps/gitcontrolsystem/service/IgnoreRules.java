@@ -0,0 +1,399 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// .gitignore rules of the working tree, compiled once per directory.
+//
+// Every walk of the working tree (add, status, the watcher, the file tree) asks directory(prefix)
+// for the matcher of the directory it is in and checks each child's name against it. A matcher
+// combines the directory's own .gitignore with those of its parents and .dotgit/info/exclude;
+// deeper files take precedence and within a file the last matching rule wins, like in git. An
+// ignored directory is pruned by the walks, so nothing below it is read.
+//
+// Each .gitignore is compiled into a map of literal names and paths plus a trie that indexes glob
+// rules by their literal prefix, so a name is only tested against the few globs that can match it.
+// Matchers are cached per directory. After refresh() every cached matcher re-stats its .gitignore
+// the next time it is used, once, and is rebuilt if the file changed.
+public final class IgnoreRules {
+    public static final String FILE_NAME = ".gitignore";
+    public static final String COOKIE_PREFIX = ".dotgit-cookie-";
+
+    private static volatile IgnoreRules current;
+
+    private final Path root;
+    private final Map<String, Matcher> directories = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    // Bumped whenever a matcher is rebuilt because its rules changed
+    private final AtomicLong version = new AtomicLong();
+    private volatile Matcher exclude;
+
+    private IgnoreRules(Path root) {
+        this.root = root;
+    }
+
+    // The rules of the current repository
+    public static IgnoreRules current() {
+        Path root = Utils.getRoot().toAbsolutePath().normalize();
+        IgnoreRules rules = current;
+        if (rules == null || !rules.root.equals(root)) {
+            synchronized (IgnoreRules.class) {
+                rules = current;
+                if (rules == null || !rules.root.equals(root)) {
+                    rules = new IgnoreRules(root);
+                    current = rules;
+                }
+            }
+        }
+        return rules;
+    }
+
+    // Repository metadata directories, and the sync cookies a RepositoryWatcher creates for a moment
+    // in the root; never part of the working tree
+    public static boolean isMetadata(String name) {
+        return name.equals(".dotgit") || name.equals(".git") || name.startsWith(COOKIE_PREFIX);
+    }
+
+    // Re-check the ignore files before the next walk; cheap, the files are stat'ed lazily
+    public void refresh() {
+        generation.incrementAndGet();
+    }
+
+    // Changes whenever rules already in use were rebuilt, so a cached walk knows to start over
+    public long version() {
+        return version.get();
+    }
+
+    // Matcher for the children of a directory; prefix is "" for the root or ends with '/'
+    public Matcher directory(String prefix) {
+        long now = generation.get();
+        Matcher matcher = directories.get(prefix);
+        if (matcher != null && matcher.checkedGeneration == now) {
+            return matcher;
+        }
+        Matcher parent;
+        if (prefix.isEmpty()) {
+            parent = exclude(now);
+        } else {
+            int slash = prefix.lastIndexOf('/', prefix.length() - 2);
+            parent = directory(prefix.substring(0, slash + 1));
+        }
+        Matcher loaded = load(matcher, prefix, root.resolve(prefix).resolve(FILE_NAME), parent, now);
+        if (loaded != matcher) {
+            directories.put(prefix, loaded);
+        }
+        return loaded;
+    }
+
+    // Whether a repository-relative path is ignored, itself or through one of its directories
+    public boolean isIgnored(String path, boolean directory) {
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', start)) {
+            if (directory(path.substring(0, start)).isIgnored(path.substring(start, slash), true)) {
+                return true;
+            }
+            start = slash + 1;
+        }
+        return directory(path.substring(0, start)).isIgnored(path.substring(start), directory);
+    }
+
+    private Matcher exclude(long now) {
+        Matcher matcher = exclude;
+        if (matcher != null && matcher.checkedGeneration == now) {
+            return matcher;
+        }
+        Matcher loaded = load(matcher, "", Utils.dotgitPath("info", "exclude"), null, now);
+        exclude = loaded;
+        return loaded;
+    }
+
+    // The cached matcher if its file and parent are unchanged, otherwise a newly compiled one.
+    // Threads racing here at most compile the same file twice.
+    private Matcher load(Matcher cached, String prefix, Path file, Matcher parent, long now) {
+        StagingIndex.Stat stat;
+        try {
+            stat = StagingIndex.Stat.of(file);
+        } catch (NoSuchFileException e) {
+            stat = null;
+        } catch (IOException e) {
+            System.out.println("Cannot read " + file + ": " + e.getMessage());
+            stat = null;
+        }
+        if (cached != null && cached.parent == parent && Objects.equals(cached.stat, stat)) {
+            cached.checkedGeneration = now;
+            return cached;
+        }
+        RuleSet rules = RuleSet.EMPTY;
+        if (cached != null && Objects.equals(cached.stat, stat)) {
+            rules = cached.rules; // Only the parent changed
+        } else if (stat != null) {
+            try {
+                rules = RuleSet.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.out.println("Cannot read " + file + ": " + e.getMessage());
+            }
+        }
+        if (cached != null) {
+            version.incrementAndGet();
+        }
+        Matcher matcher = new Matcher(prefix, rules, stat, parent);
+        matcher.checkedGeneration = now;
+        return matcher;
+    }
+
+    // Decides for the children of one directory
+    public static final class Matcher {
+        // Directory of the ignore file these rules came from; patterns are relative to it
+        private final String base;
+        private final RuleSet rules;
+        private final StagingIndex.Stat stat;
+        // Rules of the enclosing directory, which lose to these; null below info/exclude
+        private final Matcher parent;
+        private volatile long checkedGeneration;
+
+        private Matcher(String base, RuleSet rules, StagingIndex.Stat stat, Matcher parent) {
+            this.base = base;
+            this.rules = rules;
+            this.stat = stat;
+            this.parent = parent;
+        }
+
+        public boolean isIgnored(String name, boolean directory) {
+            if (directory ? isMetadata(name) : name.startsWith(COOKIE_PREFIX)) {
+                return true;
+            }
+            // Every layer sees the path relative to its own directory; the innermost match decides
+            String path = null;
+            for (Matcher layer = this; layer != null; layer = layer.parent) {
+                if (layer.rules == RuleSet.EMPTY) {
+                    continue;
+                }
+                if (path == null) {
+                    path = base + name;
+                }
+                Rule rule = layer.rules.match(name, path.substring(layer.base.length()), directory);
+                if (rule != null) {
+                    return !rule.negated;
+                }
+            }
+            return false;
+        }
+    }
+
+    // One pattern line; order is its line position, so a higher order wins
+    private record Rule(int order, boolean negated, boolean directoryOnly, Pattern glob) {
+        boolean matches(String text, boolean directory) {
+            return (directory || !directoryOnly) && (glob == null || glob.matcher(text).matches());
+        }
+    }
+
+    // The compiled rules of one ignore file
+    private static final class RuleSet {
+        static final RuleSet EMPTY = new RuleSet();
+
+        // Patterns without a slash match a name at any depth, the others a path from the file's directory
+        private final Map<String, List<Rule>> literalNames = new HashMap<>();
+        private final Map<String, List<Rule>> literalPaths = new HashMap<>();
+        private final TrieNode nameGlobs = new TrieNode();
+        private final TrieNode pathGlobs = new TrieNode();
+
+        static RuleSet parse(String text) {
+            RuleSet rules = new RuleSet();
+            int order = 0;
+            for (String line : text.split("\n")) {
+                order++;
+                String pattern = trimTrailingSpaces(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+                if (pattern.isEmpty() || pattern.startsWith("#")) {
+                    continue;
+                }
+                boolean negated = pattern.startsWith("!");
+                if (negated) {
+                    pattern = pattern.substring(1);
+                }
+                boolean directoryOnly = pattern.endsWith("/");
+                if (directoryOnly) {
+                    pattern = pattern.substring(0, pattern.length() - 1);
+                }
+                boolean anchored = pattern.indexOf('/') >= 0;
+                if (pattern.startsWith("/")) {
+                    pattern = pattern.substring(1);
+                }
+                if (pattern.isEmpty()) {
+                    continue;
+                }
+                String prefix = literalPrefix(pattern);
+                if (prefix.length() == unescapedLength(pattern)) {
+                    Rule rule = new Rule(order, negated, directoryOnly, null);
+                    (anchored ? rules.literalPaths : rules.literalNames).computeIfAbsent(prefix, k -> new ArrayList<>()).add(rule);
+                } else {
+                    try {
+                        Rule rule = new Rule(order, negated, directoryOnly, Pattern.compile(toRegex(pattern)));
+                        (anchored ? rules.pathGlobs : rules.nameGlobs).add(prefix, rule);
+                    } catch (PatternSyntaxException e) {
+                        System.out.println("Ignoring invalid pattern " + line.trim() + ": " + e.getDescription());
+                    }
+                }
+            }
+            return rules;
+        }
+
+        // The matching rule with the highest order, or null
+        Rule match(String name, String path, boolean directory) {
+            Rule best = best(literalNames.get(name), null, name, directory);
+            best = best(literalPaths.get(path), best, path, directory);
+            best = nameGlobs.match(name, best, directory);
+            return pathGlobs.match(path, best, directory);
+        }
+
+        private static Rule best(List<Rule> candidates, Rule best, String text, boolean directory) {
+            if (candidates != null) {
+                for (Rule rule : candidates) {
+                    if ((best == null || rule.order > best.order) && rule.matches(text, directory)) {
+                        best = rule;
+                    }
+                }
+            }
+            return best;
+        }
+
+        // Trailing spaces are dropped unless escaped with a backslash
+        private static String trimTrailingSpaces(String line) {
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+                end--;
+            }
+            return line.substring(0, end);
+        }
+
+        // The pattern up to its first wildcard, with escapes removed
+        private static String literalPrefix(String pattern) {
+            StringBuilder prefix = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\\' && i + 1 < pattern.length()) {
+                    prefix.append(pattern.charAt(++i));
+                } else if (c == '*' || c == '?' || c == '[') {
+                    break;
+                } else {
+                    prefix.append(c);
+                }
+            }
+            return prefix.toString();
+        }
+
+        private static int unescapedLength(String pattern) {
+            int length = 0;
+            for (int i = 0; i < pattern.length(); i++, length++) {
+                if (pattern.charAt(i) == '\\' && i + 1 < pattern.length()) {
+                    i++;
+                }
+            }
+            return length;
+        }
+
+        // '*' and '?' stay within one path component, "**" spans any number of them
+        private static String toRegex(String pattern) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*'
+                        && (i == 0 || pattern.charAt(i - 1) == '/')) {
+                    if (i + 2 == pattern.length()) {
+                        regex.append(".*");
+                        i++;
+                        continue;
+                    }
+                    if (pattern.charAt(i + 2) == '/') {
+                        regex.append("(?:.*/)?");
+                        i += 2;
+                        continue;
+                    }
+                }
+                switch (c) {
+                    case '*' -> regex.append("[^/]*");
+                    case '?' -> regex.append("[^/]");
+                    case '[' -> {
+                        int end = pattern.indexOf(']', i + 2);
+                        if (end < 0) {
+                            regex.append("\\[");
+                        } else {
+                            String set = pattern.substring(i + 1, end);
+                            if (set.startsWith("!")) {
+                                set = "^" + set.substring(1);
+                            }
+                            regex.append('[').append(set.replace("[", "\\[")).append(']');
+                            i = end;
+                        }
+                    }
+                    case '\\' -> {
+                        if (i + 1 < pattern.length()) {
+                            regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+                        }
+                    }
+                    default -> regex.append(Character.isLetterOrDigit(c) ? String.valueOf(c) : Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+
+    // Glob rules keyed by their literal prefix: only rules whose prefix the text starts with are tried
+    private static final class TrieNode {
+        private char[] labels = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private Rule[] rules = new Rule[0];
+
+        void add(String prefix, Rule rule) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.child(prefix.charAt(i), true);
+            }
+            node.rules = Arrays.copyOf(node.rules, node.rules.length + 1);
+            node.rules[node.rules.length - 1] = rule;
+        }
+
+        Rule match(String text, Rule best, boolean directory) {
+            TrieNode node = this;
+            for (int i = 0; node != null; i++) {
+                for (Rule rule : node.rules) {
+                    if ((best == null || rule.order > best.order) && rule.matches(text, directory)) {
+                        best = rule;
+                    }
+                }
+                node = i < text.length() ? node.child(text.charAt(i), false) : null;
+            }
+            return best;
+        }
+
+        private TrieNode child(char label, boolean create) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == label) {
+                    return children[i];
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            labels[labels.length - 1] = label;
+            children[children.length - 1] = new TrieNode();
+            return children[children.length - 1];
+        }
+    }
+}
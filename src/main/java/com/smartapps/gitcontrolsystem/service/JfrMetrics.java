@@ -0,0 +1,133 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Metrics backend that turns operations, phases and counters into custom Flight Recorder events,
+// so they show up next to GC, I/O and lock events in a recording:
+//
+//   java -Dgitcontrolsystem.metrics=jfr -XX:StartFlightRecording=filename=git.jfr ...
+//   jfr print --categories "Git Control System" git.jfr
+//
+// Events cost next to nothing while no recording is running.
+final class JfrMetrics implements Metrics.Backend {
+    @Name("com.smartapps.gitcontrolsystem.Operation")
+    @Label("Repository Operation")
+    @Category("Git Control System")
+    @StackTrace(false)
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Failed")
+        boolean failed;
+
+        @Label("Phases")
+        @Description("Total time per phase")
+        String phases;
+
+        @Label("Counters")
+        String counters;
+    }
+
+    @Name("com.smartapps.gitcontrolsystem.Phase")
+    @Label("Repository Operation Phase")
+    @Category("Git Control System")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("com.smartapps.gitcontrolsystem.Counter")
+    @Label("Repository Operation Counter")
+    @Category("Git Control System")
+    @StackTrace(false)
+    static final class CounterEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Counter")
+        String counter;
+
+        @Label("Value")
+        long value;
+    }
+
+    // Bytes counters get the data amount unit so JMC shows them as sizes
+    @Name("com.smartapps.gitcontrolsystem.ByteCounter")
+    @Label("Repository Operation Byte Counter")
+    @Category("Git Control System")
+    @StackTrace(false)
+    static final class ByteCounterEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Counter")
+        String counter;
+
+        @Label("Value")
+        @DataAmount
+        long value;
+    }
+
+    // Commits the event it began when closed
+    private record EventTimer(Event event) implements Metrics.Timer {
+        @Override
+        public void close() {
+            event.commit();
+        }
+    }
+
+    @Override
+    public Metrics.Timer start(String operation, String phase) {
+        Event event;
+        if (phase == null) {
+            OperationEvent operationEvent = new OperationEvent();
+            operationEvent.operation = operation;
+            event = operationEvent;
+        } else {
+            PhaseEvent phaseEvent = new PhaseEvent();
+            phaseEvent.operation = operation;
+            phaseEvent.phase = phase;
+            event = phaseEvent;
+        }
+        if (!event.isEnabled()) {
+            return Metrics.NO_TIMER;
+        }
+        event.begin();
+        return new EventTimer(event);
+    }
+
+    @Override
+    public void finished(Metrics.Summary summary, Metrics.Timer timer) {
+        if (timer instanceof EventTimer eventTimer && eventTimer.event() instanceof OperationEvent event) {
+            event.failed = summary.failed();
+            event.phases = summary.phasesText();
+            event.counters = summary.countersText();
+        }
+        summary.counters().forEach((counter, value) -> {
+            if (counter.startsWith("bytes ")) {
+                ByteCounterEvent event = new ByteCounterEvent();
+                event.operation = summary.operation();
+                event.counter = counter;
+                event.value = value;
+                event.commit();
+            } else {
+                CounterEvent event = new CounterEvent();
+                event.operation = summary.operation();
+                event.counter = counter;
+                event.value = value;
+                event.commit();
+            }
+        });
+    }
+}
@@ -0,0 +1,261 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Line diff using Myers' O(ND) algorithm with the linear-space "middle snake" refinement.
+//
+// Files are never split into Strings: a Lines object keeps the raw bytes (or a mapping of them) plus
+// one start offset and one hash per line, and lines are compared by hash first and by bytes only
+// when the hashes match.
+public class LineDiff {
+
+    // A file as a sequence of lines; each line includes its trailing '\n' (the last one may not).
+    // The bytes stay where they are, in a heap array or a memory-mapped file; only the line offsets
+    // and hashes are kept on the heap.
+    public static class Lines {
+        private static final int BINARY_CHECK_BYTES = 8000;
+        private final ByteBuffer content;
+        // The array behind content when it has one, for the faster array comparisons and copies
+        private final byte[] array;
+        private final int[] starts;
+        private final int[] hashes;
+
+        private Lines(ByteBuffer content, int[] starts, int[] hashes) {
+            this.content = content;
+            this.array = content.hasArray() && content.arrayOffset() == 0 ? content.array() : null;
+            this.starts = starts;
+            this.hashes = hashes;
+        }
+
+        public static Lines of(byte[] content) {
+            return of(ByteBuffer.wrap(content));
+        }
+
+        // Lines of the buffer from position 0 to its limit
+        public static Lines of(ByteBuffer content) {
+            int length = content.limit();
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (content.get(i) == '\n' || i == length - 1) {
+                    count++;
+                }
+            }
+            int[] starts = new int[count + 1];
+            int[] hashes = new int[count];
+            int line = 0;
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                byte b = content.get(i);
+                hash = hash * 31 + b;
+                if (b == '\n' || i == length - 1) {
+                    hashes[line] = hash;
+                    starts[++line] = i + 1;
+                    hash = 0;
+                }
+            }
+            return new Lines(content, starts, hashes);
+        }
+
+        // Lines of a file mapped read-only into memory; the file must not be changed while in use
+        public static Lines map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        // Lines of a stored blob; a null hash is an absent file, which has no lines
+        public static Lines ofBlob(String blobHash) throws IOException {
+            return of(blobHash == null ? new byte[0] : ObjectStore.read(blobHash));
+        }
+
+        public int size() {
+            return hashes.length;
+        }
+
+        public int hash(int line) {
+            return hashes[line];
+        }
+
+        // Length of a line in bytes, with its line break
+        public int length(int line) {
+            return starts[line + 1] - starts[line];
+        }
+
+        public String line(int line) {
+            return line(line, Integer.MAX_VALUE);
+        }
+
+        // The line, or its first maxBytes bytes when it is longer
+        public String line(int line, int maxBytes) {
+            int length = Math.min(length(line), maxBytes);
+            if (array != null) {
+                return new String(array, starts[line], length, StandardCharsets.UTF_8);
+            }
+            byte[] bytes = new byte[length];
+            content.get(starts[line], bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Copy lines [from, to) to the output without materializing them
+        public void write(int from, int to, OutputStream out) throws IOException {
+            if (from >= to) {
+                return;
+            }
+            if (array != null) {
+                out.write(array, starts[from], starts[to] - starts[from]);
+                return;
+            }
+            byte[] chunk = new byte[Math.min(starts[to] - starts[from], 8192)];
+            for (int offset = starts[from]; offset < starts[to]; offset += chunk.length) {
+                int length = Math.min(chunk.length, starts[to] - offset);
+                content.get(offset, chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+
+        public boolean endsWithNewline() {
+            return content.limit() == 0 || content.get(content.limit() - 1) == '\n';
+        }
+
+        // Whether a NUL byte occurs in the first BINARY_CHECK_BYTES, which is how git tells binary files apart
+        public boolean isBinary() {
+            for (int i = 0; i < Math.min(content.limit(), BINARY_CHECK_BYTES); i++) {
+                if (content.get(i) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean sameLine(int line, Lines other, int otherLine) {
+            if (hashes[line] != other.hashes[otherLine]) {
+                return false;
+            }
+            if (array != null && other.array != null) {
+                return Arrays.equals(array, starts[line], starts[line + 1],
+                        other.array, other.starts[otherLine], other.starts[otherLine + 1]);
+            }
+            return length(line) == other.length(otherLine)
+                    && content.slice(starts[line], length(line))
+                    .mismatch(other.content.slice(other.starts[otherLine], other.length(otherLine))) < 0;
+        }
+    }
+
+    // Lines [beginA, endA) of the old file were replaced by lines [beginB, endB) of the new file.
+    // An empty old range is an insertion, an empty new range a deletion.
+    public record Edit(int beginA, int endA, int beginB, int endB) {
+    }
+
+    private final Lines a;
+    private final Lines b;
+    private final int offset;
+    private final int[] forward;
+    private final int[] backward;
+    private final List<Edit> edits = new ArrayList<>();
+
+    private LineDiff(Lines a, Lines b) {
+        this.a = a;
+        this.b = b;
+        int max = (a.size() + b.size() + 1) / 2 + 1;
+        this.offset = max + 1;
+        // Shared by every recursion level: each step only reads diagonals written by the previous one
+        this.forward = new int[2 * offset + 1];
+        this.backward = new int[2 * offset + 1];
+    }
+
+    // The edits turning a into b, in order and non-overlapping
+    public static List<Edit> diff(Lines a, Lines b) {
+        LineDiff diff = new LineDiff(a, b);
+        diff.compare(0, a.size(), 0, b.size());
+        return diff.edits;
+    }
+
+    private void compare(int aStart, int aEnd, int bStart, int bEnd) {
+        // Common prefix and suffix never need the expensive search
+        while (aStart < aEnd && bStart < bEnd && a.sameLine(aStart, b, bStart)) {
+            aStart++;
+            bStart++;
+        }
+        while (aStart < aEnd && bStart < bEnd && a.sameLine(aEnd - 1, b, bEnd - 1)) {
+            aEnd--;
+            bEnd--;
+        }
+        if (aStart == aEnd || bStart == bEnd) {
+            if (aStart < aEnd || bStart < bEnd) {
+                addEdit(aStart, aEnd, bStart, bEnd);
+            }
+            return;
+        }
+        int[] snake = middleSnake(aStart, aEnd, bStart, bEnd);
+        compare(aStart, snake[0], bStart, snake[1]);
+        compare(snake[2], aEnd, snake[3], bEnd);
+    }
+
+    // Find the middle snake of the shortest edit script by searching from both ends at once.
+    // Returns {x, y, u, v}: the snake runs from (x, y) to (u, v) in file coordinates.
+    private int[] middleSnake(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a.sameLine(aStart + x, b, bStart + y)) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[offset + reverseK] >= n) {
+                    return new int[]{aStart + startX, bStart + startY, aStart + x, bStart + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                // Same search on the reversed files: x and y count lines from the end
+                int x = (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]))
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a.sameLine(aEnd - 1 - x, b, bEnd - 1 - y)) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+                    return new int[]{aEnd - x, bEnd - y, aEnd - startX, bEnd - startY};
+                }
+            }
+        }
+        throw new IllegalStateException("No middle snake found");
+    }
+
+    private void addEdit(int aStart, int aEnd, int bStart, int bEnd) {
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.endA() == aStart && last.endB() == bStart) {
+                edits.set(edits.size() - 1, new Edit(last.beginA(), aEnd, last.beginB(), bEnd));
+                return;
+            }
+        }
+        edits.add(new Edit(aStart, aEnd, bStart, bEnd));
+    }
+}
@@ -1,9 +1,6 @@
 package com.smartapps.gitcontrolsystem.service;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,114 +8,98 @@ import static com.smartapps.gitcontrolsystem.service.GitServices.getCurrentBranc
 
 public class MergeAndConflict {
 
-    public static void merge(String targetBranch) throws IOException {
-        String currentBranch = getCurrentBranch();
+    // How a merge ended; CONFLICTS means nothing was committed: the merged files, with conflict
+    // markers in the conflicted ones, are left in the work tree and the index to be fixed and committed
+    public enum Result {
+        MERGED, UP_TO_DATE, CONFLICTS, FAILED
+    }
+
+    public static Result merge(String targetBranch) throws IOException {
+        return Metrics.run("merge", () -> {
+            Result result = merge(targetBranch, getCurrentBranch());
+            if (result == Result.FAILED) {
+                Metrics.current().failed();
+            }
+            return result;
+        });
+    }
+
+    private static Result merge(String targetBranch, String currentBranch) throws IOException {
         if (currentBranch.equals(targetBranch)) {
             System.out.println("Cannot merge a branch with itself.");
-            return;
+            return Result.FAILED;
         }
 
         String currentHeadHash = getBranchHeadHash(currentBranch);
         String targetHeadHash = getBranchHeadHash(targetBranch);
-        System.out.println(currentHeadHash+" "+targetHeadHash);
         if (currentHeadHash == null || targetHeadHash == null) {
             System.err.println("Error: Could not locate branch head hashes.");
-            return;
+            return Result.FAILED;
+        }
+
+        // Without a common ancestor every file is compared against an empty base
+        String baseHash;
+        try (Metrics.Timer timer = Metrics.phase("merge base")) {
+            if (MergeBase.isAncestor(targetHeadHash, currentHeadHash)) {
+                System.out.println("Already up to date.");
+                return Result.UP_TO_DATE;
+            }
+            baseHash = MergeBase.findBest(currentHeadHash, targetHeadHash);
         }
 
         System.out.println("Merging branch '" + targetBranch + "' into '" + currentBranch + "'.");
 
-        Map<String, String> currentFiles = readCommitFiles(currentHeadHash);
-        Map<String, String> targetFiles = readCommitFiles(targetHeadHash);
+        Map<String, String> baseFiles;
+        Map<String, String> currentFiles;
+        Map<String, String> targetFiles;
+        try (Metrics.Timer timer = Metrics.phase("read trees")) {
+            baseFiles = baseHash == null ? new HashMap<>() : readCommitFiles(baseHash);
+            currentFiles = readCommitFiles(currentHeadHash);
+            targetFiles = readCommitFiles(targetHeadHash);
+        }
 
-        // Debugging: print file maps
-        System.out.println("Files in current branch: " + currentFiles);
-        System.out.println("Files in target branch: " + targetFiles);
+        MergeExecutor.Outcome outcome = resolveMerge(baseFiles, currentFiles, targetFiles, currentBranch, targetBranch);
+        Map<String, String> mergedFiles = outcome.merged();
 
-        Map<String, String> mergedFiles = resolveMerge(currentFiles, targetFiles);
+        try (Metrics.Timer timer = Metrics.phase("apply")) {
+            applyMergedChanges(currentFiles, mergedFiles);
+        }
+        try (Metrics.Timer timer = Metrics.phase("index write")) {
+            StagingIndex.writeSnapshot(mergedFiles);
+        }
 
-        applyMergedChanges(mergedFiles);
+        if (!outcome.conflicts().isEmpty()) {
+            System.out.println("Automatic merge failed; fix conflicts and then commit the result.");
+            return Result.CONFLICTS;
+        }
 
         // Commit the merge with parent references
         String mergeMessage = "Merge branch '" + targetBranch + "' into '" + currentBranch + "'";
         GitCommit.commitWithParents(mergeMessage, currentHeadHash, targetHeadHash);
-
         System.out.println("Merge completed successfully.");
+        return Result.MERGED;
     }
 
     private static String getBranchHeadHash(String branchName) throws IOException {
-        File branchFile = new File(".dotgit/refs/heads/" + branchName);
-        if (!branchFile.exists()) {
-            return null;
-        }
-        return Files.readString(branchFile.toPath()).trim();
+        return Refs.read(Refs.HEADS + branchName);
     }
 
     private static Map<String, String> readCommitFiles(String commitHash) throws IOException {
-        Map<String, String> files = new HashMap<>();
-        File commitFile = new File(".dotgit/objects/" + commitHash);
-        if (!commitFile.exists()) {
-            System.err.println("Commit " + commitHash + " does not exist.");
-            return files;
-        }
-
-        for (String line : Files.readAllLines(commitFile.toPath())) {
-            if (!line.startsWith("message:") && !line.startsWith("parent:")) {
-                String[] parts = line.split(" ");
-                if (parts.length == 2) {
-                    files.put(parts[0], parts[1]); // filename -> hash
-                }
-            }
-        }
-        return files;
+        return GitCommit.readCommitFiles(commitHash); // filename -> blob hash
     }
 
-    private static Map<String, String> resolveMerge(Map<String, String> currentFiles, Map<String, String> targetFiles) {
-        Map<String, String> mergedFiles = new HashMap<>(currentFiles);
-
-        for (Map.Entry<String, String> entry : targetFiles.entrySet()) {
-            String fileName = entry.getKey();
-            String targetHash = entry.getValue();
-            String currentHash = currentFiles.get(fileName);
-
-            // Handle missing files or conflicts
-            if (currentHash == null) {
-                System.out.println("File " + fileName + " does not exist in the current branch. Adding it from the target branch.");
-                mergedFiles.put(fileName, targetHash);
-            } else if (!currentHash.equals(targetHash)) {
-                System.err.println("Conflict detected for file: " + fileName);
-                // Placeholder for conflict resolution logic
-                mergedFiles.put(fileName, targetHash); // Take target branch's version for now
-            }
+    private static MergeExecutor.Outcome resolveMerge(Map<String, String> baseFiles, Map<String, String> currentFiles,
+                                                      Map<String, String> targetFiles, String currentBranch,
+                                                      String targetBranch) throws IOException {
+        MergeExecutor.Outcome outcome = MergeExecutor.resolve(baseFiles, currentFiles, targetFiles, currentBranch, targetBranch);
+        for (String conflict : outcome.conflicts()) {
+            System.err.println("Conflict detected for file: " + conflict);
         }
-
-        return mergedFiles;
+        return outcome;
     }
 
-    private static void applyMergedChanges(Map<String, String> mergedChanges) throws IOException {
-        for (Map.Entry<String, String> entry : mergedChanges.entrySet()) {
-            String fileName = entry.getKey();
-            String fileHash = entry.getValue();
-
-            File file = new File(fileName);
-
-            // Check if the parent directory exists, and create it if necessary
-            File parentDir = file.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            } else {
-                // Handle the case where the parent directory is null
-                System.out.println("Parent directory for " + fileName + " is null or already exists.");
-            }
-
-            // Copy the file from object hash to the specified file
-            File objectFile = new File(".dotgit/objects/" + fileHash);
-            if (objectFile.exists()) {
-                Files.copy(objectFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            } else {
-                System.out.println("Object file " + objectFile + " does not exist.");
-            }
-        }
+    private static void applyMergedChanges(Map<String, String> currentFiles, Map<String, String> mergedChanges) throws IOException {
+        MergeExecutor.apply(currentFiles, mergedChanges);
     }
 
 }
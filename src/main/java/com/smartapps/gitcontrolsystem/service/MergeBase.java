@@ -0,0 +1,131 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Merge-base computation over the commit graph.
+//
+// Both tips are painted down through all parents in a single priority-queue walk ordered by
+// generation number (then commit time), so a commit is only visited after every commit above it.
+// A commit reached from both sides is a common ancestor; everything below it is marked stale,
+// and the walk stops as soon as only stale commits are left in the queue.
+public class MergeBase {
+    private static final byte PARENT1 = 1;
+    private static final byte PARENT2 = 2;
+    private static final byte STALE = 4;
+    private static final byte RESULT = 8;
+
+    // Every best common ancestor of the two commits (more than one after criss-cross merges)
+    public static List<String> find(String commit1, String commit2) throws IOException {
+        int position1 = CommitGraph.lookup(commit1);
+        int position2 = CommitGraph.lookup(commit2);
+        CommitGraph graph = CommitGraph.load();
+        List<String> bases = new ArrayList<>();
+        for (int position : find(graph, position1, position2)) {
+            bases.add(graph.hashAt(position));
+        }
+        return bases;
+    }
+
+    // The single best merge base (the newest one when there are several), or null if none
+    public static String findBest(String commit1, String commit2) throws IOException {
+        List<String> bases = find(commit1, commit2);
+        return bases.isEmpty() ? null : bases.get(0);
+    }
+
+    // True if ancestor is reachable from descendant (a commit is its own ancestor)
+    public static boolean isAncestor(String ancestor, String descendant) throws IOException {
+        int ancestorPosition = CommitGraph.lookup(ancestor);
+        int descendantPosition = CommitGraph.lookup(descendant);
+        CommitGraph graph = CommitGraph.load();
+        // A higher generation can never be reached by walking down to parents
+        if (graph.generation(ancestorPosition) > graph.generation(descendantPosition)) {
+            return false;
+        }
+        return graph.isReachable(descendantPosition, ancestorPosition);
+    }
+
+    static List<Integer> find(CommitGraph graph, int position1, int position2) throws IOException {
+        if (position1 == position2) {
+            return List.of(position1);
+        }
+        byte[] flags = new byte[graph.size()];
+        boolean[] queued = new boolean[graph.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                Comparator.<Integer>comparingInt(graph::generation).reversed()
+                        .thenComparing(Comparator.<Integer>comparingLong(graph::timestamp).reversed()));
+        List<Integer> results = new ArrayList<>();
+
+        flags[position1] = PARENT1;
+        flags[position2] = PARENT2;
+        queue.add(position1);
+        queue.add(position2);
+        queued[position1] = true;
+        queued[position2] = true;
+        int nonStale = 2;
+
+        while (nonStale > 0) {
+            int commit = queue.poll();
+            queued[commit] = false;
+            int paint = flags[commit] & (PARENT1 | PARENT2 | STALE);
+            if ((paint & STALE) == 0) {
+                nonStale--;
+            }
+            if (paint == (PARENT1 | PARENT2)) {
+                // Reached from both sides: a merge base candidate, and its ancestors are no longer interesting
+                if ((flags[commit] & RESULT) == 0) {
+                    flags[commit] |= RESULT;
+                    results.add(commit);
+                }
+                paint |= STALE;
+            }
+            for (int parent : graph.parents(commit)) {
+                if ((flags[parent] & paint) == paint) {
+                    continue;
+                }
+                boolean wasStale = (flags[parent] & STALE) != 0;
+                flags[parent] |= (byte) paint;
+                boolean isStale = (flags[parent] & STALE) != 0;
+                if (!queued[parent]) {
+                    queue.add(parent);
+                    queued[parent] = true;
+                    if (!isStale) {
+                        nonStale++;
+                    }
+                } else if (!wasStale && isStale) {
+                    nonStale--;
+                }
+            }
+        }
+        return removeRedundant(graph, results);
+    }
+
+    // Drop candidates that are ancestors of other candidates; what is left are the best bases
+    private static List<Integer> removeRedundant(CommitGraph graph, List<Integer> candidates) throws IOException {
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+        List<Integer> best = new ArrayList<>();
+        for (int candidate : candidates) {
+            boolean redundant = false;
+            for (int other : candidates) {
+                // Equal generations can never reach each other, so only look at newer candidates
+                if (other != candidate && graph.generation(other) > graph.generation(candidate)
+                        && graph.isReachable(other, candidate)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                best.add(candidate);
+            }
+        }
+        // Newest first, so callers that need a single base can take the first one
+        best.sort(Comparator.<Integer>comparingInt(graph::generation).reversed()
+                .thenComparing(Comparator.<Integer>comparingLong(graph::timestamp).reversed()));
+        return best;
+    }
+}
@@ -0,0 +1,282 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+// Runs the file-level part of a merge in parallel and lands it atomically.
+//
+// resolve() makes the three-way decision for every path on the fork-join pool.
+// apply() creates the needed directories once, stages every new file to a temp file next to its
+// target in parallel, and only then renames them into place. Replaced and deleted files are moved
+// aside first, so a failure at any point puts the working tree back the way it was.
+public class MergeExecutor {
+    // Paths per fork-join leaf task; small enough to spread a few big merges across workers
+    private static final int BATCH_SIZE = 32;
+    private static final String TEMP_SUFFIX = ".merge-tmp";
+    private static final String BACKUP_SUFFIX = ".merge-bak";
+
+    // The merged snapshot (path -> blob hash) and the paths that ended up with conflicts
+    public record Outcome(Map<String, String> merged, List<String> conflicts) {
+    }
+
+    private record Decision(String path, String hash, String conflict) {
+    }
+
+    // A working-tree file that was replaced or removed; backup is null if it did not exist before
+    private record Moved(Path target, Path backup) {
+    }
+
+    public static Outcome resolve(Map<String, String> base, Map<String, String> current, Map<String, String> target,
+                                  String currentLabel, String targetLabel) throws IOException {
+        Set<String> paths = new TreeSet<>(base.keySet());
+        paths.addAll(current.keySet());
+        paths.addAll(target.keySet());
+        List<Decision> decisions;
+        try (Metrics.Timer timer = Metrics.phase("resolve")) {
+            decisions = forEach(new ArrayList<>(paths),
+                    path -> decide(path, base.get(path), current.get(path), target.get(path), currentLabel, targetLabel));
+        }
+
+        Map<String, String> merged = new TreeMap<>();
+        List<String> conflicts = new ArrayList<>();
+        for (Decision decision : decisions) {
+            if (decision.hash() != null) { // A null result means the file was deleted
+                merged.put(decision.path(), decision.hash());
+            }
+            if (decision.conflict() != null) {
+                conflicts.add(decision.conflict());
+            }
+        }
+        Metrics.count("merge conflicts", conflicts.size());
+        return new Outcome(merged, conflicts);
+    }
+
+    // Three-way decision for one path on blob hashes; a null hash means the file is absent
+    private static Decision decide(String path, String base, String current, String target,
+                                   String currentLabel, String targetLabel) throws IOException {
+        if (Objects.equals(current, target) || Objects.equals(target, base)) {
+            return new Decision(path, current, null); // Same on both sides, or only changed in current
+        }
+        if (Objects.equals(current, base)) {
+            return new Decision(path, target, null); // Only changed in target
+        }
+        if (current == null || target == null) {
+            // Deleted on one side and modified on the other: keep the modified file
+            return new Decision(path, current != null ? current : target, path + " (deleted on one side)");
+        }
+        // Both sides changed the file: merge it line by line against the base
+        ThreeWayMerge.Result result = ThreeWayMerge.mergeBlobs(base, current, target, currentLabel, targetLabel);
+        String conflict = result.hasConflicts() ? path + " (" + result.conflicts() + " conflicting regions)" : null;
+        return new Decision(path, result.hash(), conflict);
+    }
+
+    // Bring the working tree from the current snapshot to the merged one. Either every change
+    // lands or, if anything fails, none of them does.
+    public static void apply(Map<String, String> current, Map<String, String> merged) throws IOException {
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> entry : merged.entrySet()) {
+            if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                writes.add(entry.getKey());
+            }
+        }
+        List<String> deletes = new ArrayList<>();
+        for (String path : current.keySet()) {
+            if (!merged.containsKey(path)) {
+                deletes.add(path);
+            }
+        }
+        if (writes.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        // Before anything is staged: uncommitted edits on these paths would otherwise be lost
+        Checkout.checkMerge(current, merged);
+
+        List<Path> createdDirs = createDirectories(writes);
+        List<Path> staged = Collections.synchronizedList(new ArrayList<>());
+        List<Moved> moved = new ArrayList<>();
+        try {
+            // Stage: write every new file next to its target, in parallel
+            forEach(writes, path -> {
+                Path target = Utils.workTreePath(path);
+                Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+                staged.add(temp);
+                try (InputStream in = ObjectStore.open(merged.get(path))) {
+                    Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return temp;
+            });
+
+            // Land: move old files aside and rename the staged files into place
+            for (String path : writes) {
+                Path target = Utils.workTreePath(path);
+                moved.add(new Moved(target, moveAside(target)));
+                Files.move(target.resolveSibling(target.getFileName() + TEMP_SUFFIX), target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            for (String path : deletes) {
+                Path target = Utils.workTreePath(path);
+                moved.add(new Moved(target, moveAside(target)));
+            }
+        } catch (IOException | RuntimeException e) {
+            rollback(moved, staged, createdDirs);
+            throw e;
+        }
+
+        Metrics.count("files written", writes.size());
+        Metrics.count("files deleted", deletes.size());
+
+        // Committed: the moved-aside files are no longer needed
+        for (Moved file : moved) {
+            if (file.backup() != null) {
+                Files.deleteIfExists(file.backup());
+            }
+        }
+        for (String path : deletes) {
+            removeEmptyParents(Utils.workTreePath(path));
+        }
+    }
+
+    // Create every missing parent directory once, shallowest first; returns the ones created
+    private static List<Path> createDirectories(List<String> paths) throws IOException {
+        Set<Path> parents = new TreeSet<>();
+        for (String path : paths) {
+            Path parent = Utils.workTreePath(path).getParent();
+            while (parent != null && parents.add(parent) && !Files.isDirectory(parent)) {
+                parent = parent.getParent();
+            }
+        }
+        List<Path> created = new ArrayList<>();
+        for (Path dir : parents) {
+            if (!Files.isDirectory(dir)) {
+                Files.createDirectory(dir);
+                created.add(dir);
+            }
+        }
+        return created;
+    }
+
+    private static Path moveAside(Path target) throws IOException {
+        if (!Files.exists(target)) {
+            return null;
+        }
+        Path backup = target.resolveSibling(target.getFileName() + BACKUP_SUFFIX);
+        Files.move(target, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return backup;
+    }
+
+    // Undo the renames in reverse order, drop staged files and the directories created for them
+    private static void rollback(List<Moved> moved, List<Path> staged, List<Path> createdDirs) {
+        for (int i = moved.size() - 1; i >= 0; i--) {
+            Moved file = moved.get(i);
+            try {
+                if (file.backup() != null) {
+                    Files.move(file.backup(), file.target(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.deleteIfExists(file.target());
+                }
+            } catch (IOException e) {
+                System.out.println("Could not restore " + file.target() + ": " + e.getMessage());
+            }
+        }
+        for (Path temp : staged) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                System.out.println("Could not remove " + temp + ": " + e.getMessage());
+            }
+        }
+        for (int i = createdDirs.size() - 1; i >= 0; i--) {
+            try {
+                Files.deleteIfExists(createdDirs.get(i));
+            } catch (IOException e) {
+                // Not empty: something else was put there meanwhile, leave it
+            }
+        }
+    }
+
+    private static void removeEmptyParents(Path file) {
+        Path root = Utils.workTreePath("").toAbsolutePath().normalize();
+        Path dir = file.toAbsolutePath().normalize().getParent();
+        while (dir != null && dir.startsWith(root) && !dir.equals(root)) {
+            try {
+                Files.delete(dir);
+            } catch (IOException e) {
+                return; // Not empty
+            }
+            dir = dir.getParent();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Work<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    // Run the work for every item on the common fork-join pool; results keep the input order
+    private static <T, R> List<R> forEach(List<T> items, Work<T, R> work) throws IOException {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        // Reads on the pool's threads count towards the caller's operation
+        Metrics.Operation operation = Metrics.current();
+        try {
+            return ForkJoinPool.commonPool().invoke(new Batch<>(items, 0, items.size(), item -> {
+                try (Metrics.Timer attached = operation.attach()) {
+                    return work.apply(item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class Batch<T, R> extends RecursiveTask<List<R>> {
+        private final List<T> items;
+        private final int from;
+        private final int to;
+        private final Function<T, R> work;
+
+        Batch(List<T> items, int from, int to, Function<T, R> work) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.work = work;
+        }
+
+        @Override
+        protected List<R> compute() {
+            if (to - from <= BATCH_SIZE) {
+                List<R> results = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    results.add(work.apply(items.get(i)));
+                }
+                return results;
+            }
+            int middle = (from + to) >>> 1;
+            Batch<T, R> left = new Batch<>(items, from, middle, work);
+            left.fork();
+            List<R> right = new Batch<>(items, middle, to, work).compute();
+            List<R> results = new ArrayList<>(left.join());
+            results.addAll(right);
+            return results;
+        }
+    }
+}
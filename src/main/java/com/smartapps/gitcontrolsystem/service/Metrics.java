@@ -0,0 +1,355 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Timers and counters for repository operations.
+//
+// An operation ("commit", "add", "git merge main") is opened with begin() and closed when it ends,
+// or runs as the body of run(), which also marks it failed if the body throws.
+// Code running inside it times phases ("hash", "lock wait") and bumps counters ("bytes read",
+// "objects written") through the static phase() and count() without knowing which operation it
+// is part of: the operation is the one current on the thread. Worker threads join their caller's
+// operation with attach(). An operation begun inside another one becomes a phase of the outer
+// one, so "commit" is a phase of "git merge" but an operation of its own when run alone. When the
+// outermost operation ends, its totals go to every installed Backend.
+//
+// Nothing is installed by default. Then begin() returns a shared no-op operation and phase() and
+// count() return after reading one volatile flag, so the instrumentation costs nothing measurable.
+// -Dgitcontrolsystem.metrics=log,jfr installs backends at startup; the UI installs a Recent one.
+public final class Metrics {
+    // Ends a phase or an operation; closing it again has no effect
+    public interface Timer extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public static final Timer NO_TIMER = () -> { };
+
+    // Receives the operations of every thread, so implementations must be thread safe
+    public interface Backend {
+        // An operation (phase is null) or one of its phases has started; the returned timer is
+        // closed on the same thread when it ends
+        default Timer start(String operation, String phase) {
+            return NO_TIMER;
+        }
+
+        // Totals of an operation that has just ended, with the timer this backend returned when
+        // it started; called on the operation's thread before that timer is closed
+        void finished(Summary summary, Timer timer);
+    }
+
+    // How often a phase ran and how long it took in total; phases run by several threads at
+    // once (hashing during add) can add up to more than the operation's own duration
+    public record PhaseTotal(long count, long nanos) {
+    }
+
+    // startedAt is in epoch milliseconds; phases and counters are in the order they first appeared
+    public record Summary(String operation, long startedAt, long nanos, boolean failed,
+                          Map<String, PhaseTotal> phases, Map<String, Long> counters) {
+        public String phasesText() {
+            List<String> parts = new ArrayList<>();
+            phases.forEach((phase, total) -> parts.add(phase + " " + millis(total.nanos()) + " ms"
+                    + (total.count() > 1 ? " x" + total.count() : "")));
+            return String.join(", ", parts);
+        }
+
+        public String countersText() {
+            List<String> parts = new ArrayList<>();
+            counters.forEach((counter, value) -> parts.add(counter + "=" + value));
+            return String.join(", ", parts);
+        }
+
+        @Override
+        public String toString() {
+            return operation + " " + millis(nanos) + " ms" + (failed ? " (failed)" : "")
+                    + (phases.isEmpty() ? "" : " [" + phasesText() + "]")
+                    + (counters.isEmpty() ? "" : " " + countersText());
+        }
+    }
+
+    private static final List<Backend> backends = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Operation> current = new ThreadLocal<>();
+    private static volatile boolean enabled;
+
+    static {
+        for (String name : System.getProperty("gitcontrolsystem.metrics", "").split(",")) {
+            switch (name.trim()) {
+                case "" -> { }
+                case "log" -> install((summary, timer) -> System.out.println("[metrics] " + summary));
+                // Only loaded when asked for, so jdk.jfr stays out of the CLI's startup
+                case "jfr" -> install(new JfrMetrics());
+                default -> System.out.println("Unknown metrics backend: " + name.trim());
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static void install(Backend backend) {
+        backends.add(backend);
+        enabled = true;
+    }
+
+    public static void uninstall(Backend backend) {
+        backends.remove(backend);
+        enabled = !backends.isEmpty();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Start an operation on this thread; close it (try-with-resources) when the operation ends
+    public static Operation begin(String name) {
+        if (!enabled) {
+            return Operation.NONE;
+        }
+        Operation outer = current.get();
+        Operation operation = new Operation(name, outer == null ? null : outer.root, outer);
+        current.set(operation);
+        return operation;
+    }
+
+    // The operation running on this thread; a no-op one outside of any operation
+    public static Operation current() {
+        if (!enabled) {
+            return Operation.NONE;
+        }
+        Operation operation = current.get();
+        return operation == null ? Operation.NONE : operation;
+    }
+
+    // Time a phase of the current operation; outside of an operation nothing is recorded
+    public static Timer phase(String phase) {
+        if (!enabled) {
+            return NO_TIMER;
+        }
+        Operation operation = current.get();
+        return operation == null ? NO_TIMER : operation.phase(phase);
+    }
+
+    // Add to a counter of the current operation; outside of an operation nothing is recorded
+    public static void count(String counter, long delta) {
+        if (!enabled) {
+            return;
+        }
+        Operation operation = current.get();
+        if (operation != null) {
+            operation.count(counter, delta);
+        }
+    }
+
+    // Code run as an operation by run()
+    public interface Body<T> {
+        T run() throws IOException;
+    }
+
+    // Run body as an operation; anything it throws marks the operation failed on the way out
+    public static <T> T run(String name, Body<T> body) throws IOException {
+        try (Operation operation = begin(name)) {
+            try {
+                return body.run();
+            } catch (IOException | RuntimeException | Error e) {
+                operation.failed();
+                throw e;
+            }
+        }
+    }
+
+    public static final class Operation implements AutoCloseable {
+        private static final Operation NONE = new Operation();
+
+        private final String name;
+        // The outermost operation, which collects the totals; this one for an outermost operation
+        private final Operation root;
+        // The thread's current operation before this one began
+        private final Operation outer;
+        private final long startNanos;
+        private final long startedAt;
+        private final List<Backend> receivers;
+        private final Timer[] timers;
+        private final Map<String, PhaseTotal> phases;
+        private final Map<String, LongAdder> counters;
+        private volatile boolean failed;
+        private boolean closed;
+
+        private Operation() {
+            name = null;
+            root = this;
+            outer = null;
+            startNanos = 0;
+            startedAt = 0;
+            receivers = List.of();
+            timers = new Timer[0];
+            phases = Map.of();
+            counters = Map.of();
+            closed = true;
+        }
+
+        private Operation(String name, Operation root, Operation outer) {
+            this.name = name;
+            this.root = root == null ? this : root;
+            this.outer = outer;
+            this.receivers = root == null ? List.copyOf(backends) : root.receivers;
+            this.phases = root == null ? new LinkedHashMap<>() : null;
+            this.counters = root == null ? Collections.synchronizedMap(new LinkedHashMap<>()) : null;
+            this.timers = start(this.receivers, this.root.name, root == null ? null : name);
+            this.startedAt = System.currentTimeMillis();
+            this.startNanos = System.nanoTime();
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Timer phase(String phase) {
+            if (this == NONE) {
+                return NO_TIMER;
+            }
+            Timer[] started = start(receivers, root.name, phase);
+            long start = System.nanoTime();
+            boolean[] stopped = {false};
+            return () -> {
+                if (!stopped[0]) {
+                    stopped[0] = true;
+                    root.addPhase(phase, System.nanoTime() - start);
+                    stop(started);
+                }
+            };
+        }
+
+        public void count(String counter, long delta) {
+            if (this == NONE) {
+                return;
+            }
+            root.counters.computeIfAbsent(counter, c -> new LongAdder()).add(delta);
+        }
+
+        // The operation did not complete; reported with its totals
+        public void failed() {
+            if (this != NONE) {
+                root.failed = true;
+            }
+        }
+
+        // Make this the current operation of another thread, e.g. a worker that does part of it;
+        // close the returned timer before the thread finishes
+        public Timer attach() {
+            if (this == NONE || !enabled) {
+                return NO_TIMER;
+            }
+            Operation previous = current.get();
+            current.set(this);
+            return () -> current.set(previous);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long nanos = System.nanoTime() - startNanos;
+            if (current.get() == this) {
+                current.set(outer);
+            }
+            if (root != this) {
+                root.addPhase(name, nanos);
+                stop(timers);
+                return;
+            }
+            Map<String, PhaseTotal> phaseTotals;
+            synchronized (phases) {
+                phaseTotals = Collections.unmodifiableMap(new LinkedHashMap<>(phases));
+            }
+            Map<String, Long> counterTotals = new LinkedHashMap<>();
+            synchronized (counters) {
+                counters.forEach((counter, adder) -> counterTotals.put(counter, adder.sum()));
+            }
+            Summary summary = new Summary(name, startedAt, nanos, failed, phaseTotals,
+                    Collections.unmodifiableMap(counterTotals));
+            for (int i = 0; i < receivers.size(); i++) {
+                try {
+                    receivers.get(i).finished(summary, timers[i]);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            stop(timers);
+        }
+
+        private void addPhase(String phase, long nanos) {
+            synchronized (phases) {
+                phases.merge(phase, new PhaseTotal(1, nanos),
+                        (a, b) -> new PhaseTotal(a.count() + b.count(), a.nanos() + b.nanos()));
+            }
+        }
+
+        private static Timer[] start(List<Backend> receivers, String operation, String phase) {
+            Timer[] timers = new Timer[receivers.size()];
+            for (int i = 0; i < timers.length; i++) {
+                timers[i] = receivers.get(i).start(operation, phase);
+            }
+            return timers;
+        }
+
+        private static void stop(Timer[] timers) {
+            for (Timer timer : timers) {
+                timer.close();
+            }
+        }
+    }
+
+    // Keeps the latest operations in memory and tells listeners about each new one, for the UI
+    public static final class Recent implements Backend {
+        private final int capacity;
+        private final Deque<Summary> summaries = new ArrayDeque<>();
+        private final List<Consumer<Summary>> listeners = new CopyOnWriteArrayList<>();
+
+        public Recent(int capacity) {
+            this.capacity = capacity;
+        }
+
+        // Oldest first
+        public synchronized List<Summary> snapshot() {
+            return new ArrayList<>(summaries);
+        }
+
+        // Called on the thread that ran the operation
+        public void addListener(Consumer<Summary> listener) {
+            listeners.add(listener);
+        }
+
+        public void removeListener(Consumer<Summary> listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public void finished(Summary summary, Timer timer) {
+            synchronized (this) {
+                summaries.addLast(summary);
+                if (summaries.size() > capacity) {
+                    summaries.removeFirst();
+                }
+            }
+            for (Consumer<Summary> listener : listeners) {
+                listener.accept(summary);
+            }
+        }
+    }
+
+    static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,293 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Content-addressed object store: objects are named by the SHA-256 of their content.
+// New objects are written loose and deflated to .dotgit/objects/<first two hex chars>/<remaining hex chars>;
+// repack() later moves them into the delta-compressed pack (see PackFile).
+public class ObjectStore {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int WINDOW_SIZE = 10;
+    private static final int MAX_DELTA_DEPTH = 10;
+    private static final int MAX_WINDOW_OBJECT_SIZE = 16 * 1024 * 1024;
+
+    public static Path objectsDir() {
+        return Utils.dotgitPath("objects");
+    }
+
+    public static Path objectPath(String hash) {
+        return objectsDir().resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    public static boolean exists(String hash) throws IOException {
+        if (isCached(hash) || Files.exists(objectPath(hash))) {
+            return true;
+        }
+        PackFile pack = PackFile.current();
+        return pack != null && pack.contains(hash);
+    }
+
+    // Hash a file without storing it, reading it in fixed-size chunks
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = Utils.newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    // Store a file and return its hash; nothing is written if the object is already present
+    public static String writeFile(Path file) throws IOException {
+        String hash = hash(file);
+        if (exists(hash)) {
+            return hash;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return store(in);
+        }
+    }
+
+    public static String writeBytes(byte[] content) throws IOException {
+        String hash = Utils.toHex(Utils.newDigest().digest(content));
+        if (exists(hash)) {
+            return hash;
+        }
+        return store(new ByteArrayInputStream(content));
+    }
+
+    public static InputStream open(String hash) throws IOException {
+        byte[] cached = RepositoryCache.current().peek(RepositoryCache.Kind.BLOB, hash);
+        if (cached != null) {
+            return new ByteArrayInputStream(cached);
+        }
+        Path loose = objectPath(hash);
+        if (Files.exists(loose)) {
+            try {
+                return new InflaterInputStream(new BufferedInputStream(Files.newInputStream(loose), BUFFER_SIZE));
+            } catch (NoSuchFileException e) {
+                // Moved into the pack by a repack in this or another process; the pack index is already written
+            }
+        }
+        PackFile pack = PackFile.current();
+        byte[] packed = pack == null ? null : pack.read(hash);
+        if (packed == null) {
+            throw new NoSuchFileException("Object " + hash + " does not exist");
+        }
+        return new ByteArrayInputStream(packed);
+    }
+
+    // Object content; small objects are kept in the repository cache, so the caller gets a copy
+    public static byte[] read(String hash) throws IOException {
+        // A large object is not cached, but the bytes just loaded are still the answer
+        byte[][] large = new byte[1][];
+        byte[] content = RepositoryCache.current().get(RepositoryCache.Kind.BLOB, hash, () -> {
+            byte[] loaded = load(hash);
+            if (loaded.length <= RepositoryCache.SMALL_BLOB) {
+                return loaded;
+            }
+            large[0] = loaded;
+            return null;
+        });
+        return content != null ? content.clone() : large[0];
+    }
+
+    // Object content straight from disk, for readers that cache the parsed form (commits, trees)
+    static byte[] load(String hash) throws IOException {
+        try (InputStream in = open(hash)) {
+            byte[] content = in.readAllBytes();
+            Metrics.count("bytes read", content.length);
+            return content;
+        }
+    }
+
+    private static boolean isCached(String hash) {
+        RepositoryCache cache = RepositoryCache.current();
+        return cache.peek(RepositoryCache.Kind.COMMIT, hash) != null || cache.peek(RepositoryCache.Kind.TREE, hash) != null
+                || cache.peek(RepositoryCache.Kind.BLOB, hash) != null;
+    }
+
+    // Move every loose object into the pack, delta-compressing each one against a window of
+    // recently packed objects of similar size, then rewrite the index and drop the loose files
+    public static synchronized String repack() throws IOException {
+        // Appending to the pack and rewriting its index is one step for every process
+        try (Metrics.Operation operation = Metrics.begin("repack");
+             RepositoryLock lock = RepositoryLock.acquire(RepositoryLock.PACK)) {
+            // Another process may have repacked since this one last looked
+            PackFile.invalidate();
+            return repackLocked();
+        }
+    }
+
+    private static String repackLocked() throws IOException {
+        List<Path> loose = listLooseObjects();
+        if (loose.isEmpty()) {
+            return "Nothing to pack.";
+        }
+        // Largest first, so smaller objects are usually expressed as deltas against bigger ones
+        loose.sort(Comparator.comparingLong(ObjectStore::sizeOf).reversed());
+
+        Files.createDirectories(PackFile.packDir());
+        PackFile existing = PackFile.current();
+        SortedMap<String, Long> added = new TreeMap<>();
+        Deque<PackedObject> window = new ArrayDeque<>();
+        int packed = 0;
+        int deltas = 0;
+        // The new pack is the old one plus the new entries, streamed to a temp file and renamed into
+        // place: existing entries keep their offsets, and a failed repack leaves the old pack as it was
+        Path temp = Files.createTempFile(PackFile.packDir(), "tmp_pack_", null);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                if (existing != null) {
+                    existing.copyTo(channel);
+                }
+                channel.position(channel.size());
+                for (Path path : loose) {
+                    String hash = path.getParent().getFileName().toString() + path.getFileName();
+                    if (existing != null && existing.contains(hash)) {
+                        continue;
+                    }
+                    byte[] content;
+                    try (InputStream in = new InflaterInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+                        content = in.readAllBytes();
+                    }
+                    PackedObject base = null;
+                    byte[] delta = null;
+                    for (PackedObject candidate : window) {
+                        if (candidate.depth >= MAX_DELTA_DEPTH || candidate.content.length > content.length * 2L) {
+                            continue;
+                        }
+                        byte[] attempt = Delta.create(candidate.content, content);
+                        if (attempt != null && (delta == null || attempt.length < delta.length)) {
+                            delta = attempt;
+                            base = candidate;
+                        }
+                    }
+                    long offset;
+                    int depth = 0;
+                    // Only keep a delta when it saves at least half of the object
+                    if (delta != null && delta.length < content.length / 2) {
+                        offset = PackFile.append(channel, PackFile.DELTA, base.offset, delta);
+                        depth = base.depth + 1;
+                        deltas++;
+                    } else {
+                        offset = PackFile.append(channel, PackFile.FULL, -1, content);
+                    }
+                    added.put(hash, offset);
+                    packed++;
+                    if (content.length <= MAX_WINDOW_OBJECT_SIZE) {
+                        window.addFirst(new PackedObject(offset, content, depth));
+                        if (window.size() > WINDOW_SIZE) {
+                            window.removeLast();
+                        }
+                    }
+                }
+                channel.force(true);
+            }
+            if (packed > 0) {
+                Files.move(temp, PackFile.packPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (packed > 0) {
+            PackFile.writeIndex(existing, added);
+        }
+        Metrics.count("objects packed", packed);
+        Metrics.count("deltas", deltas);
+        // The emptied bucket directories stay: another process may be moving a new object into one
+        for (Path path : loose) {
+            Files.deleteIfExists(path);
+        }
+        System.out.println("Packed " + packed + " objects (" + deltas + " as deltas).");
+        return "Packed " + packed + " objects (" + deltas + " as deltas).";
+    }
+
+    private static List<Path> listLooseObjects() throws IOException {
+        List<Path> loose = new ArrayList<>();
+        Path dir = objectsDir();
+        if (!Files.isDirectory(dir)) {
+            return loose;
+        }
+        try (DirectoryStream<Path> fanout = Files.newDirectoryStream(dir, entry -> entry.getFileName().toString().length() == 2)) {
+            for (Path bucket : fanout) {
+                try (DirectoryStream<Path> objects = Files.newDirectoryStream(bucket, entry -> !entry.getFileName().toString().startsWith("tmp_"))) {
+                    objects.forEach(loose::add);
+                }
+            }
+        }
+        return loose;
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private record PackedObject(long offset, byte[] content, int depth) {
+    }
+
+    // Stream content into a temp file while hashing it, then rename it into place.
+    // The name comes from the bytes actually written, so a file that changes while
+    // being added can never end up stored under a stale hash.
+    private static String store(InputStream in) throws IOException {
+        Path dir = objectsDir();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "tmp_obj_", null);
+        try {
+            MessageDigest digest = Utils.newDigest();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            try (OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+            String hash = Utils.toHex(digest.digest());
+            Path target = objectPath(hash);
+            if (Files.exists(target)) {
+                return hash;
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            Metrics.count("objects written", 1);
+            Metrics.count("bytes written", size);
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
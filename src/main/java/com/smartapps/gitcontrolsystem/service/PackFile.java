@@ -0,0 +1,354 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Read side of the single pack in .dotgit/objects/pack. A repack copies the pack to a temp file,
+// appends the new entries and renames it into place, so existing entries never move.
+//
+// objects.pack: "DPCK", int version, then entries of
+//   byte type, [long baseOffset if DELTA], int rawLength, int dataLength, deflated data
+// objects.idx:  "DPIX", int version, int count, int[256] fan-out, then count x (32-byte hash, long offset)
+//   sorted by hash, so a lookup is one fan-out read plus a binary search over the mapped file.
+// Both files are addressed with long positions and mapped in 1 GiB windows, so they may exceed 2 GiB.
+class PackFile {
+    static final int FULL = 1;
+    static final int DELTA = 2;
+
+    private static final byte[] PACK_MAGIC = "DPCK".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INDEX_MAGIC = "DPIX".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 32;
+    private static final int INDEX_ENTRY_SIZE = HASH_SIZE + 8;
+    private static final int INDEX_HEADER_SIZE = 12 + 256 * 4;
+    private static final int MAX_DELTA_DEPTH = 50;
+    private static final int WINDOW_SHIFT = 30;
+
+    private static PackFile current;
+
+    private final Path indexPath;
+    private final long indexModified;
+    private final long indexSize;
+    private final Mapping pack;
+    private final Mapping index;
+    private final int count;
+
+    private PackFile(Path packPath, Path indexPath) throws IOException {
+        this.indexPath = indexPath;
+        this.indexModified = Files.getLastModifiedTime(indexPath).toMillis();
+        this.indexSize = Files.size(indexPath);
+        this.index = new Mapping(indexPath);
+        this.pack = new Mapping(packPath);
+        byte[] magic = new byte[4];
+        index.get(0, magic);
+        if (!Arrays.equals(magic, INDEX_MAGIC) || index.getInt(4) != VERSION) {
+            throw new IOException("Unsupported pack index: " + indexPath);
+        }
+        this.count = index.getInt(8);
+    }
+
+    static Path packDir() {
+        return ObjectStore.objectsDir().resolve("pack");
+    }
+
+    static Path packPath() {
+        return packDir().resolve("objects.pack");
+    }
+
+    static Path indexPath() {
+        return packDir().resolve("objects.idx");
+    }
+
+    // The mapped pack for the current repository, reopened whenever the index has been rewritten
+    static synchronized PackFile current() throws IOException {
+        Path indexPath = indexPath();
+        if (!Files.exists(indexPath)) {
+            current = null;
+            return null;
+        }
+        if (current == null || !current.indexPath.equals(indexPath)
+                || current.indexModified != Files.getLastModifiedTime(indexPath).toMillis()
+                || current.indexSize != Files.size(indexPath)) {
+            current = new PackFile(packPath(), indexPath);
+        }
+        return current;
+    }
+
+    static synchronized void invalidate() {
+        current = null;
+    }
+
+    boolean contains(String hash) {
+        return offsetOf(hash) >= 0;
+    }
+
+    // Returns the object's content, or null if it is not in this pack
+    byte[] read(String hash) throws IOException {
+        long offset = offsetOf(hash);
+        return offset < 0 ? null : readAt(offset, 0);
+    }
+
+    long offsetOf(String hash) {
+        byte[] key = Utils.fromHex(hash);
+        int first = key[0] & 0xFF;
+        int low = first == 0 ? 0 : index.getInt(12 + (first - 1) * 4);
+        int high = index.getInt(12 + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return offsetAt(mid);
+            }
+        }
+        return -1;
+    }
+
+    private long offsetAt(int entry) {
+        return index.getLong(INDEX_HEADER_SIZE + (long) entry * INDEX_ENTRY_SIZE + HASH_SIZE);
+    }
+
+    // Stream the whole pack file into a channel, for a repack that appends to a copy of it
+    void copyTo(FileChannel channel) throws IOException {
+        try (FileChannel in = FileChannel.open(pack.path, StandardOpenOption.READ)) {
+            long size = in.size();
+            long copied = 0;
+            while (copied < size) {
+                copied += in.transferTo(copied, size - copied, channel);
+            }
+        }
+    }
+
+    private byte[] readAt(long offset, int depth) throws IOException {
+        if (depth > MAX_DELTA_DEPTH) {
+            throw new IOException("Delta chain too deep at pack offset " + offset);
+        }
+        long position = offset;
+        int type = pack.get(position++);
+        long baseOffset = -1;
+        if (type == DELTA) {
+            baseOffset = pack.getLong(position);
+            position += 8;
+        } else if (type != FULL) {
+            throw new IOException("Corrupt pack entry at offset " + offset);
+        }
+        int rawLength = pack.getInt(position);
+        int dataLength = pack.getInt(position + 4);
+        ByteBuffer data = pack.slice(position + 8, dataLength);
+        if (type == FULL) {
+            return inflate(data, rawLength);
+        }
+        byte[] base = readAt(baseOffset, depth + 1);
+        return Delta.apply(base, inflate(data, rawLength));
+    }
+
+    private int compareAt(int entry, byte[] key) {
+        long position = INDEX_HEADER_SIZE + (long) entry * INDEX_ENTRY_SIZE;
+        for (int i = 0; i < HASH_SIZE; i++) {
+            int cmp = Integer.compare(index.get(position + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    // Append one entry at the channel's current position and return that position
+    static long append(FileChannel channel, int type, long baseOffset, byte[] payload) throws IOException {
+        long position = channel.position();
+        if (position == 0) {
+            ByteBuffer header = ByteBuffer.allocate(8).put(PACK_MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            position = channel.position();
+        }
+        byte[] data = deflate(payload);
+        ByteBuffer entry = ByteBuffer.allocate(1 + (type == DELTA ? 8 : 0) + 8 + data.length);
+        entry.put((byte) type);
+        if (type == DELTA) {
+            entry.putLong(baseOffset);
+        }
+        entry.putInt(payload.length).putInt(data.length).put(data).flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+        return position;
+    }
+
+    // Write the index for the existing pack's entries plus the added ones through a temp file, so
+    // readers never see a partial index. Both inputs are sorted by hash and are merged as they are
+    // written, without collecting the whole index in memory.
+    static void writeIndex(PackFile existing, SortedMap<String, Long> added) throws IOException {
+        int existingCount = existing == null ? 0 : existing.count;
+        int[] fanout = new int[256];
+        for (int bucket = 0; bucket < 256 && existing != null; bucket++) {
+            fanout[bucket] = existing.index.getInt(12 + bucket * 4) - (bucket == 0 ? 0 : existing.index.getInt(12 + (bucket - 1) * 4));
+        }
+        for (String hash : added.keySet()) {
+            fanout[Integer.parseInt(hash.substring(0, 2), 16)]++;
+        }
+        Path temp = Files.createTempFile(packDir(), "tmp_idx_", null);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+                out.write(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(existingCount + added.size());
+                int cumulative = 0;
+                for (int bucket : fanout) {
+                    cumulative += bucket;
+                    out.writeInt(cumulative);
+                }
+                Iterator<Map.Entry<String, Long>> next = added.entrySet().iterator();
+                Map.Entry<String, Long> pending = next.hasNext() ? next.next() : null;
+                byte[] pendingHash = pending == null ? null : Utils.fromHex(pending.getKey());
+                byte[] hash = new byte[HASH_SIZE];
+                for (int i = 0; i < existingCount; i++) {
+                    existing.index.get(INDEX_HEADER_SIZE + (long) i * INDEX_ENTRY_SIZE, hash);
+                    while (pending != null && Arrays.compareUnsigned(pendingHash, hash) < 0) {
+                        out.write(pendingHash);
+                        out.writeLong(pending.getValue());
+                        pending = next.hasNext() ? next.next() : null;
+                        pendingHash = pending == null ? null : Utils.fromHex(pending.getKey());
+                    }
+                    out.write(hash);
+                    out.writeLong(existing.offsetAt(i));
+                }
+                while (pending != null) {
+                    out.write(pendingHash);
+                    out.writeLong(pending.getValue());
+                    pending = next.hasNext() ? next.next() : null;
+                    pendingHash = pending == null ? null : Utils.fromHex(pending.getKey());
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, indexPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        invalidate();
+    }
+
+    static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer data, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[rawLength];
+            int filled = 0;
+            while (filled < rawLength) {
+                int n = inflater.inflate(result, filled, rawLength - filled);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                filled += n;
+            }
+            if (filled != rawLength) {
+                throw new IOException("Truncated pack entry");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt pack entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // A read-only file mapped in fixed-size windows. A read that crosses a window boundary is
+    // copied out of the two windows instead.
+    private static final class Mapping {
+        private final Path path;
+        private final MappedByteBuffer[] windows;
+
+        Mapping(Path path) throws IOException {
+            this.path = path;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                windows = new MappedByteBuffer[(int) ((size + (1L << WINDOW_SHIFT) - 1) >>> WINDOW_SHIFT)];
+                for (int i = 0; i < windows.length; i++) {
+                    long start = (long) i << WINDOW_SHIFT;
+                    windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << WINDOW_SHIFT, size - start));
+                }
+            }
+        }
+
+        byte get(long position) {
+            return windows[(int) (position >>> WINDOW_SHIFT)].get(within(position));
+        }
+
+        int getInt(long position) {
+            return slice(position, 4).getInt(0);
+        }
+
+        long getLong(long position) {
+            return slice(position, 8).getLong(0);
+        }
+
+        void get(long position, byte[] destination) {
+            slice(position, destination.length).get(0, destination);
+        }
+
+        // The bytes at [position, position + length) as a buffer of their own
+        ByteBuffer slice(long position, int length) {
+            MappedByteBuffer window = windows[(int) (position >>> WINDOW_SHIFT)];
+            int start = within(position);
+            if (start + length <= window.limit()) {
+                return window.slice(start, length);
+            }
+            byte[] copy = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                window = windows[(int) ((position + copied) >>> WINDOW_SHIFT)];
+                start = within(position + copied);
+                int n = Math.min(length - copied, window.limit() - start);
+                window.get(start, copy, copied, n);
+                copied += n;
+            }
+            return ByteBuffer.wrap(copy);
+        }
+
+        private static int within(long position) {
+            return (int) (position & ((1L << WINDOW_SHIFT) - 1));
+        }
+    }
+}
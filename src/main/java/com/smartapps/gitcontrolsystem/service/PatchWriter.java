@@ -0,0 +1,214 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Unified patches and "--stat" summaries of a diff, in the format git prints.
+//
+// Files are handled one at a time: both sides are read, diffed with LineDiff, written and dropped
+// before the next file is read, and patch lines are copied from the file bytes straight to the
+// output. Only the summary needs every file before it can print (for the column widths), and it
+// keeps one small record per file.
+public class PatchWriter {
+    private static final int ABBREVIATED_HASH = 7;
+    private static final int STAT_WIDTH = 80;
+    private static final String NULL_HASH = "0".repeat(ABBREVIATED_HASH);
+
+    // Lines added and removed in one file; sizes are only meaningful for binary files
+    public record FileStat(String name, int insertions, int deletions, boolean binary, long oldSize, long newSize) {
+    }
+
+    private PatchWriter() {
+    }
+
+    public static void writePatch(List<GitDiff.FileChange> changes, int context, OutputStream out) throws IOException {
+        try (Metrics.Timer timer = Metrics.phase("patch")) {
+            for (GitDiff.FileChange change : changes) {
+                writePatch(change, context, out);
+            }
+            out.flush();
+        }
+    }
+
+    public static void writeStat(List<GitDiff.FileChange> changes, OutputStream out) throws IOException {
+        List<FileStat> stats = new ArrayList<>(changes.size());
+        try (Metrics.Timer timer = Metrics.phase("patch")) {
+            for (GitDiff.FileChange change : changes) {
+                stats.add(stat(change));
+            }
+        }
+        print(out, formatStat(stats));
+        out.flush();
+    }
+
+    public static FileStat stat(GitDiff.FileChange change) throws IOException {
+        String name = change.oldPath() != null && change.newPath() != null && !change.oldPath().equals(change.newPath())
+                ? change.oldPath() + " => " + change.newPath() : change.path();
+        if (sameContent(change)) {
+            return new FileStat(name, 0, 0, false, 0, 0);
+        }
+        byte[] oldContent = change.readOld();
+        byte[] newContent = change.readNew();
+        LineDiff.Lines a = LineDiff.Lines.of(oldContent);
+        LineDiff.Lines b = LineDiff.Lines.of(newContent);
+        if (a.isBinary() || b.isBinary()) {
+            return new FileStat(name, 0, 0, true, oldContent.length, newContent.length);
+        }
+        int insertions = 0;
+        int deletions = 0;
+        for (LineDiff.Edit edit : LineDiff.diff(a, b)) {
+            deletions += edit.endA() - edit.beginA();
+            insertions += edit.endB() - edit.beginB();
+        }
+        return new FileStat(name, insertions, deletions, false, oldContent.length, newContent.length);
+    }
+
+    //  name | 12 +++++-----
+    //  2 files changed, 7 insertions(+), 5 deletions(-)
+    public static String formatStat(List<FileStat> stats) {
+        int nameWidth = 0;
+        int maxChanges = 0;
+        int insertions = 0;
+        int deletions = 0;
+        for (FileStat stat : stats) {
+            nameWidth = Math.max(nameWidth, stat.name().length());
+            maxChanges = Math.max(maxChanges, stat.insertions() + stat.deletions());
+            insertions += stat.insertions();
+            deletions += stat.deletions();
+        }
+        int countWidth = Math.max(3, String.valueOf(maxChanges).length());
+        int graphWidth = Math.max(10, STAT_WIDTH - nameWidth - countWidth - 4);
+        StringBuilder text = new StringBuilder();
+        for (FileStat stat : stats) {
+            text.append(' ').append(stat.name()).append(" ".repeat(nameWidth - stat.name().length())).append(" | ");
+            if (stat.binary()) {
+                text.append("Bin ").append(stat.oldSize()).append(" -> ").append(stat.newSize()).append(" bytes\n");
+                continue;
+            }
+            int changed = stat.insertions() + stat.deletions();
+            int plus = stat.insertions();
+            int minus = stat.deletions();
+            if (maxChanges > graphWidth) {
+                // Scale to the graph, but never hide a side that has changes
+                plus = scale(plus, maxChanges, graphWidth);
+                minus = scale(minus, maxChanges, graphWidth);
+            }
+            text.append(" ".repeat(countWidth - String.valueOf(changed).length())).append(changed)
+                    .append(changed > 0 ? " " : "").append("+".repeat(plus)).append("-".repeat(minus)).append('\n');
+        }
+        text.append(' ').append(stats.size()).append(stats.size() == 1 ? " file changed" : " files changed");
+        if (insertions > 0 || deletions == 0) {
+            text.append(", ").append(insertions).append(insertions == 1 ? " insertion(+)" : " insertions(+)");
+        }
+        if (deletions > 0 || insertions == 0) {
+            text.append(", ").append(deletions).append(deletions == 1 ? " deletion(-)" : " deletions(-)");
+        }
+        return text.append('\n').toString();
+    }
+
+    private static void writePatch(GitDiff.FileChange change, int context, OutputStream out) throws IOException {
+        String oldName = change.oldPath() != null ? change.oldPath() : change.newPath();
+        String newName = change.newPath() != null ? change.newPath() : change.oldPath();
+        StringBuilder header = new StringBuilder();
+        header.append("diff --git a/").append(oldName).append(" b/").append(newName).append('\n');
+        switch (change.status()) {
+            case ADDED -> header.append("new file mode 100644\n");
+            case DELETED -> header.append("deleted file mode 100644\n");
+            case RENAMED, COPIED -> {
+                String verb = change.status() == GitDiff.Status.RENAMED ? "rename" : "copy";
+                header.append("similarity index ").append(change.similarity()).append("%\n")
+                        .append(verb).append(" from ").append(oldName).append('\n')
+                        .append(verb).append(" to ").append(newName).append('\n');
+            }
+            case MODIFIED -> { }
+        }
+        if (sameContent(change)) {
+            // A pure rename or copy has no content lines
+            print(out, header.toString());
+            return;
+        }
+        header.append("index ").append(abbreviate(change.oldHash())).append("..").append(abbreviate(change.newHash()))
+                .append(change.status() == GitDiff.Status.MODIFIED ? " 100644" : "").append('\n');
+
+        byte[] oldContent = change.readOld();
+        byte[] newContent = change.readNew();
+        String from = change.oldHash() == null ? "/dev/null" : "a/" + oldName;
+        String to = change.newHash() == null ? "/dev/null" : "b/" + newName;
+        LineDiff.Lines a = LineDiff.Lines.of(oldContent);
+        LineDiff.Lines b = LineDiff.Lines.of(newContent);
+        if (a.isBinary() || b.isBinary()) {
+            print(out, header.append("Binary files ").append(from).append(" and ").append(to).append(" differ\n").toString());
+            return;
+        }
+        print(out, header.append("--- ").append(from).append('\n').append("+++ ").append(to).append('\n').toString());
+
+        List<LineDiff.Edit> edits = LineDiff.diff(a, b);
+        int first = 0;
+        while (first < edits.size()) {
+            // Edits closer than twice the context share a hunk
+            int last = first;
+            while (last + 1 < edits.size() && edits.get(last + 1).beginA() - edits.get(last).endA() <= 2 * context) {
+                last++;
+            }
+            writeHunk(a, b, edits.subList(first, last + 1), context, out);
+            first = last + 1;
+        }
+    }
+
+    private static void writeHunk(LineDiff.Lines a, LineDiff.Lines b, List<LineDiff.Edit> edits, int context,
+                                  OutputStream out) throws IOException {
+        LineDiff.Edit firstEdit = edits.get(0);
+        LineDiff.Edit lastEdit = edits.get(edits.size() - 1);
+        int oldStart = Math.max(0, firstEdit.beginA() - context);
+        int newStart = firstEdit.beginB() - (firstEdit.beginA() - oldStart);
+        int oldEnd = Math.min(a.size(), lastEdit.endA() + context);
+        int newEnd = lastEdit.endB() + (oldEnd - lastEdit.endA());
+        print(out, "@@ -" + range(oldStart, oldEnd - oldStart) + " +" + range(newStart, newEnd - newStart) + " @@\n");
+
+        int line = oldStart;
+        for (LineDiff.Edit edit : edits) {
+            writeLines(' ', a, line, edit.beginA(), out);
+            writeLines('-', a, edit.beginA(), edit.endA(), out);
+            writeLines('+', b, edit.beginB(), edit.endB(), out);
+            line = edit.endA();
+        }
+        writeLines(' ', a, line, oldEnd, out);
+    }
+
+    private static void writeLines(char prefix, LineDiff.Lines lines, int from, int to, OutputStream out) throws IOException {
+        for (int line = from; line < to; line++) {
+            out.write(prefix);
+            lines.write(line, line + 1, out);
+            if (line == lines.size() - 1 && !lines.endsWithNewline()) {
+                out.write("\n\\ No newline at end of file\n".getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    // "start,count" with a 1-based start; an empty range names the line before it, a single line has no count
+    private static String range(int start, int count) {
+        if (count == 0) {
+            return start + ",0";
+        }
+        return count == 1 ? String.valueOf(start + 1) : (start + 1) + "," + count;
+    }
+
+    private static int scale(int value, int max, int width) {
+        return value == 0 ? 0 : Math.max(1, (int) ((long) value * width / max));
+    }
+
+    private static boolean sameContent(GitDiff.FileChange change) {
+        return change.oldHash() != null && change.oldHash().equals(change.newHash());
+    }
+
+    private static String abbreviate(String hash) {
+        return hash == null ? NULL_HASH : hash.substring(0, Math.min(ABBREVIATED_HASH, hash.length()));
+    }
+
+    private static void print(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
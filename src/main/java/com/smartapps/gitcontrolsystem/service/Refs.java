@@ -0,0 +1,518 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// References (HEAD, refs/heads/*, refs/tags/*), stored loose or in .dotgit/packed-refs.
+//
+// A loose ref is a file holding a commit hash, or "ref: <name>" for a symbolic ref like HEAD.
+// packed-refs holds many refs in one file, one "<hash> <name>" line each, sorted by the UTF-8
+// bytes of the name, so a single ref is found by binary search over the mapped file and all refs
+// below a prefix are one contiguous range. A loose ref takes precedence over a packed one.
+//
+// Refs change only through transactions: every ref is locked with a RepositoryLock under its
+// name, so threads and processes take turns, and its current value is compared with the expected
+// one. The new value is written next to the ref as <ref>.lock and renamed over it. A writer that
+// finds a different value gets a ConflictException; update() re-reads the ref and tries again.
+public class Refs {
+    public static final String HEAD = "HEAD";
+    public static final String HEADS = "refs/heads/";
+    public static final String TAGS = "refs/tags/";
+    private static final String SYMBOLIC_PREFIX = "ref: ";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String PACKED_HEADER = "# pack-refs with: sorted\n";
+    private static final int HASH_LENGTH = 64;
+    private static final int MAX_SYMBOLIC_DEPTH = 5;
+    private static final int MAX_ATTEMPTS = 100;
+    private static final long MAX_BACKOFF_NANOS = 50_000_000L;
+    private static final Comparator<String> BYTE_ORDER = (a, b) -> Arrays.compareUnsigned(
+            a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    // Another writer changed a ref since it was read
+    public static class ConflictException extends IOException {
+        public ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    // Computes a ref's new value from its current one (null if the ref does not exist)
+    @FunctionalInterface
+    public interface Update {
+        // The value to store, or null (or the current value) to leave the ref alone
+        String apply(String current) throws IOException;
+    }
+
+    private static volatile PackedRefs packed;
+
+    // Raw value of a ref ("ref: ..." for symbolic refs), or null if it does not exist. A name that
+    // is not a ref name is rejected, so it can never reach a file outside the refs
+    public static String read(String name) throws IOException {
+        checkName(name);
+        String loose = RepositoryCache.current().ref(refPath(name));
+        if (loose != null) {
+            return loose.isEmpty() ? null : loose;
+        }
+        return packedRefs().find(name);
+    }
+
+    // Commit hash a ref points to after following symbolic refs, or null if it is unborn
+    public static String resolve(String name) throws IOException {
+        String value = read(name);
+        for (int depth = 0; value != null && value.startsWith(SYMBOLIC_PREFIX); depth++) {
+            if (depth == MAX_SYMBOLIC_DEPTH) {
+                throw new IOException("Symbolic ref loop at " + name);
+            }
+            value = read(value.substring(SYMBOLIC_PREFIX.length()).trim());
+        }
+        return value;
+    }
+
+    // The ref a symbolic ref points to ("refs/heads/main" for HEAD), or null if it holds a hash
+    public static String target(String name) throws IOException {
+        String value = read(name);
+        return value != null && value.startsWith(SYMBOLIC_PREFIX) ? value.substring(SYMBOLIC_PREFIX.length()).trim() : null;
+    }
+
+    public static String symbolic(String target) {
+        return SYMBOLIC_PREFIX + target;
+    }
+
+    // Every ref below a prefix ("refs/heads/") by full name, in name order: one range of the packed
+    // file plus whatever loose refs exist in the prefix's directory
+    public static TreeMap<String, String> list(String prefix) throws IOException {
+        TreeMap<String, String> refs = new TreeMap<>(packedRefs().range(prefix));
+        int slash = prefix.lastIndexOf('/');
+        String directory = prefix.substring(0, slash + 1);
+        listLoose(directory, Utils.dotgitPath(directory), prefix, refs);
+        return refs;
+    }
+
+    public static Transaction transaction() {
+        return new Transaction();
+    }
+
+    // Optimistic read-modify-write of one ref: read it, compute the new value without holding any
+    // lock, and store it only if the ref is unchanged. On a conflict the update runs again on the
+    // new value after a randomized, growing pause. Returns the value the ref ends up with.
+    public static String update(String name, Update update) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            String current = read(name);
+            String next = update.apply(current);
+            if (next == null || next.equals(current)) {
+                return current;
+            }
+            try {
+                transaction().update(name, next, current).commit();
+                return next;
+            } catch (ConflictException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw new ConflictException("Gave up updating " + name + " after " + attempt
+                            + " attempts: " + e.getMessage());
+                }
+                Metrics.count("ref update retries", 1);
+                backOff(attempt);
+            }
+        }
+    }
+
+    private static void backOff(int attempt) throws InterruptedIOException {
+        long limit = Math.min(MAX_BACKOFF_NANOS, 100_000L << Math.min(attempt, 20));
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(limit / 2, limit + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrying a ref update");
+        }
+    }
+
+    // Move every loose ref below refs/ into packed-refs and delete the loose files
+    public static synchronized String pack() throws IOException {
+        Path packedPath = packedPath();
+        Files.createDirectories(packedPath.getParent());
+        Path staging = stagingPath(packedPath);
+        List<RepositoryLock> held = new ArrayList<>();
+        List<Path> looseFiles = new ArrayList<>();
+        try {
+            held.add(RepositoryLock.acquire(RepositoryLock.PACKED_REFS));
+            TreeMap<String, String> loose = new TreeMap<>();
+            listLoose("refs/", Utils.dotgitPath("refs"), "refs/", loose);
+            TreeMap<String, String> all = new TreeMap<>(BYTE_ORDER);
+            all.putAll(packedRefs().range(""));
+            for (Map.Entry<String, String> ref : loose.entrySet()) {
+                // Transactions lock refs before packed-refs, so waiting here could deadlock;
+                // a ref that is being updated right now just stays loose
+                RepositoryLock refLock = RepositoryLock.tryAcquire(ref.getKey());
+                if (refLock == null) {
+                    continue;
+                }
+                held.add(refLock);
+                Path file = refPath(ref.getKey());
+                String value = readLoose(file);
+                if (value == null || value.startsWith(SYMBOLIC_PREFIX)) {
+                    continue;
+                }
+                all.put(ref.getKey(), value);
+                looseFiles.add(file);
+            }
+            writePacked(staging, all);
+            Files.move(staging, packedPath, StandardCopyOption.ATOMIC_MOVE);
+            for (Path file : looseFiles) {
+                Files.deleteIfExists(file);
+                RepositoryCache.current().invalidateRef(file);
+            }
+            return "Packed " + looseFiles.size() + " refs (" + all.size() + " in packed-refs).";
+        } finally {
+            try {
+                Files.deleteIfExists(staging);
+            } finally {
+                release(held);
+            }
+        }
+    }
+
+    // A set of ref changes applied together. Each change can name the value the ref must still
+    // have (null: the ref must not exist); commit() fails without changing anything if one differs.
+    public static class Transaction {
+        // newValue null deletes the ref; expected is only compared when verify is set
+        private record Change(String name, String newValue, String expected, boolean verify) {
+        }
+
+        private final Map<String, Change> changes = new LinkedHashMap<>();
+
+        private Transaction() {
+        }
+
+        // Set a ref if it still has the expected value (null: it must not exist yet)
+        public Transaction update(String name, String newValue, String expected) {
+            return add(new Change(name, Objects.requireNonNull(newValue), expected, true));
+        }
+
+        public Transaction create(String name, String newValue) {
+            return update(name, newValue, null);
+        }
+
+        // Set a ref whatever its current value is
+        public Transaction set(String name, String newValue) {
+            return add(new Change(name, Objects.requireNonNull(newValue), null, false));
+        }
+
+        public Transaction delete(String name, String expected) {
+            return add(new Change(name, null, expected, true));
+        }
+
+        private Transaction add(Change change) {
+            checkName(change.name());
+            changes.put(change.name(), change);
+            return this;
+        }
+
+        public void commit() throws IOException {
+            // Locks are always taken in name order, and packed-refs last, so two transactions cannot deadlock
+            List<Change> sorted = new ArrayList<>(changes.values());
+            sorted.sort(Comparator.comparing(Change::name));
+            List<RepositoryLock> held = new ArrayList<>();
+            List<Path> staged = new ArrayList<>();
+            try {
+                for (Change change : sorted) {
+                    Path file = refPath(change.name());
+                    Files.createDirectories(file.getParent());
+                    held.add(RepositoryLock.acquire(change.name()));
+                    String current = readLoose(file);
+                    if (current == null) {
+                        current = packedRefs().find(change.name());
+                    }
+                    if (change.verify() && !Objects.equals(current, change.expected())) {
+                        throw new ConflictException("Ref " + change.name() + " is " + describe(current)
+                                + ", expected " + describe(change.expected()));
+                    }
+                }
+                // Deleted refs must also disappear from packed-refs
+                TreeMap<String, String> packedAfter = null;
+                for (Change change : sorted) {
+                    if (change.newValue() == null && packedRefs().find(change.name()) != null) {
+                        if (packedAfter == null) {
+                            held.add(RepositoryLock.acquire(RepositoryLock.PACKED_REFS));
+                            packedAfter = new TreeMap<>(BYTE_ORDER);
+                            packedAfter.putAll(packedRefs().range(""));
+                        }
+                        packedAfter.remove(change.name());
+                    }
+                }
+                // Every new value is on disk before the first ref changes
+                for (Change change : sorted) {
+                    if (change.newValue() != null) {
+                        Path staging = stagingPath(refPath(change.name()));
+                        staged.add(staging);
+                        writeSynced(staging, change.newValue() + "\n");
+                    }
+                }
+                if (packedAfter != null) {
+                    Path staging = stagingPath(packedPath());
+                    staged.add(staging);
+                    writePacked(staging, packedAfter);
+                    Files.move(staging, packedPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                for (Change change : sorted) {
+                    Path file = refPath(change.name());
+                    if (change.newValue() != null) {
+                        Files.move(stagingPath(file), file, StandardCopyOption.ATOMIC_MOVE);
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                    RepositoryCache.current().invalidateRef(file);
+                }
+            } finally {
+                // The staging files belong to this transaction for as long as it holds the locks
+                try {
+                    for (Path staging : staged) {
+                        Files.deleteIfExists(staging);
+                    }
+                } finally {
+                    release(held);
+                }
+            }
+        }
+    }
+
+    private static String describe(String value) {
+        return value == null ? "missing" : value;
+    }
+
+    // HEAD, or a name below refs/ made of non-empty components that are not "." or ".."
+    public static boolean isValidName(String name) {
+        if (name.equals(HEAD)) {
+            return true;
+        }
+        boolean valid = name.startsWith("refs/") && !name.endsWith("/") && !name.endsWith(LOCK_SUFFIX)
+                && !name.contains("//") && !name.contains("\\") && !name.contains(" ");
+        for (String part : name.split("/")) {
+            valid &= !part.isEmpty() && !part.equals(".") && !part.equals("..");
+        }
+        return valid;
+    }
+
+    private static void checkName(String name) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Invalid ref name: " + name);
+        }
+    }
+
+    private static Path refPath(String name) {
+        return Utils.dotgitPath(name);
+    }
+
+    private static Path packedPath() {
+        return Utils.dotgitPath("packed-refs");
+    }
+
+    // Where a new value is written before it is renamed over the file; only touched under the file's lock
+    private static Path stagingPath(Path file) {
+        return file.resolveSibling(file.getFileName() + LOCK_SUFFIX);
+    }
+
+    // Release in reverse order of acquisition
+    private static void release(List<RepositoryLock> held) throws IOException {
+        IOException failure = null;
+        for (int i = held.size() - 1; i >= 0; i--) {
+            try {
+                held.get(i).close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // The loose file's value, bypassing the cache since the caller holds the lock
+    private static String readLoose(Path file) throws IOException {
+        try {
+            String value = Files.readString(file).trim();
+            return value.isEmpty() ? null : value;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static void listLoose(String namePrefix, Path directory, String prefix, Map<String, String> refs) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                String name = namePrefix + child.getFileName();
+                if (Files.isDirectory(child)) {
+                    if ((name + "/").startsWith(prefix) || prefix.startsWith(name + "/")) {
+                        listLoose(name + "/", child, prefix, refs);
+                    }
+                } else if (name.startsWith(prefix) && !name.endsWith(LOCK_SUFFIX)) {
+                    String value = RepositoryCache.current().ref(child);
+                    if (value != null && !value.isEmpty()) {
+                        refs.put(name, value);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writePacked(Path file, Map<String, String> refs) throws IOException {
+        StringBuilder text = new StringBuilder(PACKED_HEADER);
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            text.append(ref.getValue()).append(' ').append(ref.getKey()).append('\n');
+        }
+        writeSynced(file, text.toString());
+    }
+
+    private static void writeSynced(Path file, String text) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = StandardCharsets.UTF_8.encode(text);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+    }
+
+    // The mapped packed-refs file; remapped when the file was replaced
+    private static PackedRefs packedRefs() throws IOException {
+        Path path = packedPath().toAbsolutePath().normalize();
+        StagingIndex.Stat stat;
+        try {
+            stat = StagingIndex.Stat.of(path);
+        } catch (NoSuchFileException e) {
+            stat = null;
+        }
+        PackedRefs current = packed;
+        if (current == null || !current.path.equals(path) || !Objects.equals(current.stat, stat)) {
+            current = PackedRefs.open(path, stat);
+            packed = current;
+        }
+        return current;
+    }
+
+    // Sorted "<hash> <name>\n" lines after an optional "#" header line
+    private static final class PackedRefs {
+        private final Path path;
+        private final StagingIndex.Stat stat;
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int end;
+
+        private PackedRefs(Path path, StagingIndex.Stat stat, MappedByteBuffer buffer) {
+            this.path = path;
+            this.stat = stat;
+            this.buffer = buffer;
+            this.end = buffer == null ? 0 : buffer.limit();
+            this.start = end > 0 && buffer.get(0) == '#' ? Math.min(lineEnd(0) + 1, end) : 0;
+        }
+
+        static PackedRefs open(Path path, StagingIndex.Stat stat) throws IOException {
+            if (stat == null) {
+                return new PackedRefs(path, null, null);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new PackedRefs(path, stat, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        String find(String name) {
+            byte[] key = name.getBytes(StandardCharsets.UTF_8);
+            int line = lowerBound(key);
+            return line < end && compareName(line, key) == 0 ? hashAt(line) : null;
+        }
+
+        Map<String, String> range(String prefix) {
+            byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+            Map<String, String> refs = new LinkedHashMap<>();
+            for (int line = lowerBound(key); line < end; line = lineEnd(line) + 1) {
+                String name = nameAt(line);
+                if (!name.startsWith(prefix)) {
+                    break;
+                }
+                refs.put(name, hashAt(line));
+            }
+            return refs;
+        }
+
+        // Offset of the first line whose name is not below key
+        private int lowerBound(byte[] key) {
+            int low = start;
+            int high = end;
+            while (low < high) {
+                int line = lineStart((low + high) >>> 1, low);
+                if (compareName(line, key) < 0) {
+                    low = lineEnd(line) + 1;
+                } else {
+                    high = line;
+                }
+            }
+            return low;
+        }
+
+        private int lineStart(int offset, int floor) {
+            while (offset > floor && buffer.get(offset - 1) != '\n') {
+                offset--;
+            }
+            return offset;
+        }
+
+        private int lineEnd(int offset) {
+            while (offset < end && buffer.get(offset) != '\n') {
+                offset++;
+            }
+            return offset;
+        }
+
+        private int compareName(int line, byte[] key) {
+            int position = line + HASH_LENGTH + 1;
+            int lineEnd = lineEnd(line);
+            for (int i = 0; i < key.length; i++, position++) {
+                if (position >= lineEnd) {
+                    return -1;
+                }
+                int cmp = Byte.compareUnsigned(buffer.get(position), key[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return position < lineEnd ? 1 : 0;
+        }
+
+        private String hashAt(int line) {
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(line, hash);
+            return new String(hash, StandardCharsets.US_ASCII);
+        }
+
+        private String nameAt(int line) {
+            int from = line + HASH_LENGTH + 1;
+            byte[] name = new byte[lineEnd(line) - from];
+            buffer.get(from, name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pairs the deleted and added files of a diff into renames, and optionally copies, like git -M/-C.
+//
+// Files with the same hash are paired first, without reading them. The rest are compared by a
+// similarity index: each file is cut into chunks (a line, or 64 bytes of a longer line) and
+// summarized as the hashes of its chunks with the number of bytes under each. Two files share
+// as many bytes as their matching chunks hold, and their similarity is that over the larger size.
+// Instead of comparing every added file with every deleted one, an inverted index from chunk hash
+// to the source files containing it means each added file only meets the sources it actually
+// shares a chunk with. Chunks found in more than MAX_SOURCES_PER_CHUNK sources (blank lines,
+// license headers) tell nothing apart and are left out of the index.
+//
+// The best pairs are taken first. A deleted file is renamed at most once; a second match of the
+// same source, and any match of a modified file's old content (with copies on), is a copy.
+final class RenameDetector {
+    private static final int MAX_CHUNK = 64;
+    private static final int MAX_SOURCES_PER_CHUNK = 64;
+    private static final String EMPTY_BLOB = Utils.toHex(Utils.newDigest().digest(new byte[0]));
+
+    // Chunk hashes of a file, sorted, with the number of bytes under each
+    private record Fingerprint(int[] hashes, int[] bytes, long size) {
+        static Fingerprint of(byte[] content) {
+            long[] chunks = new long[content.length / 8 + 1];
+            int count = 0;
+            int start = 0;
+            int hash = 0;
+            for (int i = 0; i < content.length; i++) {
+                hash = hash * 31 + content[i];
+                if (content[i] == '\n' || i - start + 1 == MAX_CHUNK || i == content.length - 1) {
+                    if (count == chunks.length) {
+                        chunks = Arrays.copyOf(chunks, count * 2);
+                    }
+                    // Hash in the high half so sorting groups equal chunks; the length fits in the low half
+                    chunks[count++] = ((long) mix(hash) << 32) | (i - start + 1);
+                    start = i + 1;
+                    hash = 0;
+                }
+            }
+            Arrays.sort(chunks, 0, count);
+            int[] hashes = new int[count];
+            int[] bytes = new int[count];
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                int chunkHash = (int) (chunks[i] >>> 32);
+                int length = (int) chunks[i];
+                if (distinct > 0 && hashes[distinct - 1] == chunkHash) {
+                    bytes[distinct - 1] += length;
+                } else {
+                    hashes[distinct] = chunkHash;
+                    bytes[distinct++] = length;
+                }
+            }
+            return new Fingerprint(Arrays.copyOf(hashes, distinct), Arrays.copyOf(bytes, distinct), content.length);
+        }
+
+        // Spread the bits of the polynomial hash, so similar short lines do not cluster
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    // A possible pairing of source and destination, by their positions in the candidate lists
+    private record Candidate(int source, int destination, int score, boolean sameName) {
+    }
+
+    private RenameDetector() {
+    }
+
+    static List<GitDiff.FileChange> detect(List<GitDiff.FileChange> changes, GitDiff.Options options) throws IOException {
+        List<GitDiff.FileChange> result = new ArrayList<>();
+        List<GitDiff.FileChange> added = new ArrayList<>();
+        List<GitDiff.FileChange> sources = new ArrayList<>();
+        for (GitDiff.FileChange change : changes) {
+            if (change.status() == GitDiff.Status.ADDED && !EMPTY_BLOB.equals(change.newHash())) {
+                added.add(change);
+            } else if (change.status() == GitDiff.Status.DELETED && !EMPTY_BLOB.equals(change.oldHash())) {
+                sources.add(change);
+            } else {
+                result.add(change);
+                if (options.copies() && change.status() == GitDiff.Status.MODIFIED) {
+                    sources.add(change);
+                }
+            }
+        }
+        if (added.isEmpty() || sources.isEmpty()) {
+            result.addAll(added);
+            result.addAll(sources.stream().filter(source -> source.status() == GitDiff.Status.DELETED).toList());
+            return result;
+        }
+
+        boolean[] renamed = new boolean[sources.size()];
+        List<GitDiff.FileChange> unmatched = exactMatches(sources, added, renamed, options, result);
+        if (!unmatched.isEmpty()) {
+            unmatched = similarMatches(sources, unmatched, renamed, options, result);
+        }
+        result.addAll(unmatched);
+        for (int i = 0; i < sources.size(); i++) {
+            if (!renamed[i] && sources.get(i).status() == GitDiff.Status.DELETED) {
+                result.add(sources.get(i));
+            }
+        }
+        Metrics.count("renames", result.stream().filter(change -> change.status() == GitDiff.Status.RENAMED).count());
+        return result;
+    }
+
+    // Pair files whose content did not change at all; returns the added files left over
+    private static List<GitDiff.FileChange> exactMatches(List<GitDiff.FileChange> sources, List<GitDiff.FileChange> added,
+                                                         boolean[] renamed, GitDiff.Options options,
+                                                         List<GitDiff.FileChange> result) {
+        Map<String, Deque<Integer>> byHash = new HashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            byHash.computeIfAbsent(sources.get(i).oldHash(), hash -> new ArrayDeque<>()).add(i);
+        }
+        List<GitDiff.FileChange> unmatched = new ArrayList<>();
+        for (GitDiff.FileChange destination : added) {
+            Deque<Integer> candidates = byHash.get(destination.newHash());
+            Integer source = null;
+            if (candidates != null) {
+                // A deleted file that is still free makes a rename, anything else a copy
+                for (Integer candidate : candidates) {
+                    if (!renamed[candidate] && sources.get(candidate).status() == GitDiff.Status.DELETED) {
+                        source = candidate;
+                        break;
+                    }
+                }
+                if (source == null && options.copies()) {
+                    source = candidates.peekFirst();
+                }
+            }
+            if (source == null) {
+                unmatched.add(destination);
+            } else {
+                result.add(pair(sources, source, destination, 100, renamed));
+            }
+        }
+        return unmatched;
+    }
+
+    private static List<GitDiff.FileChange> similarMatches(List<GitDiff.FileChange> sources, List<GitDiff.FileChange> added,
+                                                           boolean[] renamed, GitDiff.Options options,
+                                                           List<GitDiff.FileChange> result) throws IOException {
+        // Sources already renamed exactly can still be copied from, but not renamed again
+        long[] sourceSizes = new long[sources.size()];
+        Map<Integer, int[]> postings = new HashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            if (renamed[i] && !options.copies()) {
+                continue;
+            }
+            Fingerprint fingerprint = Fingerprint.of(sources.get(i).readOld());
+            sourceSizes[i] = fingerprint.size();
+            for (int c = 0; c < fingerprint.hashes().length; c++) {
+                int[] list = postings.get(fingerprint.hashes()[c]);
+                // Pairs of (source, bytes); list[0] is the number of ints in use, -1 once too common
+                if (list == null) {
+                    list = new int[5];
+                    postings.put(fingerprint.hashes()[c], list);
+                } else if (list[0] < 0) {
+                    continue;
+                } else if (list[0] / 2 == MAX_SOURCES_PER_CHUNK) {
+                    postings.put(fingerprint.hashes()[c], new int[]{-1});
+                    continue;
+                } else if (list[0] + 3 > list.length) {
+                    list = Arrays.copyOf(list, list.length * 2);
+                    postings.put(fingerprint.hashes()[c], list);
+                }
+                list[list[0] + 1] = i;
+                list[list[0] + 2] = fingerprint.bytes()[c];
+                list[0] += 2;
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        long[] shared = new long[sources.size()];
+        int[] touched = new int[sources.size()];
+        for (int d = 0; d < added.size(); d++) {
+            Fingerprint fingerprint = Fingerprint.of(added.get(d).readNew());
+            int touchedCount = 0;
+            for (int c = 0; c < fingerprint.hashes().length; c++) {
+                int[] list = postings.get(fingerprint.hashes()[c]);
+                if (list == null || list[0] < 0) {
+                    continue;
+                }
+                for (int p = 1; p < list[0]; p += 2) {
+                    int source = list[p];
+                    if (shared[source] == 0) {
+                        touched[touchedCount++] = source;
+                    }
+                    shared[source] += Math.min(list[p + 1], fingerprint.bytes()[c]);
+                }
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                int source = touched[t];
+                long larger = Math.max(sourceSizes[source], fingerprint.size());
+                int score = larger == 0 ? 0 : (int) (shared[source] * 100 / larger);
+                if (score >= options.threshold()) {
+                    candidates.add(new Candidate(source, d, score,
+                            name(sources.get(source).oldPath()).equals(name(added.get(d).newPath()))));
+                }
+                shared[source] = 0;
+            }
+        }
+
+        // Best scores first; among equals a file that kept its name, then path order for stable output
+        candidates.sort(Comparator.comparingInt(Candidate::score).reversed()
+                .thenComparing(Candidate::sameName, Comparator.reverseOrder())
+                .thenComparing(candidate -> added.get(candidate.destination()).newPath())
+                .thenComparing(candidate -> sources.get(candidate.source()).oldPath()));
+        boolean[] paired = new boolean[added.size()];
+        for (Candidate candidate : candidates) {
+            if (paired[candidate.destination()]) {
+                continue;
+            }
+            GitDiff.FileChange source = sources.get(candidate.source());
+            boolean canRename = source.status() == GitDiff.Status.DELETED && !renamed[candidate.source()];
+            if (!canRename && !options.copies()) {
+                continue;
+            }
+            paired[candidate.destination()] = true;
+            result.add(pair(sources, candidate.source(), added.get(candidate.destination()), candidate.score(), renamed));
+        }
+        List<GitDiff.FileChange> unmatched = new ArrayList<>();
+        for (int d = 0; d < added.size(); d++) {
+            if (!paired[d]) {
+                unmatched.add(added.get(d));
+            }
+        }
+        return unmatched;
+    }
+
+    private static GitDiff.FileChange pair(List<GitDiff.FileChange> sources, int source, GitDiff.FileChange destination,
+                                           int score, boolean[] renamed) {
+        GitDiff.FileChange from = sources.get(source);
+        boolean rename = from.status() == GitDiff.Status.DELETED && !renamed[source];
+        if (rename) {
+            renamed[source] = true;
+        }
+        return new GitDiff.FileChange(rename ? GitDiff.Status.RENAMED : GitDiff.Status.COPIED, from.oldPath(),
+                destination.newPath(), from.oldHash(), destination.newHash(), score, destination.newFile());
+    }
+
+    private static String name(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
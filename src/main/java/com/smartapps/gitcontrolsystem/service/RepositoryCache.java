@@ -0,0 +1,209 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-memory cache of parsed commits, trees, small blobs, refs and HEAD for the current repository.
+//
+// Entries are kept in one access-ordered map and weighed by their approximate heap size; the least
+// recently used entries are evicted once the total passes the byte budget (system property
+// gitcontrolsystem.cache.bytes, 64 MiB by default). Objects are content addressed and never change,
+// so they are only ever added. A ref is re-read when its file's stat data differs from the one it
+// was cached with, which also catches writes made by another process; writers in this process
+// invalidate the ref right away.
+public class RepositoryCache {
+    private static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+    // Blobs up to this size are cached; larger ones are streamed from the store every time
+    public static final int SMALL_BLOB = 64 * 1024;
+    private static final long RACY_NANOS = 1_000_000_000L;
+
+    public enum Kind {
+        COMMIT, TREE, BLOB, REF
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    public record Stats(long hits, long misses, long evictions, long entries, long bytes, long budget) {
+        @Override
+        public String toString() {
+            long lookups = hits + misses;
+            return "Cache: " + entries + " entries, " + bytes / 1024 + " KiB of " + budget / 1024 + " KiB, "
+                    + hits + " hits, " + misses + " misses (" + (lookups == 0 ? 0 : hits * 100 / lookups)
+                    + "% hit rate), " + evictions + " evictions";
+        }
+    }
+
+    private record Key(Kind kind, String name) {
+    }
+
+    // stat is only set for refs: the file metadata the value was read with
+    private record Entry(Object value, long weight, StagingIndex.Stat stat) {
+    }
+
+    private static volatile RepositoryCache current;
+
+    private final Path root;
+    private final long budget;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long bytes;
+
+    private RepositoryCache(Path root, long budget) {
+        this.root = root;
+        this.budget = budget;
+    }
+
+    // The cache of the repository at Utils.getRoot(); a new, empty one after the root changes
+    public static RepositoryCache current() {
+        Path root = Utils.getRoot().toAbsolutePath().normalize();
+        RepositoryCache cache = current;
+        if (cache == null || !cache.root.equals(root)) {
+            synchronized (RepositoryCache.class) {
+                cache = current;
+                if (cache == null || !cache.root.equals(root)) {
+                    cache = new RepositoryCache(root, Long.getLong("gitcontrolsystem.cache.bytes", DEFAULT_BUDGET));
+                    current = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    // The cached value, or the loader's value (which is then cached); the loader runs outside the lock
+    @SuppressWarnings("unchecked")
+    public <T> T get(Kind kind, String name, Loader<T> loader) throws IOException {
+        Key key = new Key(kind, name);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                Metrics.count("cache hits", 1);
+                return (T) entry.value();
+            }
+        }
+        misses.incrementAndGet();
+        Metrics.count("cache misses", 1);
+        T value = loader.load();
+        if (value != null) {
+            put(key, new Entry(value, weigh(value), null));
+        }
+        return value;
+    }
+
+    // The cached value, or null; does not count as a lookup
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T peek(Kind kind, String name) {
+        Entry entry = entries.get(new Key(kind, name));
+        return entry == null ? null : (T) entry.value();
+    }
+
+    // Add a value that was just written, so the next read does not go to disk
+    public void put(Kind kind, String name, Object value) {
+        put(new Key(kind, name), new Entry(value, weigh(value), null));
+    }
+
+    // Trimmed content of a file below .dotgit (HEAD, refs/heads/<branch>), or null if it does not exist
+    public String ref(Path file) throws IOException {
+        Key key = new Key(Kind.REF, file.toAbsolutePath().normalize().toString());
+        StagingIndex.Stat stat;
+        try {
+            stat = StagingIndex.Stat.of(file);
+        } catch (NoSuchFileException e) {
+            invalidate(key);
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && stat.equals(entry.stat())) {
+                hits.incrementAndGet();
+                Metrics.count("cache hits", 1);
+                return (String) entry.value();
+            }
+        }
+        misses.incrementAndGet();
+        Metrics.count("cache misses", 1);
+        String value;
+        try {
+            value = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException e) {
+            invalidate(key);
+            return null;
+        }
+        // A file written within the last second could be rewritten in the same timestamp tick with
+        // the same size, which the stat check would miss; such refs are returned but not cached
+        if (stat.mtime() < System.currentTimeMillis() * 1_000_000 - RACY_NANOS) {
+            put(key, new Entry(value, weigh(value), stat));
+        }
+        return value;
+    }
+
+    // Drop a ref after writing it
+    public void invalidateRef(Path file) {
+        invalidate(new Key(Kind.REF, file.toAbsolutePath().normalize().toString()));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), bytes, budget);
+    }
+
+    private synchronized void invalidate(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.weight();
+        }
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        // A single entry larger than an eighth of the budget would push out too much else
+        if (entry.weight() > budget / 8) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.weight();
+        }
+        bytes += entry.weight();
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > budget && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().weight();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Approximate heap footprint, including the map entry and key
+    private static long weigh(Object value) {
+        long weight = 96;
+        if (value instanceof byte[] bytes) {
+            weight += bytes.length;
+        } else if (value instanceof String text) {
+            weight += 40 + text.length();
+        } else if (value instanceof Commit commit) {
+            weight += 200 + commit.message().length() + commit.author().length() + commit.parents().size() * 120L;
+        } else if (value instanceof Tree tree) {
+            for (Tree.Entry entry : tree.entries()) {
+                weight += 180 + entry.name().length();
+            }
+        }
+        return weight;
+    }
+}
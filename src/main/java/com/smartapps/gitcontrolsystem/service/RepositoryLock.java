@@ -0,0 +1,146 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Exclusive lock on one mutable resource of the repository (the index, a ref, the pack), shared
+// by every thread and every process working on it.
+//
+// Each resource has a lock file below .dotgit/locks that is locked with a FileChannel. The OS
+// releases that lock when the process exits, so a crashed writer never leaves a stale lock behind,
+// and lock files are never deleted, so two processes always lock the same file. File locks are
+// held per process, so threads of one JVM first take a ReentrantLock per resource; the file is
+// only locked by the outermost acquire of a thread.
+//
+// Objects are immutable and written by rename, so readers never take these locks.
+public final class RepositoryLock implements AutoCloseable {
+    public static final String INDEX = "index";
+    public static final String PACK = "pack";
+    public static final String COMMIT_GRAPH = "commit-graph";
+    public static final String PACKED_REFS = "packed-refs";
+
+    private static final long MIN_PAUSE_NANOS = 100_000L;
+    private static final long MAX_PAUSE_NANOS = 20_000_000L;
+
+    private static final Map<Path, Resource> resources = new ConcurrentHashMap<>();
+
+    // The in-process lock of one lock file, and its open channel while the file is locked
+    private static final class Resource {
+        final Path file;
+        final ReentrantLock threads = new ReentrantLock();
+        FileChannel channel;
+
+        Resource(Path file) {
+            this.file = file;
+        }
+    }
+
+    private final Resource resource;
+    private boolean closed;
+
+    private RepositoryLock(Resource resource) {
+        this.resource = resource;
+    }
+
+    // Wait until the resource is free; refs are locked under their full name ("refs/heads/main")
+    public static RepositoryLock acquire(String name) throws IOException {
+        Resource resource = resourceOf(name);
+        try (Metrics.Timer timer = Metrics.phase("lock wait")) {
+            try {
+                resource.threads.lockInterruptibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the " + name + " lock");
+            }
+            return lockFile(resource, true);
+        }
+    }
+
+    // The lock, or null right away if another thread or process holds it
+    public static RepositoryLock tryAcquire(String name) throws IOException {
+        Resource resource = resourceOf(name);
+        if (!resource.threads.tryLock()) {
+            return null;
+        }
+        return lockFile(resource, false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (resource.threads.getHoldCount() == 1) {
+                FileChannel channel = resource.channel;
+                resource.channel = null;
+                // Closing the channel releases the file lock
+                channel.close();
+            }
+        } finally {
+            resource.threads.unlock();
+        }
+    }
+
+    private static Resource resourceOf(String name) {
+        Path file = Utils.dotgitPath("locks", name + ".lock").toAbsolutePath().normalize();
+        return resources.computeIfAbsent(file, Resource::new);
+    }
+
+    // Waiting is done by polling tryLock rather than with lock(): the OS tracks file locks per
+    // process, so two processes whose threads hold different resources look like a deadlock to it
+    // and a blocking lock() fails with EDEADLK although each holder is about to release
+    private static boolean lock(FileChannel channel, boolean wait) throws IOException {
+        long pauseNanos = MIN_PAUSE_NANOS;
+        while (channel.tryLock() == null) {
+            if (!wait) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(pauseNanos / 2, pauseNanos + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a repository lock");
+            }
+            pauseNanos = Math.min(pauseNanos * 2, MAX_PAUSE_NANOS);
+        }
+        return true;
+    }
+
+    // Called with the thread lock held; gives it back unless the file is (or already was) locked
+    private static RepositoryLock lockFile(Resource resource, boolean wait) throws IOException {
+        if (resource.threads.getHoldCount() > 1) {
+            return new RepositoryLock(resource);
+        }
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(resource.file.getParent());
+            channel = FileChannel.open(resource.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (!lock(channel, wait)) {
+                channel.close();
+                resource.threads.unlock();
+                return null;
+            }
+            resource.channel = channel;
+            return new RepositoryLock(resource);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            resource.threads.unlock();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Background watcher that keeps an in-memory picture of the working tree.
+//
+// A daemon thread drains a WatchService registered on every directory of the working tree and
+// records the changed paths in a dirty set. snapshot() starts from one full scan and afterwards only
+// re-stats the dirty paths, so status and "add ." no longer walk the whole tree. If the OS drops
+// events (OVERFLOW), the next snapshot falls back to a full rescan.
+//
+// Events arrive some time after the change that caused them, so a snapshot first syncs with the
+// queue, as watchman and git's fsmonitor do: it creates a cookie file in the root and waits until
+// the watcher thread has seen the cookie's event. The OS reports events in order, so by then every
+// earlier change sits in a signalled key, and the thread drains those before it lets the snapshot
+// go on. If the cookie cannot be created or its event does not come in time, the snapshot cannot
+// prove the queue settled and rescans the whole tree instead. Ignored directories are neither
+// watched nor scanned, and ignored files are left out of the snapshot; a changed ignore file makes
+// the next snapshot rescan.
+public class RepositoryWatcher implements AutoCloseable {
+
+    public enum Kind {
+        CREATED, MODIFIED, DELETED
+    }
+
+    // One change below the repository root, as a repository-relative path
+    public record Event(String path, Kind kind) {
+    }
+
+    public interface Listener {
+        void onEvents(List<Event> events);
+
+        // Events were lost; anything derived from earlier events should be rebuilt
+        default void onOverflow() {
+        }
+    }
+
+    private static volatile RepositoryWatcher current;
+    private static final long SYNC_TIMEOUT_MILLIS = 2000;
+
+    private final Path root;
+    private final IgnoreRules rules;
+    private final WatchService service;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final NavigableMap<String, StagingIndex.Stat> files = new ConcurrentSkipListMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Cookies created by snapshot() whose event the watcher thread has not processed yet
+    private final Map<String, CountDownLatch> cookies = new ConcurrentHashMap<>();
+    private final AtomicLong cookieCount = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean needsRescan = true;
+    // Version of the ignore rules the last full scan used
+    private long rulesVersion = -1;
+
+    private RepositoryWatcher(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.rules = IgnoreRules.current();
+        this.service = FileSystems.getDefault().newWatchService();
+        registerAll(this.root);
+        this.thread = Thread.ofPlatform().daemon().name("repository-watcher").start(this::run);
+    }
+
+    // Start watching the current repository, replacing any watcher of another repository
+    public static synchronized RepositoryWatcher start() throws IOException {
+        Path root = Utils.getRoot().toAbsolutePath().normalize();
+        if (current != null && current.root.equals(root)) {
+            return current;
+        }
+        stop();
+        current = new RepositoryWatcher(root);
+        return current;
+    }
+
+    public static synchronized void stop() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    // The running watcher of the current repository, or null if nobody started one
+    public static RepositoryWatcher current() {
+        RepositoryWatcher watcher = current;
+        if (watcher == null || !watcher.root.equals(Utils.getRoot().toAbsolutePath().normalize())) {
+            return null;
+        }
+        return watcher;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Every working tree file with its stat data. Only the paths that changed since the previous
+    // call are read from disk (or everything after an overflow). The returned map is a copy.
+    public synchronized Map<String, StagingIndex.Stat> snapshot() throws IOException {
+        if (!sync()) {
+            needsRescan = true;
+        }
+        // .gitignore files announce themselves through events; info/exclude is outside the working tree
+        rules.refresh();
+        rules.directory("");
+        if (rules.version() != rulesVersion) {
+            if (rulesVersion != -1) {
+                // Directories that are no longer ignored have no watch yet
+                registerAll(root);
+            }
+            rulesVersion = rules.version();
+            needsRescan = true;
+        }
+        if (needsRescan) {
+            // Cleared first: anything that changes during the scan stays dirty for next time
+            needsRescan = false;
+            dirty.clear();
+            files.clear();
+            scan(root, "");
+        } else {
+            for (String path : List.copyOf(dirty)) {
+                dirty.remove(path);
+                refresh(path);
+            }
+        }
+        return new HashMap<>(files);
+    }
+
+    @Override
+    public void close() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        thread.interrupt();
+    }
+
+    // Wait until every change made before this call has been processed; false if that is unknown
+    private boolean sync() {
+        if (!thread.isAlive()) {
+            return false;
+        }
+        String name = IgnoreRules.COOKIE_PREFIX + ProcessHandle.current().pid() + "-" + cookieCount.incrementAndGet();
+        Path cookie = root.resolve(name);
+        CountDownLatch seen = new CountDownLatch(1);
+        cookies.put(name, seen);
+        try {
+            Files.createFile(cookie);
+            return seen.await(SYNC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            // A read-only working tree, for one
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            cookies.remove(name);
+            try {
+                Files.deleteIfExists(cookie);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                List<String> seen = new ArrayList<>();
+                process(service.take(), seen);
+                if (!seen.isEmpty()) {
+                    // Events before a cookie's are all in signalled keys by now; handle them first
+                    WatchKey key;
+                    while ((key = service.poll()) != null) {
+                        process(key, seen);
+                    }
+                    for (String name : seen) {
+                        CountDownLatch latch = cookies.get(name);
+                        if (latch != null) {
+                            latch.countDown();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    // Handle the events of one key; the names of sync cookies created in the root are added to seen
+    private void process(WatchKey key, List<String> seen) {
+        Path dir = keys.get(key);
+        List<Event> events = new ArrayList<>();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            String name = child.getFileName().toString();
+            if (IgnoreRules.isMetadata(name)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && dir.equals(root)
+                        && name.startsWith(IgnoreRules.COOKIE_PREFIX)) {
+                    seen.add(name);
+                }
+                continue;
+            }
+            String path = root.relativize(child).toString().replace('\\', '/');
+            boolean directory = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+            if (name.equals(IgnoreRules.FILE_NAME)) {
+                // What is ignored changed; the rescan drops newly ignored files and finds the others
+                rules.refresh();
+                needsRescan = true;
+                try {
+                    registerAll(root);
+                } catch (IOException e) {
+                    overflow = true;
+                }
+            }
+            // Listeners still hear about ignored paths, but they never make the snapshot dirty
+            boolean ignored = rules.isIgnored(path, directory);
+            Kind kind;
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                kind = Kind.CREATED;
+                if (directory && !ignored) {
+                    try {
+                        // Files created before the registration produced no events; refresh() finds them
+                        registerAll(child);
+                    } catch (IOException e) {
+                        overflow = true;
+                    }
+                }
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                kind = Kind.DELETED;
+            } else {
+                kind = Kind.MODIFIED;
+            }
+            if (!ignored) {
+                dirty.add(path);
+            }
+            events.add(new Event(path, kind));
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        if (overflow) {
+            needsRescan = true;
+            listeners.forEach(Listener::onOverflow);
+        }
+        if (!events.isEmpty()) {
+            listeners.forEach(listener -> listener.onEvents(events));
+        }
+    }
+
+    private void registerAll(Path start) throws IOException {
+        String startPath = root.relativize(start).toString().replace('\\', '/');
+        Files.walkFileTree(start, new IgnoringVisitor(startPath.isEmpty() ? "" : startPath + "/") {
+            @Override
+            void directory(Path dir) throws IOException {
+                keys.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+            }
+        });
+    }
+
+    // Bring one dirty path up to date: a file is re-stat'ed, a directory rescanned, a missing path dropped
+    private void refresh(String path) throws IOException {
+        Path file = root.resolve(path);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            files.remove(path);
+            files.subMap(path + "/", path + "0").clear(); // '0' sorts right after '/'
+            return;
+        }
+        if (attributes.isRegularFile()) {
+            files.put(path, StagingIndex.Stat.of(attributes));
+        } else if (attributes.isDirectory()) {
+            files.remove(path);
+            files.subMap(path + "/", path + "0").clear();
+            scan(file, path + "/");
+        }
+    }
+
+    private void scan(Path dir, String prefix) throws IOException {
+        Files.walkFileTree(dir, new IgnoringVisitor(prefix) {
+            @Override
+            void file(String path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.put(path, StagingIndex.Stat.of(attrs));
+                }
+            }
+        });
+    }
+
+    // Walks the directories and files below a start directory that are not ignored; prefix is the
+    // start directory's repository path followed by '/', or "" for the root
+    private class IgnoringVisitor extends SimpleFileVisitor<Path> {
+        // Repository prefixes and matchers of the directories being visited, innermost first
+        private final Deque<String> prefixes = new ArrayDeque<>();
+        private final Deque<IgnoreRules.Matcher> matchers = new ArrayDeque<>();
+        private final String startPrefix;
+
+        IgnoringVisitor(String startPrefix) {
+            this.startPrefix = startPrefix;
+        }
+
+        void directory(Path dir) throws IOException {
+        }
+
+        void file(String path, BasicFileAttributes attrs) {
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            String prefix;
+            if (prefixes.isEmpty()) {
+                prefix = startPrefix;
+            } else {
+                String name = dir.getFileName().toString();
+                if (matchers.peek().isIgnored(name, true)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                prefix = prefixes.peek() + name + "/";
+            }
+            directory(dir);
+            prefixes.push(prefix);
+            matchers.push(rules.directory(prefix));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            prefixes.pop();
+            matchers.pop();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            String name = file.getFileName().toString();
+            if (!prefixes.isEmpty() && !matchers.peek().isIgnored(name, false)) {
+                file(prefixes.peek() + name, attrs);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    // Headless mode: watch a repository (default: the current one) and print changes as they happen
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            Utils.setRoot(Path.of(args[0]));
+        }
+        RepositoryWatcher watcher = start();
+        watcher.addListener(events -> events.forEach(event -> System.out.println(event.kind() + " " + event.path())));
+        System.out.println(GitStatus.status().format(GitServices.getCurrentBranch()));
+        System.out.println("Watching " + watcher.root + " (Ctrl+C to stop)");
+        watcher.thread.join();
+    }
+}
@@ -0,0 +1,416 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Two versions of a file lined up row by row, for a side-by-side view.
+//
+// Nothing is stored per row. The rows follow from the line edits: outside an edit a row pairs one
+// old line with one new line, and an edit of a old and b new lines takes max(a, b) rows, pairing
+// its lines from the top and leaving the shorter side blank. row(r) finds its edit by binary search
+// over the first row of each edit, so a 500,000 line file costs two line indexes (two ints per line
+// on each side) and the edits, whatever part of it is on screen.
+//
+// Contents over MAP_THRESHOLD are memory-mapped rather than read into the heap. Stored blobs are
+// compressed, so a large blob is inflated once into .dotgit/cache/blobs, named by its hash, and
+// mapped from there; a large working tree file is copied there first, since a file that an editor
+// truncates while it is mapped would crash the reader. The cache is trimmed to CACHE_LIMIT bytes,
+// least recently used files first.
+public class SideBySideDiff {
+    private static final int MAP_THRESHOLD = 1 << 20;
+    private static final long CACHE_LIMIT = 512L << 20;
+    // Lines are shown up to this many bytes
+    private static final int MAX_LINE_BYTES = 16 * 1024;
+    private static final int TAB_WIDTH = 4;
+    // Word highlights of a longer pair of lines would need a bigger table; such lines are marked whole
+    private static final int MAX_WORD_CELLS = 40_000;
+
+    public enum Kind {
+        SAME, CHANGED, DELETED, ADDED
+    }
+
+    // One row of the view; a line number of -1 is a blank on that side
+    public record Row(Kind kind, int left, int right) {
+    }
+
+    // Characters [start, end) of a displayed line
+    public record Span(int start, int end) {
+    }
+
+    // The words that differ between the two lines of a changed row
+    public record Highlights(List<Span> left, List<Span> right) {
+    }
+
+    private final LineDiff.Lines left;
+    private final LineDiff.Lines right;
+    private final boolean binary;
+    private final List<LineDiff.Edit> edits;
+    // First row of each edit
+    private final int[] editRows;
+    private final int rows;
+
+    private SideBySideDiff(LineDiff.Lines left, LineDiff.Lines right) {
+        this.left = left;
+        this.right = right;
+        this.binary = left.isBinary() || right.isBinary();
+        this.edits = binary ? List.of() : LineDiff.diff(left, right);
+        this.editRows = new int[edits.size()];
+        int extra = 0;
+        for (int i = 0; i < edits.size(); i++) {
+            LineDiff.Edit edit = edits.get(i);
+            editRows[i] = edit.beginA() + extra;
+            extra += Math.max(0, (edit.endB() - edit.beginB()) - (edit.endA() - edit.beginA()));
+        }
+        this.rows = binary ? 0 : left.size() + extra;
+    }
+
+    public static SideBySideDiff of(LineDiff.Lines left, LineDiff.Lines right) {
+        return new SideBySideDiff(left, right);
+    }
+
+    // Old and new content of one changed file from GitDiff
+    public static SideBySideDiff open(GitDiff.FileChange change) throws IOException {
+        LineDiff.Lines left;
+        LineDiff.Lines right;
+        try (Metrics.Timer timer = Metrics.phase("load")) {
+            left = load(change.oldHash(), null);
+            right = load(change.newHash(), change.newFile());
+        }
+        try (Metrics.Timer timer = Metrics.phase("diff")) {
+            return of(left, right);
+        }
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public LineDiff.Lines left() {
+        return left;
+    }
+
+    public LineDiff.Lines right() {
+        return right;
+    }
+
+    public Row row(int row) {
+        int edit = editAt(row);
+        if (edit < 0) {
+            return new Row(Kind.SAME, row, row);
+        }
+        LineDiff.Edit e = edits.get(edit);
+        int offset = row - editRows[edit];
+        int oldLines = e.endA() - e.beginA();
+        int newLines = e.endB() - e.beginB();
+        int span = Math.max(oldLines, newLines);
+        if (offset >= span) {
+            return new Row(Kind.SAME, e.endA() + offset - span, e.endB() + offset - span);
+        }
+        int oldLine = offset < oldLines ? e.beginA() + offset : -1;
+        int newLine = offset < newLines ? e.beginB() + offset : -1;
+        Kind kind = oldLine < 0 ? Kind.ADDED : newLine < 0 ? Kind.DELETED : Kind.CHANGED;
+        return new Row(kind, oldLine, newLine);
+    }
+
+    // Number of changes (edits), for navigation and the minimap
+    public int changes() {
+        return edits.size();
+    }
+
+    public int changeRow(int change) {
+        return editRows[change];
+    }
+
+    public int changeRows(int change) {
+        LineDiff.Edit edit = edits.get(change);
+        return Math.max(edit.endA() - edit.beginA(), edit.endB() - edit.beginB());
+    }
+
+    // DELETED or ADDED when the change only removes or only adds lines, CHANGED otherwise
+    public Kind changeKind(int change) {
+        LineDiff.Edit edit = edits.get(change);
+        return edit.beginB() == edit.endB() ? Kind.DELETED : edit.beginA() == edit.endA() ? Kind.ADDED : Kind.CHANGED;
+    }
+
+    // First row of the first change below row, or -1
+    public int nextChange(int row) {
+        int edit = editAt(row) + 1;
+        return edit < edits.size() ? editRows[edit] : -1;
+    }
+
+    // First row of the last change that starts above row, or -1
+    public int previousChange(int row) {
+        int edit = editAt(row);
+        if (edit >= 0 && editRows[edit] == row) {
+            edit--;
+        }
+        return edit >= 0 ? editRows[edit] : -1;
+    }
+
+    // Longest line on either side in bytes (at most the displayed maximum), for horizontal scrolling
+    public int maxLineLength() {
+        int max = 0;
+        for (LineDiff.Lines lines : List.of(left, right)) {
+            for (int line = 0; line < lines.size() && max < MAX_LINE_BYTES; line++) {
+                max = Math.max(max, lines.length(line));
+            }
+        }
+        return Math.min(max, MAX_LINE_BYTES);
+    }
+
+    // A line as displayed: without its line break, tabs expanded and cut at MAX_LINE_BYTES
+    public static String display(LineDiff.Lines lines, int line) {
+        String text = lines.line(line, MAX_LINE_BYTES);
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        if (text.indexOf('\t') < 0) {
+            return text.substring(0, end);
+        }
+        StringBuilder expanded = new StringBuilder(end + 16);
+        for (int i = 0; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\t') {
+                expanded.append(" ".repeat(TAB_WIDTH - expanded.length() % TAB_WIDTH));
+            } else {
+                expanded.append(c);
+            }
+        }
+        return expanded.toString();
+    }
+
+    // The words of a and b that are not part of their longest common subsequence of words. A word is
+    // a run of letters, digits and '_', a run of whitespace, or any other single character.
+    public static Highlights words(String a, String b) {
+        int[] wordsA = split(a);
+        int[] wordsB = split(b);
+        int n = wordsA.length - 1;
+        int m = wordsB.length - 1;
+        // The common prefix and suffix are all most edits leave unchanged; only the middle needs the table
+        int prefix = 0;
+        while (prefix < n && prefix < m && sameWord(a, wordsA, prefix, b, wordsB, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && sameWord(a, wordsA, n - 1 - suffix, b, wordsB, m - 1 - suffix)) {
+            suffix++;
+        }
+        int middleA = n - prefix - suffix;
+        int middleB = m - prefix - suffix;
+        boolean[] keptA = new boolean[middleA];
+        boolean[] keptB = new boolean[middleB];
+        if ((long) middleA * middleB <= MAX_WORD_CELLS) {
+            // common[i][j]: length of the longest common subsequence of the words from i and from j on
+            int[] common = new int[(middleA + 1) * (middleB + 1)];
+            int width = middleB + 1;
+            for (int i = middleA - 1; i >= 0; i--) {
+                for (int j = middleB - 1; j >= 0; j--) {
+                    common[i * width + j] = sameWord(a, wordsA, prefix + i, b, wordsB, prefix + j)
+                            ? common[(i + 1) * width + j + 1] + 1
+                            : Math.max(common[(i + 1) * width + j], common[i * width + j + 1]);
+                }
+            }
+            int i = 0;
+            int j = 0;
+            while (i < middleA && j < middleB) {
+                if (sameWord(a, wordsA, prefix + i, b, wordsB, prefix + j)) {
+                    keptA[i++] = true;
+                    keptB[j++] = true;
+                } else if (common[(i + 1) * width + j] >= common[i * width + j + 1]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        }
+        return new Highlights(spans(wordsA, prefix, keptA), spans(wordsB, prefix, keptB));
+    }
+
+    // Word boundaries: word i is [bounds[i], bounds[i + 1])
+    private static int[] split(String text) {
+        int[] bounds = new int[Math.min(text.length(), 64) + 1];
+        int count = 0;
+        int i = 0;
+        while (i < text.length()) {
+            if (count + 1 >= bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = i;
+            char c = text.charAt(i++);
+            if (isWordChar(c)) {
+                while (i < text.length() && isWordChar(text.charAt(i))) {
+                    i++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        bounds[count] = text.length();
+        return Arrays.copyOf(bounds, count + 1);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean sameWord(String a, int[] wordsA, int i, String b, int[] wordsB, int j) {
+        int length = wordsA[i + 1] - wordsA[i];
+        return length == wordsB[j + 1] - wordsB[j] && a.regionMatches(wordsA[i], b, wordsB[j], length);
+    }
+
+    // Runs of words in the middle that were not kept, merged into spans
+    private static List<Span> spans(int[] words, int prefix, boolean[] kept) {
+        List<Span> spans = new ArrayList<>();
+        int i = 0;
+        while (i < kept.length) {
+            if (kept[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < kept.length && !kept[i]) {
+                i++;
+            }
+            spans.add(new Span(words[prefix + start], words[prefix + i]));
+        }
+        return spans;
+    }
+
+    // Index of the last edit starting at or before row, or -1
+    private int editAt(int row) {
+        int low = 0;
+        int high = editRows.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (editRows[middle] <= row) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private static LineDiff.Lines load(String hash, Path workTreeFile) throws IOException {
+        if (hash == null) {
+            return LineDiff.Lines.of(new byte[0]);
+        }
+        if (workTreeFile != null) {
+            return Files.size(workTreeFile) <= MAP_THRESHOLD
+                    ? LineDiff.Lines.of(Files.readAllBytes(workTreeFile)) : LineDiff.Lines.map(snapshot(workTreeFile));
+        }
+        Path cached = cacheDir().resolve(hash);
+        try {
+            LineDiff.Lines lines = LineDiff.Lines.map(cached);
+            touch(cached);
+            return lines;
+        } catch (NoSuchFileException e) {
+            // Not cached yet, or trimmed by another viewer since it was looked for: inflate it again
+        }
+        Path temp;
+        try (InputStream in = ObjectStore.open(hash)) {
+            byte[] head = in.readNBytes(MAP_THRESHOLD + 1);
+            if (head.length <= MAP_THRESHOLD) {
+                return LineDiff.Lines.of(head);
+            }
+            Files.createDirectories(cacheDir());
+            temp = Files.createTempFile(cacheDir(), "tmp_blob_", null);
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(head);
+                in.transferTo(out);
+            }
+        }
+        return LineDiff.Lines.map(store(temp, hash));
+    }
+
+    // Copy of a working tree file in the cache, named by the hash of what was copied
+    private static Path snapshot(Path file) throws IOException {
+        Files.createDirectories(cacheDir());
+        Path temp = Files.createTempFile(cacheDir(), "tmp_blob_", null);
+        Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+        return store(temp, ObjectStore.hash(temp));
+    }
+
+    private static Path store(Path temp, String hash) throws IOException {
+        Path cached = cacheDir().resolve(hash);
+        try {
+            Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Another viewer stored the same content first
+            Files.deleteIfExists(temp);
+        }
+        trimCache(cached);
+        return cached;
+    }
+
+    private static void trimCache(Path keep) {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir())) {
+            for (Path file : stream) {
+                files.add(file);
+                total += Files.size(file);
+            }
+            files.sort(Comparator.comparing(SideBySideDiff::lastModified));
+            for (Path file : files) {
+                if (total <= CACHE_LIMIT) {
+                    break;
+                }
+                if (file.equals(keep)) {
+                    continue;
+                }
+                try {
+                    long size = Files.size(file);
+                    Files.deleteIfExists(file);
+                    total -= size;
+                } catch (IOException e) {
+                    // Still mapped on a system that does not allow that; it goes on a later trim
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects which files the next trim removes
+        }
+    }
+
+    private static Path cacheDir() {
+        return Utils.dotgitPath("cache", "blobs");
+    }
+}
@@ -0,0 +1,312 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Binary staging area stored in .dotgit/index.
+//
+// Layout: "DIDX", int version, int count, then count fixed-width entries sorted by path
+//   (32-byte hash, long mtime, long size, long inode, int pathOffset, short prefixLength, short suffixLength)
+// followed by the path block. Each path only stores the suffix that differs from the previous
+// entry's path; every RESTART_INTERVAL-th entry stores its full path so lookups can binary search
+// the restart entries and then decode at most RESTART_INTERVAL paths.
+public class StagingIndex {
+    private static final byte[] MAGIC = "DIDX".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int HASH_SIZE = 32;
+    private static final int ENTRY_SIZE = HASH_SIZE + 8 + 8 + 8 + 4 + 2 + 2;
+    private static final int RESTART_INTERVAL = 16;
+
+    public record Entry(String path, String hash, long mtime, long size, long inode) {
+        public static Entry of(String path, String hash, Stat stat) {
+            return new Entry(path, hash, stat.mtime(), stat.size(), stat.inode());
+        }
+
+        public Stat stat() {
+            return new Stat(mtime, size, inode);
+        }
+    }
+
+    // Cached file metadata used to tell whether a file can have changed since it was hashed
+    public record Stat(long mtime, long size, long inode) {
+        public static Stat of(Path file) throws IOException {
+            return of(Files.readAttributes(file, BasicFileAttributes.class));
+        }
+
+        public static Stat of(BasicFileAttributes attributes) {
+            Object fileKey = attributes.fileKey();
+            return new Stat(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size(),
+                    fileKey == null ? 0 : fileKey.hashCode());
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int pathBlock;
+    private final long writtenAt;
+    // Stat data of the index file this was loaded from; null if there was none
+    private final Stat fileStat;
+
+    private StagingIndex(MappedByteBuffer buffer, int count, long writtenAt, Stat fileStat) {
+        this.buffer = buffer;
+        this.count = count;
+        this.pathBlock = HEADER_SIZE + count * ENTRY_SIZE;
+        this.writtenAt = writtenAt;
+        this.fileStat = fileStat;
+    }
+
+    public static Path indexPath() {
+        return Utils.dotgitPath("index");
+    }
+
+    public static StagingIndex load() throws IOException {
+        Path path = indexPath();
+        Stat fileStat;
+        try {
+            // Taken before mapping: if the file is replaced in between, isCurrent() is false, never wrongly true
+            fileStat = Stat.of(path);
+        } catch (NoSuchFileException e) {
+            return new StagingIndex(null, 0, 0, null);
+        }
+        if (fileStat.size() < HEADER_SIZE) {
+            return new StagingIndex(null, 0, 0, fileStat);
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return new StagingIndex(null, 0, 0, null);
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.getInt(4) != VERSION) {
+            System.out.println("Ignoring index in an unsupported format: " + path);
+            return new StagingIndex(null, 0, 0, fileStat);
+        }
+        return new StagingIndex(buffer, buffer.getInt(8), fileStat.mtime(), fileStat);
+    }
+
+    // Whether the index file is still the one this was loaded from; every write replaces the file,
+    // so a write by another thread or process changes at least its inode
+    public boolean isCurrent() throws IOException {
+        try {
+            return Stat.of(indexPath()).equals(fileStat);
+        } catch (NoSuchFileException e) {
+            return fileStat == null;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    // Binary search over the restart entries, then a short forward scan
+    public Entry get(String path) {
+        int restart = restartBefore(path);
+        if (restart < 0) {
+            return null;
+        }
+        String current = "";
+        int end = Math.min(count, (restart + 1) * RESTART_INTERVAL);
+        for (int i = restart * RESTART_INTERVAL; i < end; i++) {
+            current = pathAt(i, current);
+            int cmp = current.compareTo(path);
+            if (cmp == 0) {
+                return entryAt(i, current);
+            }
+            if (cmp > 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    // Entries whose path starts with the prefix, in path order; "dir/" gives everything below dir
+    public List<Entry> entriesUnder(String prefix) {
+        List<Entry> entries = new ArrayList<>();
+        int restart = restartBefore(prefix);
+        String current = "";
+        for (int i = Math.max(0, restart) * RESTART_INTERVAL; i < count; i++) {
+            current = pathAt(i, current);
+            if (current.startsWith(prefix)) {
+                entries.add(entryAt(i, current));
+            } else if (current.compareTo(prefix) > 0) {
+                break;
+            }
+        }
+        return entries;
+    }
+
+    // The last restart entry whose path is not after the given one, or -1
+    private int restartBefore(String path) {
+        if (count == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = (count - 1) / RESTART_INTERVAL;
+        int restart = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = suffixAt(mid * RESTART_INTERVAL).compareTo(path);
+            if (cmp <= 0) {
+                restart = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return restart;
+    }
+
+    // A file is unchanged if its stat data matches the entry and it was not modified in the same
+    // clock tick the index was written in (such "racily clean" entries are always rehashed)
+    public boolean isUnchanged(Entry entry, Stat stat) {
+        return entry != null && entry.stat().equals(stat) && entry.mtime() < writtenAt;
+    }
+
+    public List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(count);
+        String current = "";
+        for (int i = 0; i < count; i++) {
+            current = pathAt(i, current);
+            entries.add(entryAt(i, current));
+        }
+        return entries;
+    }
+
+    // Entries keyed by path, ready to be updated and written back
+    public TreeMap<String, Entry> toMap() {
+        TreeMap<String, Entry> map = new TreeMap<>();
+        for (Entry entry : entries()) {
+            map.put(entry.path(), entry);
+        }
+        return map;
+    }
+
+    private Entry entryAt(int i, String path) {
+        int position = HEADER_SIZE + i * ENTRY_SIZE;
+        byte[] hash = new byte[HASH_SIZE];
+        buffer.get(position, hash);
+        position += HASH_SIZE;
+        return new Entry(path, Utils.toHex(hash), buffer.getLong(position), buffer.getLong(position + 8),
+                buffer.getLong(position + 16));
+    }
+
+    private String pathAt(int i, String previous) {
+        int position = HEADER_SIZE + i * ENTRY_SIZE + HASH_SIZE + 24;
+        int prefixLength = Short.toUnsignedInt(buffer.getShort(position + 4));
+        String suffix = suffixAt(i);
+        return prefixLength == 0 ? suffix : previous.substring(0, prefixLength) + suffix;
+    }
+
+    private String suffixAt(int i) {
+        int position = HEADER_SIZE + i * ENTRY_SIZE + HASH_SIZE + 24;
+        int offset = buffer.getInt(position);
+        int length = Short.toUnsignedInt(buffer.getShort(position + 6));
+        byte[] bytes = new byte[length];
+        buffer.get(pathBlock + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void write(Map<String, Entry> entries) throws IOException {
+        write(entries.values());
+    }
+
+    // Sort, de-duplicate and write the whole index to a temp file that replaces .dotgit/index in one rename
+    public static void write(Collection<Entry> entries) throws IOException {
+        TreeMap<String, Entry> sorted = new TreeMap<>();
+        for (Entry entry : entries) {
+            sorted.put(entry.path(), entry);
+        }
+        ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + sorted.size() * ENTRY_SIZE);
+        table.put(MAGIC).putInt(VERSION).putInt(sorted.size());
+        ByteArrayOutputStream paths = new ByteArrayOutputStream();
+        String previous = "";
+        int i = 0;
+        for (Entry entry : sorted.values()) {
+            int prefixLength = i % RESTART_INTERVAL == 0 ? 0 : commonPrefix(previous, entry.path());
+            byte[] suffix = entry.path().substring(prefixLength).getBytes(StandardCharsets.UTF_8);
+            if (entry.path().length() > 0xFFFF || suffix.length > 0xFFFF) {
+                throw new IOException("Path too long for index: " + entry.path());
+            }
+            table.put(Utils.fromHex(entry.hash())).putLong(entry.mtime()).putLong(entry.size()).putLong(entry.inode())
+                    .putInt(paths.size()).putShort((short) prefixLength).putShort((short) suffix.length);
+            paths.write(suffix);
+            previous = entry.path();
+            i++;
+        }
+
+        Path path = indexPath();
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "index_", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                table.flip();
+                ByteBuffer block = ByteBuffer.wrap(paths.toByteArray());
+                while (table.hasRemaining() || block.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{table, block});
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Replace the index with exactly these path -> blob hash entries, taking stat data from the working tree
+    public static void writeSnapshot(Map<String, String> files) throws IOException {
+        List<Entry> entries = new ArrayList<>(files.size());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Path path = Utils.workTreePath(file.getKey());
+            Stat stat = Files.exists(path) ? Stat.of(path) : new Stat(0, -1, 0);
+            entries.add(Entry.of(file.getKey(), file.getValue(), stat));
+        }
+        try (RepositoryLock lock = RepositoryLock.acquire(RepositoryLock.INDEX)) {
+            write(entries);
+        }
+    }
+
+    public static void clear() throws IOException {
+        try (RepositoryLock lock = RepositoryLock.acquire(RepositoryLock.INDEX)) {
+            Files.deleteIfExists(indexPath());
+        }
+    }
+
+    // Shared prefix length, kept on a UTF-16 boundary so a surrogate pair is never split
+    private static int commonPrefix(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+}
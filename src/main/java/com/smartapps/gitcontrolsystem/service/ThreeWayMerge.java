@@ -0,0 +1,138 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Line-level three-way (diff3) merge. Both sides are diffed against the base; changes that do not
+// touch the same base lines are combined automatically, identical changes are taken once, and only
+// the lines that really differ between the two sides end up between conflict markers.
+// The merged file is written straight to an output stream instead of being built in memory.
+public class ThreeWayMerge {
+    // Hash of the merged blob and the number of conflict regions it contains
+    public record Result(String hash, int conflicts) {
+        public boolean hasConflicts() {
+            return conflicts > 0;
+        }
+    }
+
+    // Merge three stored blobs (a null base means the file was added on both sides) and store the result
+    public static Result mergeBlobs(String baseHash, String oursHash, String theirsHash,
+                                    String oursLabel, String theirsLabel) throws IOException {
+        LineDiff.Lines ours = LineDiff.Lines.ofBlob(oursHash);
+        LineDiff.Lines theirs = LineDiff.Lines.ofBlob(theirsHash);
+        if (ours.isBinary() || theirs.isBinary()) {
+            // No sensible line merge exists; keep our version and report the conflict, without loading the base
+            return new Result(oursHash, 1);
+        }
+        LineDiff.Lines base = LineDiff.Lines.ofBlob(baseHash);
+        Files.createDirectories(ObjectStore.objectsDir());
+        Path temp = Files.createTempFile(ObjectStore.objectsDir(), "tmp_merge_", null);
+        try {
+            int conflicts;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                conflicts = merge(base, ours, theirs, oursLabel, theirsLabel, out);
+            }
+            return new Result(ObjectStore.writeFile(temp), conflicts);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Write the merge of ours and theirs to out and return the number of conflict regions
+    public static int merge(LineDiff.Lines base, LineDiff.Lines ours, LineDiff.Lines theirs,
+                            String oursLabel, String theirsLabel, OutputStream out) throws IOException {
+        List<LineDiff.Edit> oursEdits = LineDiff.diff(base, ours);
+        List<LineDiff.Edit> theirsEdits = LineDiff.diff(base, theirs);
+        int conflicts = 0;
+        int basePos = 0;
+        // Difference between a side's line numbers and the base's, for everything before the current region
+        int oursShift = 0;
+        int theirsShift = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oursEdits.size() || j < theirsEdits.size()) {
+            // Grow a region of base lines until no edit from either side touches its end
+            int regionStart = Math.min(i < oursEdits.size() ? oursEdits.get(i).beginA() : Integer.MAX_VALUE,
+                    j < theirsEdits.size() ? theirsEdits.get(j).beginA() : Integer.MAX_VALUE);
+            int regionEnd = regionStart;
+            int oursFirst = i;
+            int theirsFirst = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                while (i < oursEdits.size() && oursEdits.get(i).beginA() <= regionEnd) {
+                    regionEnd = Math.max(regionEnd, oursEdits.get(i++).endA());
+                    grew = true;
+                }
+                while (j < theirsEdits.size() && theirsEdits.get(j).beginA() <= regionEnd) {
+                    regionEnd = Math.max(regionEnd, theirsEdits.get(j++).endA());
+                    grew = true;
+                }
+            }
+
+            base.write(basePos, regionStart, out);
+            int oursStart = regionStart + oursShift;
+            int theirsStart = regionStart + theirsShift;
+            oursShift += shift(oursEdits, oursFirst, i);
+            theirsShift += shift(theirsEdits, theirsFirst, j);
+            int oursEnd = regionEnd + oursShift;
+            int theirsEnd = regionEnd + theirsShift;
+
+            if (theirsFirst == j) {
+                ours.write(oursStart, oursEnd, out); // Only changed on our side
+            } else if (oursFirst == i) {
+                theirs.write(theirsStart, theirsEnd, out); // Only changed on their side
+            } else {
+                // Both sides changed: lines they agree on at either end stay outside the markers
+                while (oursStart < oursEnd && theirsStart < theirsEnd && ours.sameLine(oursStart, theirs, theirsStart)) {
+                    ours.write(oursStart, oursStart + 1, out);
+                    oursStart++;
+                    theirsStart++;
+                }
+                int commonEnd = 0;
+                while (oursEnd - commonEnd > oursStart && theirsEnd - commonEnd > theirsStart
+                        && ours.sameLine(oursEnd - commonEnd - 1, theirs, theirsEnd - commonEnd - 1)) {
+                    commonEnd++;
+                }
+                if (oursStart < oursEnd - commonEnd || theirsStart < theirsEnd - commonEnd) {
+                    conflicts++;
+                    writeMarker(out, "<<<<<<< " + oursLabel);
+                    writeSide(ours, oursStart, oursEnd - commonEnd, out);
+                    writeMarker(out, "=======");
+                    writeSide(theirs, theirsStart, theirsEnd - commonEnd, out);
+                    writeMarker(out, ">>>>>>> " + theirsLabel);
+                }
+                ours.write(oursEnd - commonEnd, oursEnd, out);
+            }
+            basePos = regionEnd;
+        }
+        base.write(basePos, base.size(), out);
+        return conflicts;
+    }
+
+    private static int shift(List<LineDiff.Edit> edits, int from, int to) {
+        int shift = 0;
+        for (int k = from; k < to; k++) {
+            LineDiff.Edit edit = edits.get(k);
+            shift += (edit.endB() - edit.beginB()) - (edit.endA() - edit.beginA());
+        }
+        return shift;
+    }
+
+    // Conflict markers must start on their own line even if the side's last line has no newline
+    private static void writeSide(LineDiff.Lines lines, int from, int to, OutputStream out) throws IOException {
+        lines.write(from, to, out);
+        if (from < to && to == lines.size() && !lines.endsWithNewline()) {
+            out.write('\n');
+        }
+    }
+
+    private static void writeMarker(OutputStream out, String marker) throws IOException {
+        out.write((marker + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
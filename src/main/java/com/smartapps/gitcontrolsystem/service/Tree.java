@@ -0,0 +1,289 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// A directory snapshot: one "<type> <hash>\t<name>" line per child, sorted by name.
+// Trees are stored in the object store like blobs, so a directory whose content did not
+// change hashes to the same object and is shared between commits.
+public record Tree(List<Tree.Entry> entries) {
+    public static final String BLOB = "blob";
+    public static final String TREE = "tree";
+
+    public record Entry(String name, String type, String hash) {
+        public boolean isTree() {
+            return TREE.equals(type);
+        }
+    }
+
+    // One changed path between two trees; a null hash means the path is absent on that side
+    public record Change(String path, String oldHash, String newHash) {
+    }
+
+    // Parsed trees are kept in the repository cache
+    public static Tree read(String hash) throws IOException {
+        return RepositoryCache.current().get(RepositoryCache.Kind.TREE, hash, () -> parse(hash));
+    }
+
+    private static Tree parse(String hash) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        String content = new String(ObjectStore.load(hash), StandardCharsets.UTF_8);
+        for (String line : content.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            int tab = line.indexOf('\t');
+            entries.add(new Entry(line.substring(tab + 1), line.substring(0, space), line.substring(space + 1, tab)));
+        }
+        return new Tree(List.copyOf(entries));
+    }
+
+    public String write() throws IOException {
+        String hash = ObjectStore.writeBytes(content());
+        RepositoryCache.current().put(RepositoryCache.Kind.TREE, hash, this);
+        return hash;
+    }
+
+    // The hash write() would store this tree under, without storing it
+    public String hash() {
+        return Utils.toHex(Utils.newDigest().digest(content()));
+    }
+
+    private byte[] content() {
+        StringBuilder content = new StringBuilder();
+        for (Entry entry : entries) {
+            content.append(entry.type()).append(' ').append(entry.hash()).append('\t').append(entry.name()).append('\n');
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Build and store the tree objects for a set of staged entries and return the root tree hash.
+    // Unchanged directories produce identical tree objects, which the object store does not rewrite.
+    public static String fromIndex(Collection<StagingIndex.Entry> staged) throws IOException {
+        return Directory.of(staged, true).write();
+    }
+
+    // Report every difference between a stored tree (null for "empty") and a set of staged entries.
+    // Tree hashes of the staged directories are computed in memory, so directories that match the
+    // stored tree are skipped without reading any object and nothing new is written.
+    public static void diffIndex(String treeHash, Collection<StagingIndex.Entry> staged, Consumer<Change> changes) throws IOException {
+        Directory.of(staged, false).diff(treeHash, "", changes);
+    }
+
+    // Hash of the blob or subtree at a '/'-separated path below a tree, or null if there is none
+    public static String entryHash(String treeHash, String path) throws IOException {
+        Entry entry = entry(treeHash, path);
+        return entry == null ? null : entry.hash();
+    }
+
+    // The blob or subtree entry at a '/'-separated path below a tree, or null if there is none
+    public static Entry entry(String treeHash, String path) throws IOException {
+        String[] names = path.split("/");
+        String hash = treeHash;
+        Entry found = null;
+        for (int i = 0; i < names.length; i++) {
+            boolean last = i == names.length - 1;
+            found = null;
+            for (Entry entry : read(hash).entries()) {
+                // Every name but the last must be a directory. A tree written before file/directory
+                // paths were refused may hold both under one name; the last name prefers the file.
+                if (entry.name().equals(names[i]) && (last ? found == null || found.isTree() : entry.isTree())) {
+                    found = entry;
+                }
+            }
+            if (found == null) {
+                return null;
+            }
+            hash = found.hash();
+        }
+        return found;
+    }
+
+    // Flatten a tree into path -> blob hash
+    public static Map<String, String> flatten(String treeHash) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        flatten(treeHash, "", files);
+        return files;
+    }
+
+    private static void flatten(String treeHash, String prefix, Map<String, String> files) throws IOException {
+        for (Entry entry : read(treeHash).entries()) {
+            if (entry.isTree()) {
+                flatten(entry.hash(), prefix + entry.name() + "/", files);
+            } else {
+                files.put(prefix + entry.name(), entry.hash());
+            }
+        }
+    }
+
+    // Report every changed file between two trees (either may be null for "empty").
+    // Subtrees with identical hashes are skipped without being read.
+    public static void diff(String oldTree, String newTree, Consumer<Change> changes) throws IOException {
+        diff(oldTree, newTree, "", changes);
+    }
+
+    private static void diff(String oldTree, String newTree, String prefix, Consumer<Change> changes) throws IOException {
+        if (oldTree != null && oldTree.equals(newTree)) {
+            return;
+        }
+        Iterator<Entry> oldEntries = oldTree == null ? List.<Entry>of().iterator() : read(oldTree).entries().iterator();
+        Iterator<Entry> newEntries = newTree == null ? List.<Entry>of().iterator() : read(newTree).entries().iterator();
+        Entry oldEntry = oldEntries.hasNext() ? oldEntries.next() : null;
+        Entry newEntry = newEntries.hasNext() ? newEntries.next() : null;
+        // Both lists are sorted by name, so walk them side by side
+        while (oldEntry != null || newEntry != null) {
+            int cmp = oldEntry == null ? 1 : newEntry == null ? -1 : oldEntry.name().compareTo(newEntry.name());
+            if (cmp < 0) {
+                removed(oldEntry, prefix, changes);
+                oldEntry = oldEntries.hasNext() ? oldEntries.next() : null;
+            } else if (cmp > 0) {
+                added(newEntry, prefix, changes);
+                newEntry = newEntries.hasNext() ? newEntries.next() : null;
+            } else {
+                if (!oldEntry.hash().equals(newEntry.hash()) || !oldEntry.type().equals(newEntry.type())) {
+                    String path = prefix + oldEntry.name();
+                    if (oldEntry.isTree() && newEntry.isTree()) {
+                        diff(oldEntry.hash(), newEntry.hash(), path + "/", changes);
+                    } else if (!oldEntry.isTree() && !newEntry.isTree()) {
+                        changes.accept(new Change(path, oldEntry.hash(), newEntry.hash()));
+                    } else {
+                        removed(oldEntry, prefix, changes);
+                        added(newEntry, prefix, changes);
+                    }
+                }
+                oldEntry = oldEntries.hasNext() ? oldEntries.next() : null;
+                newEntry = newEntries.hasNext() ? newEntries.next() : null;
+            }
+        }
+    }
+
+    private static void removed(Entry entry, String prefix, Consumer<Change> changes) throws IOException {
+        if (entry.isTree()) {
+            diff(entry.hash(), null, prefix + entry.name() + "/", changes);
+        } else {
+            changes.accept(new Change(prefix + entry.name(), entry.hash(), null));
+        }
+    }
+
+    private static void added(Entry entry, String prefix, Consumer<Change> changes) throws IOException {
+        if (entry.isTree()) {
+            diff(null, entry.hash(), prefix + entry.name() + "/", changes);
+        } else {
+            changes.accept(new Change(prefix + entry.name(), null, entry.hash()));
+        }
+    }
+
+    // In-memory directory used while building trees from the index
+    private static class Directory {
+        private final Map<String, Directory> subdirectories = new TreeMap<>();
+        private final Map<String, String> files = new TreeMap<>();
+        private String hash;
+
+        // A path that is both a file and a directory would make a tree with two entries of the same
+        // name: strict (for writing) fails on it, otherwise (for comparing) the file is left out
+        private static Directory of(Collection<StagingIndex.Entry> staged, boolean strict) throws IOException {
+            Directory root = new Directory();
+            for (StagingIndex.Entry entry : staged) {
+                Directory dir = root;
+                String[] parts = entry.path().split("/");
+                for (int i = 0; i < parts.length - 1; i++) {
+                    if (dir.files.containsKey(parts[i])) {
+                        if (strict) {
+                            throw fileAndDirectory(entry.path(), i);
+                        }
+                        dir.files.remove(parts[i]);
+                    }
+                    dir = dir.subdirectories.computeIfAbsent(parts[i], name -> new Directory());
+                }
+                if (dir.subdirectories.containsKey(parts[parts.length - 1])) {
+                    if (strict) {
+                        throw fileAndDirectory(entry.path(), parts.length - 1);
+                    }
+                    continue;
+                }
+                dir.files.put(parts[parts.length - 1], entry.hash());
+            }
+            return root;
+        }
+
+        private static IOException fileAndDirectory(String path, int depth) {
+            String[] parts = path.split("/");
+            String conflict = String.join("/", Arrays.copyOf(parts, depth + 1));
+            return new IOException("'" + conflict + "' is staged both as a file and as a directory; "
+                    + "run \"git add " + conflict + "\" to stage what is in the working tree");
+        }
+
+        private String write() throws IOException {
+            Map<String, Entry> children = new TreeMap<>();
+            for (Map.Entry<String, Directory> dir : subdirectories.entrySet()) {
+                children.put(dir.getKey(), new Entry(dir.getKey(), TREE, dir.getValue().write()));
+            }
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                children.put(file.getKey(), new Entry(file.getKey(), BLOB, file.getValue()));
+            }
+            return new Tree(new ArrayList<>(children.values())).write();
+        }
+
+        private String hash() {
+            if (hash == null) {
+                Map<String, Entry> children = new TreeMap<>();
+                for (Map.Entry<String, Directory> dir : subdirectories.entrySet()) {
+                    children.put(dir.getKey(), new Entry(dir.getKey(), TREE, dir.getValue().hash()));
+                }
+                for (Map.Entry<String, String> file : files.entrySet()) {
+                    children.put(file.getKey(), new Entry(file.getKey(), BLOB, file.getValue()));
+                }
+                hash = new Tree(new ArrayList<>(children.values())).hash();
+            }
+            return hash;
+        }
+
+        private void diff(String treeHash, String prefix, Consumer<Change> changes) throws IOException {
+            if (hash().equals(treeHash)) {
+                return;
+            }
+            Map<String, Entry> stored = new TreeMap<>();
+            if (treeHash != null) {
+                for (Entry entry : read(treeHash).entries()) {
+                    stored.put(entry.name(), entry);
+                }
+            }
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                Entry old = stored.remove(file.getKey());
+                String path = prefix + file.getKey();
+                if (old == null) {
+                    changes.accept(new Change(path, null, file.getValue()));
+                } else if (old.isTree()) {
+                    Tree.diff(old.hash(), null, path + "/", changes);
+                    changes.accept(new Change(path, null, file.getValue()));
+                } else if (!old.hash().equals(file.getValue())) {
+                    changes.accept(new Change(path, old.hash(), file.getValue()));
+                }
+            }
+            for (Map.Entry<String, Directory> dir : subdirectories.entrySet()) {
+                Entry old = stored.remove(dir.getKey());
+                String path = prefix + dir.getKey();
+                if (old != null && !old.isTree()) {
+                    changes.accept(new Change(path, old.hash(), null));
+                    old = null;
+                }
+                dir.getValue().diff(old == null ? null : old.hash(), path + "/", changes);
+            }
+            // Whatever is left only exists in the stored tree
+            for (Entry old : stored.values()) {
+                removed(old, prefix, changes);
+            }
+        }
+    }
+}
@@ -3,11 +3,48 @@ package com.smartapps.gitcontrolsystem.utils;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 
 public class Utils {
+    // Working tree root; the repository lives in <root>/.dotgit
+    private static volatile Path root = Path.of(System.getProperty("gitcontrolsystem.root", ""));
+
+    public static Path getRoot() {
+        return root;
+    }
+
+    public static void setRoot(Path newRoot) {
+        root = newRoot;
+    }
+
+    // Resolve a path inside the .dotgit directory of the current repository
+    public static Path dotgitPath(String first, String... more) {
+        return root.resolve(".dotgit").resolve(Path.of(first, more));
+    }
+
+    public static boolean isInWorkTree(Path file) {
+        return file.toAbsolutePath().normalize().startsWith(root.toAbsolutePath().normalize());
+    }
+
+    // Repository-relative, '/'-separated name of a working tree file; a path outside the root has none
+    public static String toRepoPath(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path base = root.toAbsolutePath().normalize();
+        if (!absolute.startsWith(base)) {
+            throw new IllegalArgumentException("'" + file + "' is outside repository at '" + base + "'");
+        }
+        return base.relativize(absolute).toString().replace(File.separatorChar, '/');
+    }
+
+    public static Path workTreePath(String repoPath) {
+        return root.resolve(repoPath);
+    }
+
     public static void writeToFile(File file, String content) throws IOException {
         try (FileWriter writer = new FileWriter(file)) {
             writer.write(content);
@@ -28,14 +65,31 @@ public class Utils {
         writer.close(); // Close the writer
     }
     public static String computeHash(String content) {
-        return String.valueOf(content.hashCode());
+        return toHex(newDigest().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // SHA-256 is always available on the JVM, so a missing algorithm is a broken runtime
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
-    public static String getBranchCommit(String branchName) throws IOException {
-        File branchRefFile = new File(".dotgit/refs/heads/" + branchName);
-        if (!branchRefFile.exists()) {
-            System.out.println("Branch file not found for: " + branchName);
-            return null;
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    public static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex, i * 2, i * 2 + 2, 16);
         }
-        return new String(Files.readAllBytes(branchRefFile.toPath())).trim();
+        return bytes;
     }
 }
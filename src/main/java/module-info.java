@@ -3,6 +3,7 @@ module com.smartapps.gitcontrolsystem {
     requires javafx.fxml;
 
     requires org.controlsfx.controls;
+    requires jdk.jfr;
 
     opens com.smartapps.gitcontrolsystem to javafx.fxml;
     exports com.smartapps.gitcontrolsystem;
@@ -0,0 +1,76 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AddPipelineTest {
+    @TempDir
+    Path dir;
+    private Path repository;
+
+    @BeforeEach
+    void init() throws IOException {
+        repository = Files.createDirectories(dir.resolve("repo"));
+        Utils.setRoot(repository);
+        GitServices.init();
+    }
+
+    @Test
+    void stagesFilesUnderTheirRepositoryPath() throws IOException {
+        Files.createDirectories(repository.resolve("src"));
+        Files.writeString(repository.resolve("src/a.txt"), "a\n");
+        AddPipeline.addAll(List.of(repository), progress -> { });
+        StagingIndex.Entry entry = StagingIndex.load().get("src/a.txt");
+        assertNotNull(entry);
+        assertEquals(ObjectStore.hash(repository.resolve("src/a.txt")), entry.hash());
+    }
+
+    @Test
+    void removesEntriesWhoseFilesAreGone() throws IOException {
+        Files.createDirectories(repository.resolve("a"));
+        Files.writeString(repository.resolve("a/b.txt"), "b\n");
+        Files.writeString(repository.resolve("c.txt"), "c\n");
+        Files.writeString(repository.resolve("d.txt"), "d\n");
+        AddPipeline.addAll(List.of(repository), progress -> { });
+
+        // a/b.txt is now below a file, c.txt is deleted and a directory stands at d.txt
+        Files.delete(repository.resolve("a/b.txt"));
+        Files.delete(repository.resolve("a"));
+        Files.writeString(repository.resolve("a"), "a\n");
+        Files.delete(repository.resolve("c.txt"));
+        Files.delete(repository.resolve("d.txt"));
+        Files.createDirectories(repository.resolve("d.txt"));
+        AddPipeline.Progress progress = AddPipeline.addAll(List.of(repository), p -> { });
+
+        StagingIndex index = StagingIndex.load();
+        assertNotNull(index.get("a"));
+        assertNull(index.get("a/b.txt"));
+        assertNull(index.get("c.txt"));
+        assertNull(index.get("d.txt"));
+        assertEquals(3, progress.filesRemoved.get());
+    }
+
+    @Test
+    void rejectsPathsOutsideTheRepository() throws IOException {
+        Path outside = Files.writeString(dir.resolve("x"), "x\n");
+        Files.writeString(repository.resolve("a.txt"), "a\n");
+        assertThrows(IOException.class, () -> AddPipeline.addAll(List.of(repository.resolve("a.txt"), outside), progress -> { }));
+        assertThrows(IOException.class, () -> AddPipeline.addAll(List.of(repository.resolve("../x")), progress -> { }));
+        // Nothing was staged, not even the file inside the repository
+        assertTrue(StagingIndex.load().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> Utils.toRepoPath(outside));
+    }
+}
@@ -0,0 +1,74 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangedPathFilterTest {
+
+    @Test
+    void murmur3MatchesTheReferenceImplementation() {
+        assertEquals(0, ChangedPathFilter.murmur3(new byte[0], 0));
+        assertEquals(0x514e28b7, ChangedPathFilter.murmur3(new byte[0], 1));
+        assertEquals(0x248bfa47, ChangedPathFilter.murmur3(bytes("hello"), 0));
+        assertEquals(0x2e4ff723, ChangedPathFilter.murmur3(bytes("The quick brown fox jumps over the lazy dog"), 0));
+    }
+
+    @Test
+    void addedPathsAreAlwaysFound() {
+        List<String> paths = paths("src/file", 300);
+        ByteBuffer filter = ByteBuffer.wrap(ChangedPathFilter.build(paths));
+        for (String path : paths) {
+            assertTrue(mightContain(filter, path), path);
+        }
+    }
+
+    @Test
+    void fewOtherPathsAreFound() {
+        ByteBuffer filter = ByteBuffer.wrap(ChangedPathFilter.build(paths("src/file", 300)));
+        int found = 0;
+        List<String> others = paths("test/other", 10000);
+        for (String path : others) {
+            if (mightContain(filter, path)) {
+                found++;
+            }
+        }
+        // About 1% with 10 bits and 7 hashes per path
+        assertTrue(found < others.size() * 3 / 100, found + " false positives");
+    }
+
+    @Test
+    void emptyFilterMightContainAnything() {
+        assertTrue(mightContain(ByteBuffer.wrap(ChangedPathFilter.NONE), "any/path"));
+    }
+
+    @Test
+    void commitWithoutChangesContainsNothing() {
+        byte[] filter = ChangedPathFilter.build(List.of());
+        assertEquals(1, filter.length);
+        assertFalse(mightContain(ByteBuffer.wrap(filter), "any/path"));
+    }
+
+    private static boolean mightContain(ByteBuffer filter, String path) {
+        return ChangedPathFilter.mightContain(filter, 0, filter.capacity(), ChangedPathFilter.key(path));
+    }
+
+    private static List<String> paths(String prefix, int count) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            paths.add(prefix + i + ".java");
+        }
+        return paths;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
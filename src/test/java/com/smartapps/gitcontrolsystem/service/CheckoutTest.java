@@ -0,0 +1,91 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckoutTest {
+    @TempDir
+    Path repository;
+
+    // main: a.txt, dir/b.txt, gone.txt; feature: a.txt edited, gone.txt deleted, dir/new.txt added
+    @BeforeEach
+    void init() throws IOException {
+        Utils.setRoot(repository);
+        GitServices.init();
+        write("a.txt", "a\n");
+        write("dir/b.txt", "b\n");
+        write("gone.txt", "gone\n");
+        AddPipeline.addAll(List.of(repository), progress -> { });
+        assertNotNull(GitCommit.commit("initial"));
+        GitServices.createBranch("feature");
+        Checkout.switchBranch("feature");
+
+        write("a.txt", "a on feature\n");
+        Files.delete(repository.resolve("gone.txt"));
+        write("dir/new.txt", "new\n");
+        AddPipeline.addAll(List.of(repository), progress -> { });
+        assertNotNull(GitCommit.commit("feature work"));
+    }
+
+    @Test
+    void switchWritesAndRemovesOnlyChangedPaths() throws IOException {
+        Checkout.Result result = Checkout.switchBranch("main");
+        assertEquals(2, result.written());
+        assertEquals(1, result.deleted());
+        assertEquals(Refs.HEADS + "main", Refs.target(Refs.HEAD));
+        assertEquals("a\n", read("a.txt"));
+        assertEquals("gone\n", read("gone.txt"));
+        assertEquals("b\n", read("dir/b.txt"));
+        assertFalse(Files.exists(repository.resolve("dir/new.txt")));
+        assertNull(StagingIndex.load().get("dir/new.txt"));
+        assertTrue(GitStatus.status().isClean());
+
+        // An unrelated local edit carries over to the other branch
+        write("dir/b.txt", "b, edited locally\n");
+        Checkout.switchBranch("feature");
+        assertEquals("a on feature\n", read("a.txt"));
+        assertEquals("b, edited locally\n", read("dir/b.txt"));
+        assertEquals(List.of("dir/b.txt"), List.copyOf(GitStatus.status().unstaged().keySet()));
+    }
+
+    @Test
+    void refusesToOverwriteLocalChanges() throws IOException {
+        Checkout.switchBranch("main");
+        write("a.txt", "a, edited locally\n");
+        // Untracked on main, but the switch would write it
+        write("dir/new.txt", "untracked\n");
+
+        Checkout.LocalChangesException refused = assertThrows(Checkout.LocalChangesException.class,
+                () -> Checkout.switchBranch("feature"));
+        assertEquals(List.of("a.txt", "dir/new.txt"), refused.paths());
+        // Nothing changed
+        assertEquals(Refs.HEADS + "main", Refs.target(Refs.HEAD));
+        assertEquals("a, edited locally\n", read("a.txt"));
+        assertEquals("untracked\n", read("dir/new.txt"));
+        assertEquals("gone\n", read("gone.txt"));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = repository.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private String read(String path) throws IOException {
+        return Files.readString(repository.resolve(path));
+    }
+}
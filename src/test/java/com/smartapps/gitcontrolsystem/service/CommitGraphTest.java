@@ -0,0 +1,103 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommitGraphTest {
+    @TempDir
+    Path repository;
+    private String emptyTree;
+    private int count;
+
+    @BeforeEach
+    void init() throws IOException {
+        Utils.setRoot(repository);
+        GitServices.init();
+        emptyTree = new Tree(List.of()).write();
+    }
+
+    @Test
+    void missingAncestorsAreAddedParentsFirst() throws IOException {
+        Commit a = commit();
+        Commit b = commit(a);
+        Commit c = commit(a);
+        Commit d = commit(b, c);
+        Commit octopus = commit(d, b, c);
+        // Adding the tip writes the whole history as one layer
+        int tip = CommitGraph.add(octopus);
+
+        CommitGraph graph = CommitGraph.load();
+        assertEquals(5, graph.size());
+        assertEquals(octopus.hash(), graph.hashAt(tip));
+        int pa = graph.indexOf(a.hash());
+        int pb = graph.indexOf(b.hash());
+        int pc = graph.indexOf(c.hash());
+        int pd = graph.indexOf(d.hash());
+        assertTrue(pa < pb && pa < pc && pb < pd && pc < pd && pd < tip);
+        assertEquals(CommitGraph.NONE, graph.indexOf(Utils.computeHash("not a commit")));
+
+        assertArrayEquals(new int[0], graph.parents(pa));
+        assertArrayEquals(new int[]{pa}, graph.parents(pb));
+        assertArrayEquals(new int[]{pb, pc}, graph.parents(pd));
+        assertArrayEquals(new int[]{pd, pb, pc}, graph.parents(tip));
+        assertEquals(CommitGraph.NONE, graph.firstParent(pa));
+        assertEquals(pd, graph.firstParent(tip));
+
+        assertEquals(1, graph.generation(pa));
+        assertEquals(2, graph.generation(pc));
+        assertEquals(3, graph.generation(pd));
+        assertEquals(4, graph.generation(tip));
+        assertEquals(d.timestamp(), graph.timestamp(pd));
+
+        assertTrue(graph.isReachable(tip, pa));
+        assertTrue(graph.isReachable(pd, pc));
+        assertFalse(graph.isReachable(pb, pc));
+        assertFalse(graph.isReachable(pa, pd));
+        assertEquals(pd, CommitGraph.lookup(d.hash()));
+    }
+
+    @Test
+    void layersAddedOneAtATimeStayConsistent() throws IOException {
+        List<Commit> commits = new ArrayList<>();
+        Commit parent = commit();
+        CommitGraph.add(parent);
+        commits.add(parent);
+        // Each add writes a layer of one commit; the small layers keep being merged downwards
+        for (int i = 0; i < 40; i++) {
+            parent = commit(parent);
+            assertEquals(commits.size(), CommitGraph.add(parent));
+            commits.add(parent);
+        }
+
+        CommitGraph graph = CommitGraph.load();
+        assertEquals(commits.size(), graph.size());
+        for (int i = 0; i < commits.size(); i++) {
+            assertEquals(i, graph.indexOf(commits.get(i).hash()));
+            assertEquals(commits.get(i).hash(), graph.hashAt(i));
+            assertEquals(i + 1, graph.generation(i));
+        }
+        assertTrue(graph.isReachable(commits.size() - 1, 0));
+        assertEquals("Changed-path filters are up to date.", CommitGraph.writeFilters());
+    }
+
+    // Commits only differ in their parents, so each gets a message of its own
+    private Commit commit(Commit... parents) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        for (Commit parent : parents) {
+            hashes.add(parent.hash());
+        }
+        return Commit.create(emptyTree, hashes, "test", "commit " + count++);
+    }
+}
@@ -0,0 +1,49 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GitServicesTest {
+    @TempDir
+    Path repository;
+
+    @BeforeEach
+    void init() {
+        Utils.setRoot(repository);
+        GitServices.init();
+    }
+
+    @Test
+    void revisionsWalkFirstParents() throws IOException {
+        String[] commits = new String[3];
+        for (int i = 0; i < commits.length; i++) {
+            Files.writeString(repository.resolve("a.txt"), "version " + i + "\n");
+            AddPipeline.addAll(List.of(repository), progress -> { });
+            commits[i] = GitCommit.commit("commit " + i);
+        }
+        Refs.transaction().create(Refs.TAGS + "v1", commits[1]).commit();
+
+        assertEquals(commits[2], GitServices.resolveRevision("HEAD"));
+        assertEquals(commits[2], GitServices.resolveRevision("main"));
+        assertEquals(commits[1], GitServices.resolveRevision("HEAD~"));
+        assertEquals(commits[1], GitServices.resolveRevision("main^"));
+        assertEquals(commits[0], GitServices.resolveRevision("HEAD~1^"));
+        assertEquals(commits[0], GitServices.resolveRevision("v1~1"));
+        assertEquals(commits[0], GitServices.resolveRevision(commits[2] + "~2"));
+        assertNull(GitServices.resolveRevision("HEAD~3"));
+        assertNull(GitServices.resolveRevision("missing"));
+        // Too large for an int: names nothing instead of failing
+        assertNull(GitServices.resolveRevision("HEAD~99999999999"));
+        assertNull(GitServices.resolveRevision("HEAD~999999999~999999999~999999999"));
+    }
+}
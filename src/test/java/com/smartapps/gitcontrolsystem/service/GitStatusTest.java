@@ -0,0 +1,81 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GitStatusTest {
+    @TempDir
+    Path repository;
+
+    @BeforeEach
+    void init() throws IOException {
+        Utils.setRoot(repository);
+        GitServices.init();
+        Files.createDirectories(repository.resolve("src"));
+        Files.writeString(repository.resolve("src/kept.txt"), "kept\n");
+        Files.writeString(repository.resolve("src/edited.txt"), "edited\n");
+        Files.writeString(repository.resolve("deleted.txt"), "deleted\n");
+        // Older than the index, so the stat data alone can be trusted afterwards
+        FileTime earlier = FileTime.fromMillis(System.currentTimeMillis() - 120_000);
+        for (String path : List.of("src/kept.txt", "src/edited.txt", "deleted.txt")) {
+            Files.setLastModifiedTime(repository.resolve(path), earlier);
+        }
+        AddPipeline.addAll(List.of(repository), progress -> { });
+        assertNotNull(GitCommit.commit("initial"));
+    }
+
+    @Test
+    void reportsStagedUnstagedAndUntrackedChanges() throws IOException {
+        assertTrue(GitStatus.status().isClean());
+
+        Files.writeString(repository.resolve("src/edited.txt"), "edited again\n");
+        Files.delete(repository.resolve("deleted.txt"));
+        Files.writeString(repository.resolve("staged.txt"), "staged\n");
+        AddPipeline.addAll(List.of(repository.resolve("staged.txt")), progress -> { });
+        Files.writeString(repository.resolve("untracked.txt"), "untracked\n");
+        Files.writeString(repository.resolve(".gitignore"), "*.log\n");
+        Files.writeString(repository.resolve("ignored.log"), "ignored\n");
+
+        GitStatus.Result result = GitStatus.status();
+        assertEquals(Map.of("staged.txt", GitStatus.State.ADDED), result.staged());
+        assertEquals(Map.of(
+                "src/edited.txt", GitStatus.State.MODIFIED,
+                "deleted.txt", GitStatus.State.DELETED,
+                "untracked.txt", GitStatus.State.UNTRACKED,
+                ".gitignore", GitStatus.State.UNTRACKED), result.unstaged());
+        assertFalse(result.isClean());
+        assertTrue(result.format("master").contains("modified:   src/edited.txt"));
+    }
+
+    @Test
+    void readOnlyStatusLeavesTheIndexAlone() throws IOException {
+        // Same content with new stat data: hashed, found unchanged, and only then remembered
+        Path kept = repository.resolve("src/kept.txt");
+        Files.setLastModifiedTime(kept, FileTime.fromMillis(Files.getLastModifiedTime(kept).toMillis() - 60_000));
+        StagingIndex before = StagingIndex.load();
+
+        GitStatus.Result readOnly = GitStatus.status(false);
+        assertTrue(readOnly.isClean());
+        assertEquals(1, readOnly.filesHashed());
+        assertTrue(before.isCurrent());
+
+        assertEquals(1, GitStatus.status().filesHashed());
+        assertFalse(before.isCurrent());
+        // The refreshed stat data now matches, so nothing is hashed again
+        assertEquals(0, GitStatus.status().filesHashed());
+    }
+}
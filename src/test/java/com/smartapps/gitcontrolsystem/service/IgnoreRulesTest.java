@@ -0,0 +1,94 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IgnoreRulesTest {
+    @TempDir
+    Path repository;
+    private IgnoreRules rules;
+
+    @BeforeEach
+    void init() throws IOException {
+        Utils.setRoot(repository);
+        GitServices.init();
+        write(".gitignore", "*.log\nbuild/\n/top.txt\n!keep.log\ndocs/**/*.pdf\n");
+        write("sub/.gitignore", "*.tmp\n!debug.log\n");
+        rules = IgnoreRules.current();
+        rules.refresh();
+    }
+
+    @Test
+    void globsMatchInEveryDirectory() {
+        assertTrue(rules.isIgnored("app.log", false));
+        assertTrue(rules.isIgnored("deep/er/app.log", false));
+        assertFalse(rules.isIgnored("app.txt", false));
+    }
+
+    @Test
+    void negationReincludes() {
+        assertFalse(rules.isIgnored("keep.log", false));
+        assertFalse(rules.isIgnored("other/keep.log", false));
+    }
+
+    @Test
+    void directoryPatternsOnlyMatchDirectories() {
+        assertTrue(rules.isIgnored("build", true));
+        assertFalse(rules.isIgnored("build", false));
+        // Everything below an ignored directory is ignored with it
+        assertTrue(rules.isIgnored("build/out/app.class", false));
+        assertTrue(rules.isIgnored("src/build/app.class", false));
+    }
+
+    @Test
+    void leadingSlashAnchorsToTheDirectory() {
+        assertTrue(rules.isIgnored("top.txt", false));
+        assertFalse(rules.isIgnored("sub/top.txt", false));
+    }
+
+    @Test
+    void doubleStarMatchesAnyDepth() {
+        assertTrue(rules.isIgnored("docs/guide.pdf", false));
+        assertTrue(rules.isIgnored("docs/a/b/guide.pdf", false));
+        assertFalse(rules.isIgnored("guide.pdf", false));
+    }
+
+    @Test
+    void nestedFilesOverrideTheirParents() {
+        assertTrue(rules.isIgnored("sub/scratch.tmp", false));
+        assertFalse(rules.isIgnored("scratch.tmp", false));
+        assertFalse(rules.isIgnored("sub/debug.log", false));
+        assertTrue(rules.isIgnored("sub/other.log", false));
+    }
+
+    @Test
+    void changedFilesAreReloaded() throws IOException {
+        assertFalse(rules.isIgnored("notes.md", false));
+        write(".gitignore", "*.md\n");
+        rules.refresh();
+        assertTrue(rules.isIgnored("notes.md", false));
+        assertFalse(rules.isIgnored("app.log", false));
+    }
+
+    @Test
+    void metadataIsAlwaysIgnored() {
+        assertTrue(rules.isIgnored(".dotgit", true));
+        assertTrue(rules.isIgnored(IgnoreRules.COOKIE_PREFIX + "1-1", false));
+        assertFalse(rules.isIgnored(".git", false));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = repository.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
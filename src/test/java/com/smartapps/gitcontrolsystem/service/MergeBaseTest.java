@@ -0,0 +1,87 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MergeBaseTest {
+    @TempDir
+    Path repository;
+    private String emptyTree;
+    private int count;
+
+    @BeforeEach
+    void init() throws IOException {
+        Utils.setRoot(repository);
+        GitServices.init();
+        emptyTree = new Tree(List.of()).write();
+    }
+
+    @Test
+    void linearHistory() throws IOException {
+        String a = commit();
+        String b = commit(a);
+        String c = commit(b);
+        assertEquals(List.of(b), MergeBase.find(b, c));
+        assertEquals(List.of(a), MergeBase.find(c, a));
+        assertEquals(List.of(c), MergeBase.find(c, c));
+    }
+
+    @Test
+    void fork() throws IOException {
+        String a = commit();
+        String b = commit(a);
+        String c = commit(a);
+        assertEquals(List.of(a), MergeBase.find(b, c));
+        assertEquals(a, MergeBase.findBest(c, b));
+    }
+
+    @Test
+    void crissCrossHasTwoBases() throws IOException {
+        String a = commit();
+        String b = commit(a);
+        String c = commit(a);
+        String d = commit(b, c);
+        String e = commit(c, b);
+        assertEquals(Set.of(b, c), Set.copyOf(MergeBase.find(d, e)));
+        // a is a common ancestor too, but below both bases
+        assertEquals(2, MergeBase.find(e, d).size());
+    }
+
+    @Test
+    void unrelatedHistories() throws IOException {
+        String x = commit();
+        String y = commit();
+        assertTrue(MergeBase.find(x, y).isEmpty());
+        assertNull(MergeBase.findBest(x, y));
+    }
+
+    @Test
+    void ancestry() throws IOException {
+        String a = commit();
+        String b = commit(a);
+        String c = commit(a);
+        String d = commit(b, c);
+        assertTrue(MergeBase.isAncestor(a, d));
+        assertTrue(MergeBase.isAncestor(c, d));
+        assertTrue(MergeBase.isAncestor(d, d));
+        assertFalse(MergeBase.isAncestor(d, a));
+        assertFalse(MergeBase.isAncestor(b, c));
+    }
+
+    // Commits only differ in their parents, so each gets a message of its own
+    private String commit(String... parents) throws IOException {
+        return Commit.create(emptyTree, List.of(parents), "test", "commit " + count++).hash();
+    }
+}
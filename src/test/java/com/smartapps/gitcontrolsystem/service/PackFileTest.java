@@ -0,0 +1,81 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackFileTest {
+    @TempDir
+    Path repository;
+
+    @BeforeEach
+    void init() {
+        Utils.setRoot(repository);
+        GitServices.init();
+    }
+
+    @Test
+    void deltaRoundTrip() throws IOException {
+        byte[] base = text(1, 2000).getBytes(StandardCharsets.UTF_8);
+        byte[] target = (text(1, 1000) + "inserted line\n" + text(2, 999)).getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.create(base, target);
+        assertNotNull(delta);
+        assertTrue(delta.length < target.length / 2, "delta of a small edit should be small");
+        assertArrayEquals(target, Delta.apply(base, delta));
+        // Too short to index: no delta
+        assertNull(Delta.create(new byte[4], new byte[4]));
+    }
+
+    @Test
+    void repackedObjectsReadBackAndLooseFilesAreRemoved() throws IOException {
+        Map<String, byte[]> objects = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            // Similar files, so most are stored as deltas
+            byte[] content = (text(7, 500) + "version " + i + "\n").getBytes(StandardCharsets.UTF_8);
+            objects.put(ObjectStore.writeBytes(content), content);
+        }
+        assertTrue(ObjectStore.repack().contains("Packed 20 objects"));
+        assertEquals("Nothing to pack.", ObjectStore.repack());
+        for (Map.Entry<String, byte[]> object : objects.entrySet()) {
+            assertFalse(Files.exists(ObjectStore.objectPath(object.getKey())));
+            assertArrayEquals(object.getValue(), ObjectStore.load(object.getKey()));
+        }
+
+        // A second repack appends to the pack and merges the index
+        byte[] later = "added after the first repack\n".getBytes(StandardCharsets.UTF_8);
+        String laterHash = ObjectStore.writeBytes(later);
+        ObjectStore.repack();
+        PackFile pack = PackFile.current();
+        assertTrue(pack.contains(laterHash));
+        assertArrayEquals(later, pack.read(laterHash));
+        for (Map.Entry<String, byte[]> object : objects.entrySet()) {
+            assertArrayEquals(object.getValue(), pack.read(object.getKey()));
+        }
+        assertNull(pack.read(Utils.computeHash("not stored")));
+    }
+
+    private static String text(long seed, int lines) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("line ").append(random.nextInt()).append('\n');
+        }
+        return text.toString();
+    }
+}
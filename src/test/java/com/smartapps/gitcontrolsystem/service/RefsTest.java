@@ -0,0 +1,102 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RefsTest {
+    @TempDir
+    Path repository;
+
+    @BeforeEach
+    void init() {
+        Utils.setRoot(repository);
+        GitServices.init();
+    }
+
+    @Test
+    void transactionChangesNothingOnConflict() throws IOException {
+        String a = hash("a");
+        String b = hash("b");
+        Refs.transaction().create(Refs.HEADS + "main", a).create(Refs.TAGS + "v1", a).commit();
+        assertEquals(a, Refs.read(Refs.HEADS + "main"));
+
+        // The second change expects a value the ref no longer has, so the first is not applied either
+        assertThrows(Refs.ConflictException.class, () -> Refs.transaction()
+                .update(Refs.HEADS + "main", b, a)
+                .update(Refs.TAGS + "v1", b, b)
+                .commit());
+        assertEquals(a, Refs.read(Refs.HEADS + "main"));
+        assertEquals(a, Refs.read(Refs.TAGS + "v1"));
+        assertThrows(Refs.ConflictException.class, () -> Refs.transaction().create(Refs.HEADS + "main", b).commit());
+
+        Refs.transaction().set(Refs.HEAD, Refs.symbolic(Refs.HEADS + "main")).delete(Refs.TAGS + "v1", a).commit();
+        assertEquals(Refs.HEADS + "main", Refs.target(Refs.HEAD));
+        assertEquals(a, Refs.resolve(Refs.HEAD));
+        assertNull(Refs.read(Refs.TAGS + "v1"));
+        assertEquals(b, Refs.update(Refs.HEADS + "main", current -> current.equals(a) ? b : null));
+        assertEquals(b, Refs.update(Refs.HEADS + "main", current -> null));
+        try (Stream<Path> files = Files.list(Utils.dotgitPath("refs", "heads"))) {
+            assertEquals(List.of("main"), files.map(file -> file.getFileName().toString()).toList());
+        }
+    }
+
+    @Test
+    void packedRefsAreFoundAndOverriddenByLooseOnes() throws IOException {
+        TreeMap<String, String> expected = new TreeMap<>();
+        for (String name : List.of("main", "feature/x", "feature/y", "zeta", "release/1.0")) {
+            expected.put(Refs.HEADS + name, hash(name));
+            Refs.transaction().create(Refs.HEADS + name, hash(name)).commit();
+        }
+        Refs.transaction().create(Refs.TAGS + "v1", hash("v1")).commit();
+        Refs.transaction().set(Refs.HEAD, Refs.symbolic(Refs.HEADS + "main")).commit();
+
+        assertTrue(Refs.pack().startsWith("Packed 6 refs"));
+        assertFalse(Files.exists(Utils.dotgitPath("refs", "heads", "main")));
+        // HEAD is symbolic and stays loose
+        assertEquals(hash("main"), Refs.resolve(Refs.HEAD));
+        assertEquals(expected, Refs.list(Refs.HEADS));
+        assertEquals(2, Refs.list(Refs.HEADS + "feature/").size());
+        assertEquals(hash("v1"), Refs.read(Refs.TAGS + "v1"));
+        assertNull(Refs.read(Refs.HEADS + "feat"));
+
+        // A loose ref shadows its packed value; deleting it removes it from packed-refs too
+        Refs.transaction().update(Refs.HEADS + "zeta", hash("new"), hash("zeta")).commit();
+        assertEquals(hash("new"), Refs.read(Refs.HEADS + "zeta"));
+        Refs.transaction().delete(Refs.HEADS + "feature/x", hash("feature/x")).commit();
+        assertNull(Refs.read(Refs.HEADS + "feature/x"));
+        assertEquals(List.of(Refs.HEADS + "feature/y"), List.copyOf(Refs.list(Refs.HEADS + "feature/").keySet()));
+        assertTrue(Refs.pack().startsWith("Packed 1 refs (5 in packed-refs)"));
+        assertEquals(hash("new"), Refs.read(Refs.HEADS + "zeta"));
+    }
+
+    @Test
+    void namesOutsideTheRefsAreRejected() throws IOException {
+        for (String name : List.of(Refs.HEADS + "../../index", "refs/../HEAD", "index", Refs.HEADS + "a//b", Refs.HEADS)) {
+            assertFalse(Refs.isValidName(name), name);
+            assertThrows(IllegalArgumentException.class, () -> Refs.read(name));
+            assertThrows(IllegalArgumentException.class, () -> Refs.resolve(name));
+        }
+        assertNull(GitServices.resolveRevision("../../index"));
+        assertNull(GitServices.resolveRevision("~1"));
+        assertThrows(IllegalArgumentException.class, () -> GitServices.switchBranch("../../index"));
+    }
+
+    private static String hash(String text) {
+        return Utils.computeHash(text);
+    }
+}
@@ -0,0 +1,113 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenameDetectorTest {
+    @TempDir
+    Path repository;
+
+    @BeforeEach
+    void init() {
+        Utils.setRoot(repository);
+        GitServices.init();
+    }
+
+    @Test
+    void identicalContentIsARename() throws IOException {
+        String text = lines("exact", 20);
+        List<GitDiff.FileChange> changes = diff(Map.of("old.txt", text), Map.of("new.txt", text), GitDiff.Options.DEFAULT);
+        assertEquals(1, changes.size());
+        GitDiff.FileChange change = changes.get(0);
+        assertEquals(GitDiff.Status.RENAMED, change.status());
+        assertEquals("old.txt", change.oldPath());
+        assertEquals("new.txt", change.newPath());
+        assertEquals(100, change.similarity());
+    }
+
+    @Test
+    void similarContentIsARename() throws IOException {
+        String text = lines("similar", 20);
+        String edited = text.replace("similar 7\n", "changed 7\n");
+        List<GitDiff.FileChange> changes = diff(Map.of("a/file.txt", text), Map.of("b/file.txt", edited), GitDiff.Options.DEFAULT);
+        assertEquals(1, changes.size());
+        GitDiff.FileChange change = changes.get(0);
+        assertEquals(GitDiff.Status.RENAMED, change.status());
+        assertTrue(change.similarity() >= 50 && change.similarity() < 100, "similarity " + change.similarity());
+    }
+
+    @Test
+    void unrelatedContentIsNoRename() throws IOException {
+        List<GitDiff.FileChange> changes = diff(Map.of("old.txt", lines("old", 20)), Map.of("new.txt", lines("new", 20)),
+                GitDiff.Options.DEFAULT);
+        assertEquals(List.of(GitDiff.Status.ADDED, GitDiff.Status.DELETED), statuses(changes));
+    }
+
+    @Test
+    void renamesCanBeTurnedOff() throws IOException {
+        String text = lines("exact", 20);
+        List<GitDiff.FileChange> changes = diff(Map.of("old.txt", text), Map.of("new.txt", text),
+                GitDiff.Options.DEFAULT.withRenames(false));
+        assertEquals(List.of(GitDiff.Status.ADDED, GitDiff.Status.DELETED), statuses(changes));
+    }
+
+    @Test
+    void aModifiedFileCanBeACopySource() throws IOException {
+        String text = lines("source", 20);
+        List<GitDiff.FileChange> changes = diff(Map.of("source.txt", text),
+                Map.of("source.txt", text + "more\n", "copy.txt", text), GitDiff.Options.DEFAULT.withCopies(true));
+        GitDiff.FileChange copy = changes.stream().filter(change -> "copy.txt".equals(change.newPath())).findFirst().orElseThrow();
+        assertEquals(GitDiff.Status.COPIED, copy.status());
+        assertEquals("source.txt", copy.oldPath());
+    }
+
+    private static List<GitDiff.FileChange> diff(Map<String, String> before, Map<String, String> after,
+                                                 GitDiff.Options options) throws IOException {
+        return GitDiff.trees(tree(before), tree(after), options);
+    }
+
+    // A tree of files at most one directory deep
+    private static String tree(Map<String, String> files) throws IOException {
+        Map<String, Map<String, String>> directories = new TreeMap<>();
+        Map<String, Tree.Entry> entries = new TreeMap<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String path = file.getKey();
+            String hash = ObjectStore.writeBytes(file.getValue().getBytes(StandardCharsets.UTF_8));
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                entries.put(path, new Tree.Entry(path, Tree.BLOB, hash));
+            } else {
+                directories.computeIfAbsent(path.substring(0, slash), name -> new TreeMap<>()).put(path.substring(slash + 1), file.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> directory : directories.entrySet()) {
+            entries.put(directory.getKey(), new Tree.Entry(directory.getKey(), Tree.TREE, tree(directory.getValue())));
+        }
+        return new Tree(new ArrayList<>(entries.values())).write();
+    }
+
+    private static String lines(String prefix, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(prefix).append(' ').append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static List<GitDiff.Status> statuses(List<GitDiff.FileChange> changes) {
+        return changes.stream().map(GitDiff.FileChange::status).sorted().toList();
+    }
+}
@@ -0,0 +1,207 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Concurrency stress test: several processes with several threads each share one repository.
+//
+// Every thread repeatedly writes a file of its own, stages it, commits and increments a counter
+// ref, all through the same code paths as the UI. A gc thread in the test repacks objects and refs
+// meanwhile. Afterwards the test checks that no update was lost: the counter matches the number of
+// increments, every commit a worker reported is in the history of HEAD and nothing else is, and
+// HEAD's tree and the index hold every file with its content.
+//
+// The counts are kept small so the test runs with the build; raise them with
+// -Dstress.processes, -Dstress.threads and -Dstress.rounds for a longer run.
+class RepositoryStressTest {
+    private static final String COUNTER = "refs/stress/counter";
+    private static final String COMMITTED = "stress-committed ";
+
+    @TempDir
+    Path repository;
+
+    // Entry point of the worker processes the test starts
+    public static void main(String[] args) throws Exception {
+        worker(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+    }
+
+    @Test
+    void concurrentWritersLoseNoUpdates() throws Exception {
+        int processes = Integer.getInteger("stress.processes", 2);
+        int threads = Integer.getInteger("stress.threads", 2);
+        int rounds = Integer.getInteger("stress.rounds", 5);
+
+        Utils.setRoot(repository);
+        Files.createDirectories(Utils.dotgitPath("refs", "heads"));
+        Files.createDirectories(Utils.dotgitPath("objects"));
+        Refs.transaction().create(Refs.HEAD, Refs.symbolic(Refs.HEADS + "main")).commit();
+
+        Set<String> committed = ConcurrentHashMap.newKeySet();
+        // Operations like commit report failures on the console only
+        AtomicBoolean errors = new AtomicBoolean();
+        List<Process> children = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int p = 0; p < processes; p++) {
+            Process child = new ProcessBuilder(command(repository, p, threads, rounds))
+                    .redirectErrorStream(true).start();
+            children.add(child);
+            int id = p;
+            readers.add(Thread.ofPlatform().start(() -> collect(child, id, committed, errors)));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean gcFailed = new AtomicBoolean();
+        Thread gc = Thread.ofPlatform().name("stress-gc").start(() -> {
+            try {
+                while (running.get()) {
+                    ObjectStore.repack();
+                    Refs.pack();
+                    Thread.sleep(200);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                gcFailed.set(true);
+            }
+        });
+
+        for (int p = 0; p < processes; p++) {
+            Process child = children.get(p);
+            if (!child.waitFor(10, TimeUnit.MINUTES)) {
+                child.destroyForcibly();
+            }
+            readers.get(p).join();
+            assertEquals(0, child.exitValue(), "worker " + p + " exit code");
+        }
+        running.set(false);
+        gc.join();
+        assertFalse(errors.get(), "workers reported errors");
+        assertFalse(gcFailed.get(), "gc failed");
+
+        RepositoryCache.current().clear();
+        long expected = (long) processes * threads * rounds;
+        String counter = Refs.read(COUNTER);
+        assertEquals(expected, counter == null ? 0 : Long.parseLong(counter, 16), "counter increments");
+
+        // Every commit a worker made is in the history of HEAD, and nothing else is
+        Set<String> history = new HashSet<>();
+        CommitHistory.fromHead().forEachRemaining(commit -> history.add(commit.hash()));
+        assertFalse(committed.isEmpty());
+        assertEquals(committed.size(), history.size(), "commits in the history of HEAD");
+        assertEquals(committed, history);
+
+        String head = GitServices.resolveHead();
+        Map<String, String> tree = Tree.flatten(Commit.read(head).tree());
+        Map<String, String> index = new HashMap<>();
+        for (StagingIndex.Entry entry : StagingIndex.load().entries()) {
+            index.put(entry.path(), entry.hash());
+        }
+        for (int p = 0; p < processes; p++) {
+            for (int t = 0; t < threads; t++) {
+                for (int round = 0; round < rounds; round++) {
+                    String name = "stress/p" + p + "-t" + t + "-r" + round + ".txt";
+                    String hash = ObjectStore.hash(Utils.workTreePath(name));
+                    assertEquals(hash, tree.get(name), name + " in HEAD");
+                    assertEquals(hash, index.get(name), name + " in the index");
+                }
+            }
+        }
+    }
+
+    // The same JVM running the worker side, with the test and main classes on the class path
+    private static List<String> command(Path repository, int id, int threads, int rounds) throws URISyntaxException {
+        List<String> classPath = new ArrayList<>();
+        for (Class<?> type : List.of(RepositoryStressTest.class, Utils.class)) {
+            classPath.add(Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+        }
+        classPath.add(System.getProperty("java.class.path"));
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-Dgitcontrolsystem.root=" + repository);
+        command.add("-cp");
+        command.add(String.join(File.pathSeparator, classPath));
+        command.add(RepositoryStressTest.class.getName());
+        command.addAll(List.of(String.valueOf(id), String.valueOf(threads), String.valueOf(rounds)));
+        return command;
+    }
+
+    // Pick the reported commit hashes out of a worker's output; everything else is passed through
+    private static void collect(Process child, int id, Set<String> committed, AtomicBoolean errors) {
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith(COMMITTED)) {
+                    committed.add(line.substring(COMMITTED.length()).trim());
+                } else if (!line.startsWith("Commit successful") && !line.startsWith("Staged ")
+                        && !line.startsWith("No changes")) {
+                    System.out.println("[worker " + id + "] " + line);
+                    if (line.contains("Exception") || line.contains("error")) {
+                        errors.set(true);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void worker(int id, int threads, int rounds) throws Exception {
+        Path dir = Utils.getRoot().resolve("stress");
+        Files.createDirectories(dir);
+        List<Thread> workers = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (int round = 0; round < rounds; round++) {
+                        String name = "p" + id + "-t" + thread + "-r" + round;
+                        Path file = dir.resolve(name + ".txt");
+                        Files.writeString(file, name + "\n".repeat(round + 1));
+                        AddPipeline.addAll(List.of(file), progress -> { });
+                        // Null when another thread's commit already took this file along
+                        String hash = GitCommit.commit(name);
+                        if (hash != null) {
+                            System.out.println(COMMITTED + hash);
+                        }
+                        Refs.update(COUNTER, current -> counter(current == null ? 1 : Long.parseLong(current, 16) + 1));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    failed.set(true);
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.flush();
+        System.exit(failed.get() ? 1 : 0);
+    }
+
+    // Counter values are stored as 64 hex digits so the ref looks like any other and can be packed
+    private static String counter(long value) {
+        return String.format("%064x", value);
+    }
+}
@@ -0,0 +1,70 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import com.smartapps.gitcontrolsystem.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StagingIndexTest {
+    @TempDir
+    Path repository;
+
+    @BeforeEach
+    void init() {
+        Utils.setRoot(repository);
+        GitServices.init();
+    }
+
+    @Test
+    void entriesRoundTripInPathOrder() throws IOException {
+        List<StagingIndex.Entry> written = new ArrayList<>();
+        // More than one restart interval of paths sharing long prefixes, plus a non-ASCII one
+        for (int i = 0; i < 40; i++) {
+            written.add(entry(String.format("src/main/java/pkg/File%02d.java", i), i));
+        }
+        written.add(entry("README.md", 100));
+        written.add(entry("docs/über.txt", 101));
+        StagingIndex.write(written);
+
+        StagingIndex index = StagingIndex.load();
+        assertEquals(written.size(), index.size());
+        List<StagingIndex.Entry> sorted = new ArrayList<>(written);
+        sorted.sort((a, b) -> a.path().compareTo(b.path()));
+        assertEquals(sorted, index.entries());
+        for (StagingIndex.Entry entry : written) {
+            assertEquals(entry, index.get(entry.path()));
+        }
+        assertNull(index.get("src/main/java/pkg/File99.java"));
+        assertNull(index.get("src"));
+        assertEquals(40, index.entriesUnder("src/").size());
+        assertEquals(List.of(entry("docs/über.txt", 101)), index.entriesUnder("docs/"));
+    }
+
+    @Test
+    void laterWriteReplacesTheIndex() throws IOException {
+        StagingIndex.write(List.of(entry("a", 1), entry("b", 2)));
+        StagingIndex first = StagingIndex.load();
+        assertTrue(first.isCurrent());
+        // Duplicates keep the last entry for a path
+        StagingIndex.write(List.of(entry("b", 3), entry("b", 4)));
+        assertFalse(first.isCurrent());
+        StagingIndex second = StagingIndex.load();
+        assertEquals(List.of(entry("b", 4)), second.entries());
+        StagingIndex.clear();
+        assertTrue(StagingIndex.load().isEmpty());
+    }
+
+    private static StagingIndex.Entry entry(String path, int n) {
+        return new StagingIndex.Entry(path, Utils.computeHash(path + n), 1_000_000L + n, n, 42L + n);
+    }
+}
@@ -0,0 +1,57 @@
+package com.smartapps.gitcontrolsystem.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThreeWayMergeTest {
+    private static final String BASE = "one\ntwo\nthree\nfour\nfive\n";
+
+    @Test
+    void changesToDifferentLinesAreCombined() throws IOException {
+        Merged merged = merge(BASE, "ONE\ntwo\nthree\nfour\nfive\n", "one\ntwo\nthree\nfour\nFIVE\n");
+        assertEquals(0, merged.conflicts());
+        assertEquals("ONE\ntwo\nthree\nfour\nFIVE\n", merged.text());
+    }
+
+    @Test
+    void identicalChangesAreTakenOnce() throws IOException {
+        Merged merged = merge(BASE, "one\ntwo\nTHREE\nfour\nfive\n", "one\ntwo\nTHREE\nfour\nfive\n");
+        assertEquals(0, merged.conflicts());
+        assertEquals("one\ntwo\nTHREE\nfour\nfive\n", merged.text());
+    }
+
+    @Test
+    void insertionAndDeletionOnDifferentSides() throws IOException {
+        Merged merged = merge(BASE, "zero\none\ntwo\nthree\nfour\nfive\n", "one\ntwo\nthree\nfive\n");
+        assertEquals(0, merged.conflicts());
+        assertEquals("zero\none\ntwo\nthree\nfive\n", merged.text());
+    }
+
+    @Test
+    void differentChangesToOneLineConflict() throws IOException {
+        Merged merged = merge(BASE, "one\ntwo\nours\nfour\nfive\n", "one\ntwo\ntheirs\nfour\nfive\n");
+        assertEquals(1, merged.conflicts());
+        String text = merged.text();
+        assertTrue(text.startsWith("one\ntwo\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>> topic\n"), text);
+        assertTrue(text.endsWith("four\nfive\n"), text);
+    }
+
+    private record Merged(int conflicts, String text) {
+    }
+
+    private static Merged merge(String base, String ours, String theirs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int conflicts = ThreeWayMerge.merge(lines(base), lines(ours), lines(theirs), "HEAD", "topic", out);
+        return new Merged(conflicts, out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static LineDiff.Lines lines(String text) {
+        return LineDiff.Lines.of(text.getBytes(StandardCharsets.UTF_8));
+    }
+}